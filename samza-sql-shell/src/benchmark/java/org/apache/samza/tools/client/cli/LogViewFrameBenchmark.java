@@ -0,0 +1,130 @@
+package org.apache.samza.tools.client.cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.samza.tools.client.interfaces.QueryResultRow;
+import org.jline.terminal.Size;
+import org.jline.terminal.Terminal;
+import org.jline.terminal.TerminalBuilder;
+import org.jline.utils.AttributedStringBuilder;
+import org.jline.utils.AttributedStyle;
+import org.jline.utils.InfoCmp;
+
+
+/**
+ * Rows/sec the log view renders into a virtual xterm and a dumb terminal, comparing the renderer it used to
+ * have, which wrote every cell separately and redrew the status bar after every 10 rows, with LogViewFrame.
+ * Each frame gets rowsPerFrame new rows, as on a fast topic. The old renderer drew all of them, LogViewFrame
+ * draws those that fit on the screen. Terminal output is counted and discarded.
+ *
+ * Run with: java -cp <benchmark classpath> org.apache.samza.tools.client.cli.LogViewFrameBenchmark [rows] [rowsPerFrame]
+ */
+public class LogViewFrameBenchmark {
+  private static final int ROUNDS = 5;
+  private static final int WIDTH = 160;
+  private static final int HEIGHT = 50;
+  private static final int LEGACY_STEP = 10;
+
+  public static void main(String[] args) throws IOException {
+    int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+    int rowsPerFrame = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+    List<QueryResultRow> frameRows = new ArrayList<>();
+    for (int i = 0; i < rowsPerFrame; i++) {
+      String[] row = {"{\"Name\":\"Jane Doe " + i + "\",\"NewCompany\":\"LinkedIn\",\"OldCompany\":\"Microsoft\"}"};
+      frameRows.add(() -> row);
+    }
+
+    for (String type : new String[]{"xterm-256color", "dumb"}) {
+      CountingOutputStream out = new CountingOutputStream();
+      Terminal terminal = TerminalBuilder.builder().system(false).type(type)
+          .streams(new ByteArrayInputStream(new byte[0]), out).build();
+      terminal.setSize(new Size(WIDTH, HEIGHT));
+      LogViewFrame frame = new LogViewFrame(terminal);
+
+      for (int round = 0; round < ROUNDS; round++) {
+        out.m_count = 0;
+        long start = System.nanoTime();
+        for (int drawn = 0; drawn < rows; drawn += rowsPerFrame) {
+          legacyDisplay(terminal, frameRows);
+        }
+        long legacyNanos = System.nanoTime() - start;
+        long legacyBytes = out.m_count;
+
+        out.m_count = 0;
+        start = System.nanoTime();
+        for (int drawn = 0; drawn < rows; drawn += rowsPerFrame) {
+          frame.begin();
+          frame.appendRows(frameRows, 0, HEIGHT - 1, HEIGHT);
+          frame.appendStatusBar(statusBarText(rowsPerFrame), HEIGHT);
+          frame.write();
+        }
+        long frameNanos = System.nanoTime() - start;
+
+        System.out.println(String.format(
+            "%s round %d: before %,.0f rows/sec %,d bytes, after %,.0f rows/sec %,d bytes", type, round,
+            rows * 1e9 / legacyNanos, legacyBytes, rows * 1e9 / frameNanos, out.m_count));
+      }
+      terminal.close();
+    }
+  }
+
+  /**
+   * How QueryResultLogView drew the rows of a frame before LogViewFrame.
+   */
+  private static void legacyDisplay(Terminal terminal, List<QueryResultRow> rows) {
+    for (int start = 0; start < rows.size(); start += LEGACY_STEP) {
+      legacyClearStatusBar(terminal);
+      for (QueryResultRow row : rows.subList(start, Math.min(start + LEGACY_STEP, rows.size()))) {
+        String[] line = row.format();
+        for (int i = 0; i < line.length; ++i) {
+          terminal.writer().write(line[i] == null ? "null" : line[i]);
+          terminal.writer().write(i == line.length - 1 ? "\n" : " ");
+        }
+      }
+      terminal.flush();
+      legacyClearStatusBar(terminal);
+      terminal.puts(InfoCmp.Capability.save_cursor);
+      terminal.puts(InfoCmp.Capability.cursor_address, HEIGHT - 1, 0);
+      terminal.writer().print(statusBarText(rows.size()));
+      terminal.flush();
+      terminal.puts(InfoCmp.Capability.restore_cursor);
+    }
+  }
+
+  private static void legacyClearStatusBar(Terminal terminal) {
+    terminal.puts(InfoCmp.Capability.save_cursor);
+    terminal.puts(InfoCmp.Capability.cursor_address, HEIGHT - 1, 0);
+    terminal.puts(InfoCmp.Capability.delete_line, HEIGHT - 1, 0);
+    terminal.puts(InfoCmp.Capability.restore_cursor);
+  }
+
+  private static String statusBarText(int rowsInBuffer) {
+    AttributedStyle statusBarStyle = AttributedStyle.DEFAULT.background(AttributedStyle.WHITE)
+        .foreground(AttributedStyle.BLACK);
+    return new AttributedStringBuilder()
+        .style(statusBarStyle.bold().italic())
+        .append("Q")
+        .style(statusBarStyle)
+        .append(": Quit     ")
+        .append(String.valueOf(rowsInBuffer) + " rows in buffer     ")
+        .toAnsi();
+  }
+
+  private static class CountingOutputStream extends OutputStream {
+    private long m_count;
+
+    @Override
+    public void write(int b) {
+      m_count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      m_count += len;
+    }
+  }
+}
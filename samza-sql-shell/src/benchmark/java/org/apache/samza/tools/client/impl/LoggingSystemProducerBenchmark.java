@@ -0,0 +1,78 @@
+package org.apache.samza.tools.client.impl;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.samza.config.Config;
+import org.apache.samza.config.JobConfig;
+import org.apache.samza.config.MapConfig;
+import org.apache.samza.system.OutgoingMessageEnvelope;
+import org.apache.samza.system.SystemProducer;
+import org.apache.samza.system.SystemStream;
+import org.apache.samza.tools.client.interfaces.SqlSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Rows/sec through the log system send path, comparing the per-message String.format and INFO logging
+ * it used to do with the current sampled DEBUG logging and batching. The execution has the result buffers
+ * of a query, so rows are captured as they would be for a running SELECT.
+ *
+ * Run with: java -cp <benchmark classpath> org.apache.samza.tools.client.impl.LoggingSystemProducerBenchmark [rows]
+ */
+public class LoggingSystemProducerBenchmark {
+  private static final Logger LOG = LoggerFactory.getLogger(LoggingSystemProducerBenchmark.class);
+  private static final AtomicInteger LEGACY_COUNTER = new AtomicInteger(0);
+  private static final int ROUNDS = 5;
+  private static final int EXEC_ID = Integer.MAX_VALUE;
+  private static final SqlSchema SCHEMA = new SqlSchema(Arrays.asList("Name", "NewCompany", "OldCompany"),
+      Arrays.asList("STRING", "STRING", "STRING"));
+
+  public static void main(String[] args) throws IOException {
+    int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+    Map<String, String> configs = new HashMap<>();
+    configs.put(JobConfig.PROCESSOR_ID(), String.valueOf(EXEC_ID));
+    Config config = new MapConfig(configs);
+    SamzaExecutor.createResultBuffers(EXEC_ID, config, SCHEMA, null);
+    SystemProducer producer = new CliLoggingSystemFactory().getProducer("log", config, null);
+    producer.start();
+    OutgoingMessageEnvelope envelope = new OutgoingMessageEnvelope(new SystemStream("log", "outputStream"), "key",
+        "{\"Name\":\"Jane Doe\",\"NewCompany\":\"LinkedIn\",\"OldCompany\":\"Microsoft\"}".getBytes());
+
+    for (int round = 0; round < ROUNDS; round++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < rows; i++) {
+        legacySend(envelope);
+      }
+      long legacyNanos = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      for (int i = 0; i < rows; i++) {
+        producer.send("benchmark", envelope);
+      }
+      producer.flush("benchmark");
+      long currentNanos = System.nanoTime() - start;
+
+      System.out.println(String.format("round %d: before %,.0f rows/sec, after %,.0f rows/sec", round,
+          rows * 1e9 / legacyNanos, rows * 1e9 / currentNanos));
+    }
+    producer.stop();
+    SamzaExecutor.removeResultBuffers(EXEC_ID);
+  }
+
+  /**
+   * The body of LoggingSystemProducer.send before message logging was sampled.
+   */
+  private static void legacySend(OutgoingMessageEnvelope envelope) {
+    LOG.info(String.format(String.format("Message %d :", LEGACY_COUNTER.incrementAndGet())));
+    String msg = String.format("OutputStream:%s Key:%s Value:%s", envelope.getSystemStream(), envelope.getKey(),
+        new String((byte[]) envelope.getMessage()));
+    LOG.info(msg);
+
+    SamzaExecutor.saveOutputMessage(EXEC_ID, envelope);
+  }
+}
@@ -7,11 +7,24 @@ enum CliCommandType {
     SHOW_TABLES     ("SHOW TABLES", "Shows all available tables.", "Usage: SHOW TABLES <table name>"),
     SHOW_FUNCTIONS  ("SHOW FUNCTIONS", "Shows all available UDFs.", "SHOW FUNCTION"),
     DESCRIBE        ("DESCRIBE", "Describes a table.", "Usage: DESCRIBE <table name>"),
+    EXPLAIN         ("EXPLAIN", "\tShows how a statement would execute, without running it.",
+                     "Usage: EXPLAIN <SELECT or INSERT INTO statement>\n"
+                     + "Shows the plan with the type of the rows of each operator, the result columns, the streams\n"
+                     + "read and written, and how long parsing and planning took."),
 
     SELECT          ("SELECT", "\tExecutes a SQL SELECT query.", "SELECT uses a standard streaming SQL syntax."),
     EXECUTE         ("EXECUTE", "\tExecute a sql file.", "EXECUTE <URI of a sql file>"),
     INSERT_INTO     ("INSERT INTO", "Executes a SQL INSERT INTO.", "INSERT INTO uses a standard streaming SQL syntax."),
-    LS              ("LS", "\tLists all background executions.", "LS [execution ID]"),
+    SPOOL           ("SPOOL", "\tWrites the results of the next query to a file.",
+                     "Usage: SPOOL <file> [JSONL|CSV|AVRO] [COMPRESSED] [ON <execution ID>]\n"
+                     + "The format defaults to the one of the file extension, or JSONL. COMPRESSED gzips JSONL and CSV\n"
+                     + "files, and deflates AVRO ones. A file name ending with .gz is compressed too. The file is the\n"
+                     + "rest of the line before the options, so it may have spaces.\n"
+                     + "ON writes the rows a running query produces from then on instead.\n"
+                     + "SPOOL OFF cancels. SPOOL shows what the next query will be spooled to."),
+    LS              ("LS", "\tLists all background executions.",
+                     "LS [execution ID]\n"
+                     + "Given IDs, also shows how long the executions took to plan, start and produce a first row."),
     STOP            ("STOP", "\tStops an execution.", "Usage: STOP <execution ID>"),
     RM              ("RM", "\tRemoves an execution from the list.", "Usage: RM <execution ID>"),
 
@@ -1,6 +1,7 @@
 package org.apache.samza.tools.client.cli;
 
 import org.apache.samza.tools.client.interfaces.ExecutionContext;
+import org.apache.samza.tools.client.interfaces.OverflowPolicy;
 
 import java.io.*;
 import java.util.ArrayList;
@@ -18,6 +19,15 @@ public class CliEnvironment {
     private Boolean m_debug = false;
     private static final String m_debugEnvVar = "DEBUG";
 
+    private OverflowPolicy m_overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private static final String m_overflowPolicyEnvVar = "OVERFLOW";
+
+    private ExecutionContext.RenderMode m_renderMode = ExecutionContext.RenderMode.LATEST;
+    private static final String m_renderModeEnvVar = "RENDER";
+
+    private ExecutionContext.ResultView m_resultView = ExecutionContext.ResultView.LOG;
+    private static final String m_resultViewEnvVar = "VIEW";
+
 
     public CliEnvironment() {
         m_defaultPersistenceLocation = System.getProperty("user.home");
@@ -72,6 +82,9 @@ public class CliEnvironment {
     public ExecutionContext generateExecutionContext() {
         ExecutionContext exeCtxt = new ExecutionContext();
         exeCtxt.setMessageFormat(m_messageFormat);
+        exeCtxt.setOverflowPolicy(m_overflowPolicy);
+        exeCtxt.setRenderMode(m_renderMode);
+        exeCtxt.setResultView(m_resultView);
         return exeCtxt;
     }
 
@@ -86,11 +99,7 @@ public class CliEnvironment {
     public int setEnvironmentVariable(String var, String val) {
         switch (var.toUpperCase()) {
             case m_messageFormatEnvVar:
-                ExecutionContext.MessageFormat messageFormat = null;
-                try {
-                    messageFormat = ExecutionContext.MessageFormat.valueOf(val.toUpperCase());
-                } catch(IllegalArgumentException e) {
-                }
+                ExecutionContext.MessageFormat messageFormat = parseEnum(ExecutionContext.MessageFormat.class, val);
                 if(messageFormat == null) {
                     return -2;
                 }
@@ -109,6 +118,27 @@ public class CliEnvironment {
                 else
                     return -2;
                 break;
+            case m_overflowPolicyEnvVar:
+                OverflowPolicy overflowPolicy = parseEnum(OverflowPolicy.class, val);
+                if(overflowPolicy == null) {
+                    return -2;
+                }
+                m_overflowPolicy = overflowPolicy;
+                break;
+            case m_renderModeEnvVar:
+                ExecutionContext.RenderMode renderMode = parseEnum(ExecutionContext.RenderMode.class, val);
+                if(renderMode == null) {
+                    return -2;
+                }
+                m_renderMode = renderMode;
+                break;
+            case m_resultViewEnvVar:
+                ExecutionContext.ResultView resultView = parseEnum(ExecutionContext.ResultView.class, val);
+                if(resultView == null) {
+                    return -2;
+                }
+                m_resultView = resultView;
+                break;
             default:
                 return -1;
         }
@@ -120,19 +150,41 @@ public class CliEnvironment {
         List<String> vals = new ArrayList<>();
         switch (var.toUpperCase()) {
             case m_messageFormatEnvVar:
-                for(ExecutionContext.MessageFormat fm : ExecutionContext.MessageFormat.values()) {
-                    vals.add(fm.toString());
-                }
-                return vals;
+                return enumValues(ExecutionContext.MessageFormat.class);
             case m_debugEnvVar:
                 vals.add("true");
                 vals.add("false");
                 return vals;
+            case m_overflowPolicyEnvVar:
+                return enumValues(OverflowPolicy.class);
+            case m_renderModeEnvVar:
+                return enumValues(ExecutionContext.RenderMode.class);
+            case m_resultViewEnvVar:
+                return enumValues(ExecutionContext.ResultView.class);
             default:
                 return null;
         }
     }
 
+    /**
+     * @return the constant of the enum named val in any case, or null if there is none
+     */
+    private static <E extends Enum<E>> E parseEnum(Class<E> enumClass, String val) {
+        try {
+            return Enum.valueOf(enumClass, val.toUpperCase());
+        } catch(IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static <E extends Enum<E>> List<String> enumValues(Class<E> enumClass) {
+        List<String> vals = new ArrayList<>();
+        for(E constant : enumClass.getEnumConstants()) {
+            vals.add(constant.toString());
+        }
+        return vals;
+    }
+
     public void printAll(Writer writer) throws IOException {
         writer.write(m_messageFormatEnvVar);
         writer.write('=');
@@ -143,6 +195,21 @@ public class CliEnvironment {
         writer.write('=');
         writer.write(m_debug.toString());
         writer.write('\n');
+
+        writer.write(m_overflowPolicyEnvVar);
+        writer.write('=');
+        writer.write(m_overflowPolicy.name());
+        writer.write('\n');
+
+        writer.write(m_renderModeEnvVar);
+        writer.write('=');
+        writer.write(m_renderMode.name());
+        writer.write('\n');
+
+        writer.write(m_resultViewEnvVar);
+        writer.write('=');
+        writer.write(m_resultView.name());
+        writer.write('\n');
     }
 
     private void disableJavaSystemOutAndErr() {
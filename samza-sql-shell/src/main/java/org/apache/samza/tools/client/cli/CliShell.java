@@ -19,6 +19,9 @@ import org.jline.utils.InfoCmp;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 
 class CliShell {
@@ -30,6 +33,14 @@ class CliShell {
     private CliEnvironment m_env;
     private boolean m_keepRunning = true;
     private Map<Integer, String> m_executions = new TreeMap<>();
+    // Of executions started in the background
+    private Map<Integer, ExecutionHandle<?>> m_handles = new HashMap<>();
+    // How background starts went, shown before the next prompt
+    private final Queue<String> m_notices = new ConcurrentLinkedQueue<>();
+    // Where the results of the next query go, if anywhere
+    private File m_spoolFile;
+    private ExecutionContext.SpoolFormat m_spoolFormat;
+    private boolean m_spoolCompressed;
 
     public CliShell() {
         // Terminal
@@ -100,6 +111,7 @@ class CliShell {
             }
 
             while (m_keepRunning) {
+                printNotices();
                 String line;
                 try {
                     line = m_lineReader.readLine(m_1stPrompt);
@@ -128,6 +140,10 @@ class CliShell {
                             commandExecuteFile(command);
                             break;
 
+                        case EXPLAIN:
+                            commandExplain(command);
+                            break;
+
                         case EXIT:
                         case QUIT:
                             commandQuit();
@@ -157,6 +173,10 @@ class CliShell {
                             commandSet(command);
                             break;
 
+                        case SPOOL:
+                            commandSpool(command);
+                            break;
+
                         case SHOW_FUNCTIONS:
                             commandShowFunctions(command);
                             break;
@@ -235,6 +255,45 @@ class CliShell {
         m_writer.flush();
     }
 
+    private void commandExplain(CliCommand command) {
+        String parameters = command.getParameters();
+        if(CliUtil.isNullOrEmpty(parameters)) {
+            m_writer.println(command.getCommandType().getUsage());
+            m_writer.println();
+            m_writer.flush();
+            return;
+        }
+
+        QueryExplanation explanation = m_executor.explainQuery(m_env.generateExecutionContext(), parameters);
+
+        if(explanation == null) {
+            m_writer.println("Failed to explain. Error: " + m_executor.getErrorMsg());
+        }
+        else {
+            AttributedStyle titleStyle = AttributedStyle.DEFAULT.bold();
+            m_writer.println();
+            m_writer.println(new AttributedStringBuilder().style(titleStyle).append("Plan").toAnsi());
+            m_writer.print(explanation.getPlan());
+            m_writer.println();
+            m_writer.println(new AttributedStringBuilder().style(titleStyle).append("Result").toAnsi());
+            for(String line : formatSchema4Display(explanation.getResultSchema())) {
+                m_writer.println(line);
+            }
+            m_writer.println();
+            m_writer.println(new AttributedStringBuilder().style(titleStyle).append("Streams").toAnsi());
+            for(String source : explanation.getSources()) {
+                m_writer.println("from " + source);
+            }
+            m_writer.println("into " + explanation.getSink());
+            m_writer.println();
+            PhaseTimings timings = explanation.getTimings();
+            m_writer.println(String.format("Parsed in %.1f ms, validated and planned in %.1f ms", timings.getParseMs(),
+                    timings.getPlanMs()));
+        }
+        m_writer.println();
+        m_writer.flush();
+    }
+
     private void commandSet(CliCommand command) {
         String param = command.getParameters();
         if(CliUtil.isNullOrEmpty(param)) {
@@ -341,24 +400,78 @@ class CliShell {
         m_writer.flush();
     }
 
+    // The job starts in the background, so several can start at once while the shell takes commands
     private void commandInsertInto(CliCommand command) {
         String fullCmdStr = command.getFullCommand();
-        NonQueryResult result = m_executor.executeNonQuery(m_env.generateExecutionContext(),
+        ExecutionHandle<NonQueryResult> handle = m_executor.executeNonQueryAsync(m_env.generateExecutionContext(),
                 Collections.singletonList(fullCmdStr));
+        int execId = handle.getExecutionId();
+        m_executions.put(execId, fullCmdStr);
+        m_handles.put(execId, handle);
+        handle.getResult().thenAccept(result -> notice(result.succeeded()
+                ? String.format("Execution %d started.", execId)
+                : String.format("Execution %d failed to start. Error: %s", execId, handle.getError())));
+
+        m_writer.print("Execution submitted. Id: ");
+        m_writer.println(String.valueOf(execId));
+        m_writer.println("It starts in the background. LS shows how it is going.");
+        m_writer.println();
+        m_writer.flush();
+    }
 
-        if (result.succeeded()) {
-            m_writer.print("Execution submitted successfully. Id: ");
-            m_writer.println(String.valueOf(result.getExecutionId()));
-            m_executions.put(result.getExecutionId(), fullCmdStr);
-        } else {
-            m_writer.write("Execution failed to submit. Error: ");
-            m_writer.println(m_executor.getErrorMsg());
+    /**
+     * Shows the notice above the prompt right away if the shell is reading a command. Otherwise, like while a
+     * result view is open, it waits for the next prompt.
+     */
+    private void notice(String notice) {
+        m_notices.add(notice);
+        // The line reader redraws the prompt holding its own monitor
+        synchronized (m_lineReader) {
+            if(m_notices.isEmpty())
+                return;
+            try {
+                m_lineReader.callWidget(LineReader.CLEAR);
+            } catch (IllegalStateException e) {
+                // Not reading
+                return;
+            }
+            String queued = m_notices.poll();
+            while(queued != null) {
+                m_writer.println(queued);
+                queued = m_notices.poll();
+            }
+            m_lineReader.callWidget(LineReader.REDRAW_LINE);
+            m_lineReader.callWidget(LineReader.REDISPLAY);
+            m_writer.flush();
         }
+    }
 
+    private void printNotices() {
+        String notice = m_notices.poll();
+        if(notice == null)
+            return;
+
+        while(notice != null) {
+            m_writer.println(notice);
+            notice = m_notices.poll();
+        }
         m_writer.println();
         m_writer.flush();
     }
 
+    // Of executions still starting or that failed to, null otherwise
+    private String getStartStatus(int execId) {
+        ExecutionHandle<?> handle = m_handles.get(execId);
+        if(handle == null)
+            return null;
+        if(handle.getError() != null)
+            return "FAILED TO START";
+
+        ExecutionHandle.State state = handle.getState();
+        return state == ExecutionHandle.State.PLANNING || state == ExecutionHandle.State.STARTING
+                ? state.name() : null;
+    }
+
     private void commandLs(CliCommand command) {
         List<Integer> execIds = new ArrayList<>();
         String parameters = command.getParameters();
@@ -396,13 +509,16 @@ class CliShell {
             if(cmd == null)
                 continue;
 
-            String status = "UNKNOWN";
-            try {
-                ExecutionStatus execStatus = m_executor.queryExecutionStatus(id);
-                if(execStatus != null)
-                    status = execStatus.name();
-            }
-            catch (ExecutionException e) {
+            String status = getStartStatus(id);
+            if(status == null) {
+                status = "UNKNOWN";
+                try {
+                    ExecutionStatus execStatus = m_executor.queryExecutionStatus(id);
+                    if(execStatus != null)
+                        status = execStatus.name();
+                }
+                catch (ExecutionException e) {
+                }
             }
 
             int cmdStartIdx = 0;
@@ -434,11 +550,46 @@ class CliShell {
                     m_writer.println(attrBuilder.toAnsi());
                 }
             }
+            // Executions asked for by ID get how long they took to start too
+            if(!CliUtil.isNullOrEmpty(parameters)) {
+                String timings = formatTimings(id);
+                if(timings.length() > 0) {
+                    StringBuilder timingsLine = new StringBuilder(terminalWidth);
+                    CliUtil.appendTo(timingsLine, 1 + ID_WIDTH + 1 + STATUS_WIDTH + 1, CliConstants.SPACE);
+                    timingsLine.append(timings);
+                    m_writer.println(timingsLine);
+                }
+            }
         }
         m_writer.println();
         m_writer.flush();
     }
 
+    private String formatTimings(int execId) {
+        StringBuilder timings = new StringBuilder();
+        ExecutionHandle<?> handle = m_handles.get(execId);
+        if(handle != null && handle.getError() != null) {
+            return "error: " + handle.getError();
+        }
+        PhaseTimings phaseTimings = m_executor.getPhaseTimings(execId);
+        if(phaseTimings != null) {
+            if(phaseTimings.isPlanCached()) {
+                timings.append("plan cached  ");
+            } else if(phaseTimings.getPlanMs() >= 0) {
+                timings.append(String.format("parse %.0f ms  validate+plan %.0f ms  ", phaseTimings.getParseMs(),
+                        phaseTimings.getPlanMs()));
+            }
+            if(phaseTimings.getJobStartMs() >= 0) {
+                timings.append(String.format("job start %.0f ms  ", phaseTimings.getJobStartMs()));
+            }
+        }
+        QueryLatency latency = m_executor.getQueryLatency(execId);
+        if(latency != null && latency.getFirstRowMs() >= 0) {
+            timings.append(String.format("first row %.0f ms", latency.getFirstRowMs()));
+        }
+        return timings.toString().trim();
+    }
+
     private void commandRm(CliCommand command) {
         String parameters = command.getParameters();
         if (CliUtil.isNullOrEmpty(parameters)) {
@@ -468,6 +619,18 @@ class CliShell {
 
         ExecutionContext exeContext = m_env.generateExecutionContext();
         for(Integer id : execIds) {
+            // Executions that never started have nothing to remove in the executor
+            String startStatus = getStartStatus(id);
+            if(startStatus != null && m_handles.get(id).getError() != null) {
+                m_writer.println(String.format("Execution %d was removed.", id));
+                m_executions.remove(id);
+                m_handles.remove(id);
+                continue;
+            }
+            if(startStatus != null) {
+                m_writer.println(String.format("Execution %d is still starting.", id));
+                continue;
+            }
             ExecutionStatus status = null;
             try {
                 status = m_executor.queryExecutionStatus(id);
@@ -486,6 +649,7 @@ class CliShell {
             if(m_executor.removeExecution(exeContext, id)) {
                 m_writer.println(String.format("Execution %d was removed.", id));
                 m_executions.remove(id);
+                m_handles.remove(id);
             } else {
                 m_writer.println(String.format("Error: failed to remove execution %d. %s",
                         id, m_executor.getErrorMsg()));
@@ -502,20 +666,204 @@ class CliShell {
 
     private void commandSelect(CliCommand command) {
         ExecutionContext exeContext = m_env.generateExecutionContext();
-        QueryResult queryResult = m_executor.executeQuery(exeContext, command.getFullCommand());
+        File spoolFile = m_spoolFile;
+        if(spoolFile != null) {
+            exeContext.setSpool(spoolFile, m_spoolFormat, m_spoolCompressed);
+        }
+        ExecutionHandle<QueryResult> handle = m_executor.executeQueryAsync(exeContext, command.getFullCommand());
+        QueryResult queryResult = awaitStart(exeContext, handle);
 
         if(queryResult.succeeded()) {
-            CliView view = new QueryResultLogView();
+            // Only a query that runs takes the spool file, one that fails leaves it to the next
+            m_spoolFile = null;
+            CliView view;
+            switch (exeContext.getResultView()) {
+                case TABLE:
+                    view = new QueryResultTableView();
+                    break;
+                case STATS:
+                    view = new QueryResultStatsView();
+                    break;
+                default:
+                    view = new QueryResultLogView();
+                    break;
+            }
             view.open(this, queryResult);
             m_executor.stopExecution(exeContext, queryResult.getExecutionId());
+            if(spoolFile != null) {
+                printSpoolResult(queryResult.getExecutionId(), spoolFile);
+            }
         } else {
             m_writer.write("Execution failed. Error: ");
-            m_writer.println(m_executor.getErrorMsg());
+            m_writer.println(handle.getError());
+            if(spoolFile != null) {
+                m_writer.println(String.format("The results of the next query still go to %s.", spoolFile));
+            }
             m_writer.println();
             m_writer.flush();
         }
     }
 
+    /**
+     * Waits for the query to run, telling how its start goes. Ctrl-C stops the start.
+     */
+    private QueryResult awaitStart(ExecutionContext exeContext, ExecutionHandle<QueryResult> handle) {
+        int execId = handle.getExecutionId();
+        Terminal.SignalHandler prevHandler = m_terminal.handle(Terminal.Signal.INT, signal -> {
+            if(m_executor.stopExecution(exeContext, execId)) {
+                m_writer.println("Stopping...");
+                m_writer.flush();
+            }
+        });
+        try {
+            ExecutionHandle.State shownState = null;
+            while(!handle.getResult().isDone()) {
+                ExecutionHandle.State state = handle.getState();
+                if(state != shownState
+                        && (state == ExecutionHandle.State.PLANNING || state == ExecutionHandle.State.STARTING)) {
+                    m_writer.println(state == ExecutionHandle.State.PLANNING
+                            ? String.format("Planning execution %d. Ctrl-C stops it.", execId)
+                            : "Starting the job...");
+                    m_writer.flush();
+                    shownState = state;
+                }
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+            }
+            return handle.getResult().join();
+        } finally {
+            m_terminal.handle(Terminal.Signal.INT, prevHandler);
+        }
+    }
+
+    private void commandSpool(CliCommand command) {
+        String parameters = command.getParameters();
+        if(CliUtil.isNullOrEmpty(parameters)) {
+            if(m_spoolFile == null) {
+                m_writer.println("Not spooling.");
+            } else {
+                m_writer.println(String.format("The results of the next query go to %s as %s%s.", m_spoolFile,
+                        m_spoolFormat, m_spoolCompressed ? ", compressed" : ""));
+            }
+            m_writer.println();
+            m_writer.flush();
+            return;
+        }
+
+        if(parameters.trim().equalsIgnoreCase("OFF")) {
+            m_spoolFile = null;
+            m_writer.println("Spooling canceled.");
+            m_writer.println();
+            m_writer.flush();
+            return;
+        }
+
+        // Options come last, the file is the rest of the line so its name may have spaces
+        String path = parameters.trim();
+        ExecutionContext.SpoolFormat format = null;
+        boolean compressed = false;
+        Integer execId = null;
+        int lastSpace = lastIndexOfSpace(path);
+        while(lastSpace > 0) {
+            String option = path.substring(lastSpace + 1).toUpperCase();
+            String rest = path.substring(0, lastSpace).trim();
+            int restSpace = lastIndexOfSpace(rest);
+            if(option.equals("COMPRESSED")) {
+                compressed = true;
+            } else if(format == null && isSpoolFormat(option)) {
+                format = ExecutionContext.SpoolFormat.valueOf(option);
+            } else if(execId == null && restSpace > 0 && rest.substring(restSpace + 1).equalsIgnoreCase("ON")
+                    && option.matches("\\d{1,9}")) {
+                execId = Integer.valueOf(option);
+                rest = rest.substring(0, restSpace).trim();
+            } else {
+                break;
+            }
+            path = rest;
+            lastSpace = lastIndexOfSpace(path);
+        }
+        if(path.length() > 1 && path.startsWith("\"") && path.endsWith("\"")) {
+            path = path.substring(1, path.length() - 1);
+        }
+
+        File file = new File(path);
+        String name = file.getName().toLowerCase();
+        if(name.endsWith(".gz")) {
+            compressed = true;
+            name = name.substring(0, name.length() - ".gz".length());
+        }
+        if(format == null) {
+            format = name.endsWith(".csv") ? ExecutionContext.SpoolFormat.CSV
+                    : name.endsWith(".avro") ? ExecutionContext.SpoolFormat.AVRO : ExecutionContext.SpoolFormat.JSONL;
+        }
+        if(file.isDirectory()) {
+            m_writer.print("Error: ");
+            m_writer.print(file.getPath());
+            m_writer.println(" is a directory.");
+            m_writer.println();
+            m_writer.flush();
+            return;
+        }
+
+        if(execId != null) {
+            ExecutionContext exeContext = m_env.generateExecutionContext();
+            exeContext.setSpool(file, format, compressed);
+            if(m_executor.spoolQueryResult(exeContext, execId)) {
+                m_writer.println(String.format("The results of execution %d are now written to %s as %s%s.", execId,
+                        file, format, compressed ? ", compressed" : ""));
+            } else {
+                m_writer.println(String.format("Error: failed to spool execution %d. %s", execId,
+                        m_executor.getErrorMsg()));
+            }
+            m_writer.println();
+            m_writer.flush();
+            return;
+        }
+
+        m_spoolFile = file;
+        m_spoolFormat = format;
+        m_spoolCompressed = compressed;
+        m_writer.println(String.format("The results of the next query will be written to %s as %s%s.", file,
+                format, compressed ? ", compressed" : ""));
+        m_writer.println();
+        m_writer.flush();
+    }
+
+    private static int lastIndexOfSpace(String str) {
+        for(int i = str.length() - 1; i >= 0; --i) {
+            if(Character.isWhitespace(str.charAt(i)))
+                return i;
+        }
+        return -1;
+    }
+
+    private static boolean isSpoolFormat(String name) {
+        for(ExecutionContext.SpoolFormat format : ExecutionContext.SpoolFormat.values()) {
+            if(format.name().equals(name))
+                return true;
+        }
+        return false;
+    }
+
+    private void printSpoolResult(int execId, File spoolFile) {
+        String error = m_executor.getSpoolError(execId);
+        if(error != null) {
+            m_writer.print("Failed to write the results to ");
+            m_writer.print(spoolFile.getPath());
+            m_writer.print(". Error: ");
+            m_writer.println(error);
+        } else {
+            m_writer.println(String.format("%d rows written to %s.", m_executor.getSpooledRowCount(execId),
+                    spoolFile.getPath()));
+        }
+        long coercedRows = m_executor.getSpoolCoercedRowCount(execId);
+        if(coercedRows > 0) {
+            m_writer.println(String.format("Warning: %d rows had values that didn't fit the type of their column. "
+                    + "Those values were written as null.", coercedRows));
+        }
+        m_writer.println();
+        m_writer.flush();
+    }
+
     private void commandShowTables(CliCommand command) {
         List<String> tableNames = m_executor.listTables(m_env.generateExecutionContext());
 
@@ -575,6 +923,10 @@ class CliShell {
 
         ExecutionContext exeContext = m_env.generateExecutionContext();
         for(Integer id : execIds) {
+            if(getStartStatus(id) != null && m_handles.get(id).getError() != null) {
+                m_writer.println(String.format("Execution %d never started.", id));
+                continue;
+            }
             if(m_executor.stopExecution(exeContext, id)) {
                 m_writer.println(String.format("Request to stop execution %d was sent.", id));
             }
@@ -0,0 +1,198 @@
+package org.apache.samza.tools.client.cli;
+
+import org.apache.samza.tools.client.interfaces.ExecutionContext;
+import org.apache.samza.tools.client.interfaces.QueryResult;
+import org.apache.samza.tools.client.interfaces.SqlExecutor;
+import org.jline.keymap.BindingReader;
+import org.jline.keymap.KeyMap;
+import org.jline.terminal.Terminal;
+import org.jline.utils.AttributedStringBuilder;
+import org.jline.utils.AttributedStyle;
+import org.jline.utils.Curses;
+import org.jline.utils.InfoCmp;
+
+
+/**
+ * What the views of a running query have in common: the terminal mode they run in, a display thread drawing
+ * frames until the view is quit, an input thread reading keys and the status bar that starts with the keys.
+ *
+ * BindingReader has no real nonblocking mode, so keys are read by a thread of their own. Keys and signals
+ * wake the display thread up so it draws the next frame right away.
+ */
+abstract class FullScreenView<A extends Enum<A>> implements CliView {
+    protected static final AttributedStyle STATUS_BAR_STYLE = AttributedStyle.DEFAULT
+            .background(AttributedStyle.WHITE).foreground(AttributedStyle.BLACK);
+
+    protected int m_width;
+    protected int m_height;
+    protected Terminal m_terminal;
+    protected SqlExecutor m_executor;
+    protected ExecutionContext m_exeContext;
+    protected int m_execId;
+    protected BindingReader m_keyReader;
+    protected volatile boolean m_keepRunning = true;
+
+    private final boolean m_keypad;
+    private volatile Thread m_displayThread;
+    private Thread m_inputThread;
+
+    /**
+     * @param keypad whether the view reads arrow and paging keys
+     */
+    protected FullScreenView(boolean keypad) {
+        m_keypad = keypad;
+    }
+
+    // -- implementation of CliView -------------------------------------------
+
+    public void open(CliShell shell, QueryResult queryResult) {
+        m_terminal = shell.getTerminal();
+        m_executor = shell.getExecutor();
+        m_exeContext = shell.getEnvironment().generateExecutionContext();
+        m_execId = queryResult.getExecutionId();
+        init(queryResult);
+
+        TerminalMode terminalMode = TerminalMode.enter(m_terminal, this::handleSignal, m_keypad);
+        try {
+            m_keyReader = new BindingReader(m_terminal.reader());
+            m_inputThread = new InputThread();
+            m_displayThread = Thread.currentThread();
+            m_inputThread.start();
+            while (m_keepRunning) {
+                display();
+                awaitNextFrame();
+                Thread.interrupted();
+            }
+            m_displayThread = null;
+            Thread.interrupted();
+
+            try {
+                m_inputThread.join(1* 1000);
+            } catch (InterruptedException e) {
+            }
+        } finally {
+            close();
+            terminalMode.restore();
+        }
+        if(m_inputThread.isAlive()) {
+            m_terminal.writer().println("Warning: input thread hang. Have to kill!");
+            m_terminal.writer().flush();
+            m_inputThread.interrupt();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    // Called before the terminal mode is entered
+    protected void init(QueryResult queryResult) {
+    }
+
+    // Called on the display thread once it stops drawing frames
+    protected void close() {
+    }
+
+    protected abstract void display();
+
+    /**
+     * Waits until the next frame is due. Returns early when the display thread is woken up.
+     */
+    protected abstract void awaitNextFrame();
+
+    protected abstract KeyMap<A> bindActionKey();
+
+    // Called on the input thread for each key bound by bindActionKey
+    protected abstract void handleAction(A action);
+
+    // Signals other than INT and QUIT, which quit the view
+    protected void handleOtherSignal(Terminal.Signal signal) {
+    }
+
+    protected void quit() {
+        m_keepRunning = false;
+        wakeUpDisplay();
+    }
+
+    // Makes the display thread stop waiting and draw a frame
+    protected void wakeUpDisplay() {
+        Thread displayThread = m_displayThread;
+        if (displayThread != null) {
+            displayThread.interrupt();
+        }
+    }
+
+    protected void updateTerminalSize() {
+        m_terminal.flush();
+        m_width = Math.max(m_terminal.getWidth(), 1);
+        m_height = m_terminal.getHeight();
+    }
+
+    /**
+     * @return a status bar telling the keys to quit the view and the given ones, each followed by what it does
+     */
+    protected static AttributedStringBuilder beginStatusBar(String... keysAndActions) {
+        AttributedStringBuilder attrBuilder = new AttributedStringBuilder();
+        appendKey(attrBuilder, "Q", "Quit");
+        for (int i = 0; i + 1 < keysAndActions.length; i += 2) {
+            appendKey(attrBuilder, keysAndActions[i], keysAndActions[i + 1]);
+        }
+        return attrBuilder;
+    }
+
+    protected static void appendKey(AttributedStringBuilder attrBuilder, String key, String action) {
+        attrBuilder.style(STATUS_BAR_STYLE.bold().italic())
+                .append(key)
+                .style(STATUS_BAR_STYLE)
+                .append(": " + action + "     ");
+    }
+
+    protected void appendLine(StringBuilder frame, CharSequence text, int screenLine) {
+        appendCapability(frame, InfoCmp.Capability.cursor_address, screenLine, 0);
+        frame.append(text);
+        appendCapability(frame, InfoCmp.Capability.clr_eol);
+    }
+
+    protected void appendCapability(StringBuilder frame, InfoCmp.Capability capability, Object... params) {
+        appendCapability(m_terminal, frame, capability, params);
+    }
+
+    // Terminals without the capability, like dumb ones, get nothing
+    static void appendCapability(Terminal terminal, Appendable frame, InfoCmp.Capability capability,
+            Object... params) {
+        String str = terminal.getStringCapability(capability);
+        if (str != null) {
+            Curses.tputs(frame, str, params);
+        }
+    }
+
+    private void handleSignal(Terminal.Signal signal) {
+        switch (signal) {
+            case INT:
+            case QUIT:
+                m_keepRunning = false;
+                break;
+            default:
+                handleOtherSignal(signal);
+                break;
+        }
+        // Anything else, like a resize, at least needs a new frame
+        wakeUpDisplay();
+    }
+
+    private class InputThread extends Thread {
+        public InputThread() {
+        }
+
+        public void run() {
+            KeyMap<A> keyMap = bindActionKey();
+
+            A action = m_keyReader.readBinding(keyMap, null, true);
+            while (action != null && m_keepRunning) {
+                handleAction(action);
+                if (!m_keepRunning) {
+                    return;
+                }
+                action = m_keyReader.readBinding(keyMap, null, true);
+            }
+        }
+    }
+}
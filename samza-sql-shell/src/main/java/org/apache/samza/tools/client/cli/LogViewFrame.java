@@ -0,0 +1,146 @@
+package org.apache.samza.tools.client.cli;
+
+import org.apache.samza.tools.client.interfaces.QueryResultRow;
+import org.apache.samza.tools.client.util.Utf8Buffer;
+import org.jline.terminal.Terminal;
+import org.jline.utils.AttributedStringBuilder;
+import org.jline.utils.AttributedStyle;
+import org.jline.utils.InfoCmp;
+
+import java.io.IOError;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+
+
+/**
+ * One frame of QueryResultLogView: the rows that arrived since the last frame followed by the status bar.
+ * The frame, escape sequences included, is built in a UTF-8 buffer that is reused from frame to frame and
+ * goes to the terminal in one write and one flush. Rows that come with their UTF-8 payload, like COMPACT
+ * ones, are copied into it without being decoded.
+ */
+class LogViewFrame {
+    private final Terminal m_terminal;
+    private final boolean m_utf8Terminal;
+    private final Utf8Buffer m_buffer = new Utf8Buffer(16 * 1024);
+    // Formatted rows as String[], rows shown as is as byte[]
+    private final ArrayDeque<Object> m_lines = new ArrayDeque<>();
+
+    LogViewFrame(Terminal terminal) {
+        m_terminal = terminal;
+        m_utf8Terminal = StandardCharsets.UTF_8.equals(terminal.encoding());
+    }
+
+    void begin() {
+        m_buffer.clear();
+    }
+
+    /**
+     * Formats rows from the newest back until visibleLines are filled, and appends them in order after a line
+     * telling how many rows scrolled past unseen, which takes one of the visibleLines. The status bar is
+     * cleared first so it doesn't scroll up with the rows.
+     * @return number of rows appended, at least one if there are rows
+     */
+    int appendRows(List<QueryResultRow> rows, int rowsSkipped, int visibleLines, int height) {
+        clearStatusBar(height);
+
+        int usedLines = 0;
+        int first = rows.size();
+        // Rows are skipped for sure when there are more than lines, as each takes at least one
+        boolean skipping = rowsSkipped > 0 || rows.size() > visibleLines;
+        int rowLines = skipping ? visibleLines - 1 : visibleLines;
+        while (first > 0 && (usedLines < rowLines || first == rows.size())) {
+            QueryResultRow row = rows.get(--first);
+            byte[] payload = row.getUtf8Payload();
+            if (payload != null) {
+                // Line breaks in the payload are escaped
+                m_lines.addFirst(payload);
+            } else {
+                String[] line = row.format();
+                for (String cell : line) {
+                    usedLines += cell == null ? 0 : countLineBreaks(cell);
+                }
+                m_lines.addFirst(line);
+            }
+            usedLines++;
+        }
+        if (first > 0 && !skipping && usedLines >= visibleLines && first < rows.size() - 1) {
+            // Rows spanning several lines skip others after all, the oldest row appended makes room for the
+            // line telling so
+            m_lines.pollFirst();
+            first++;
+        }
+        int appended = rows.size() - first;
+        rowsSkipped += first;
+
+        if (rowsSkipped > 0) {
+            m_buffer.append(new AttributedStringBuilder()
+                    .style(AttributedStyle.DEFAULT.faint().italic())
+                    .append("... " + rowsSkipped + " rows skipped ...")
+                    .toAnsi())
+                    .append('\n');
+        }
+        Object next;
+        while ((next = m_lines.pollFirst()) != null) {
+            if (next instanceof byte[]) {
+                m_buffer.appendEscaped((byte[]) next).append('\n');
+                continue;
+            }
+            String[] line = (String[]) next;
+            for (int i = 0; i < line.length; ++i) {
+                m_buffer.append(line[i] == null ? "null" : line[i]).append(i == line.length - 1 ? '\n' : ' ');
+            }
+        }
+        return appended;
+    }
+
+    /**
+     * Replaces the last line of the screen with the given ANSI text, leaving the cursor where it was.
+     */
+    void appendStatusBar(String statusBarText, int height) {
+        appendCapability(InfoCmp.Capability.save_cursor);
+        appendCapability(InfoCmp.Capability.cursor_address, height - 1, 0);
+        appendCapability(InfoCmp.Capability.delete_line);
+        m_buffer.append(statusBarText);
+        appendCapability(InfoCmp.Capability.restore_cursor);
+    }
+
+    void write() {
+        PrintWriter writer = m_terminal.writer();
+        if (!m_utf8Terminal) {
+            writer.write(m_buffer.toString());
+            writer.flush();
+            return;
+        }
+        // Anything written through the writer has to go out first
+        writer.flush();
+        try {
+            m_buffer.writeTo(m_terminal.output());
+            m_terminal.output().flush();
+        } catch (IOException e) {
+            throw new IOError(e);
+        }
+    }
+
+    private void clearStatusBar(int height) {
+        appendCapability(InfoCmp.Capability.save_cursor);
+        appendCapability(InfoCmp.Capability.cursor_address, height - 1, 0);
+        appendCapability(InfoCmp.Capability.delete_line);
+        appendCapability(InfoCmp.Capability.restore_cursor);
+    }
+
+    private void appendCapability(InfoCmp.Capability capability, Object... params) {
+        FullScreenView.appendCapability(m_terminal, m_buffer, capability, params);
+    }
+
+    private static int countLineBreaks(String str) {
+        int count = 0;
+        for (int i = 0; i < str.length(); ++i) {
+            if (str.charAt(i) == '\n')
+                count++;
+        }
+        return count;
+    }
+}
@@ -1,13 +1,14 @@
 package org.apache.samza.tools.client.cli;
 
 import org.apache.samza.tools.client.interfaces.ExecutionContext;
+import org.apache.samza.tools.client.interfaces.QueryLatency;
 import org.apache.samza.tools.client.interfaces.QueryResult;
-import org.apache.samza.tools.client.interfaces.SqlExecutor;
+import org.apache.samza.tools.client.interfaces.QueryResultRow;
 import org.apache.samza.tools.client.util.CliUtil;
-import org.jline.keymap.BindingReader;
+import org.apache.samza.tools.client.util.LatencyHistogram;
+import org.apache.samza.tools.client.util.RateWindow;
 import org.jline.keymap.KeyMap;
 import org.jline.reader.UserInterruptException;
-import org.jline.terminal.Attributes;
 import org.jline.terminal.Cursor;
 import org.jline.terminal.Size;
 import org.jline.terminal.Terminal;
@@ -17,6 +18,8 @@ import java.io.IOError;
 import java.io.IOException;
 import java.time.LocalTime;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import static org.jline.keymap.KeyMap.ctrl;
 import static org.jline.keymap.KeyMap.esc;
@@ -28,194 +31,154 @@ import static org.jline.keymap.KeyMap.key;
  */
 
 
-public class QueryResultLogView implements CliView {
-    private static final int DEFAULT_REFRESH_INTERVAL = 100; // all intervals are in ms
-
-    private int m_refreshInterval = DEFAULT_REFRESH_INTERVAL;
-    private int m_width;
-    private int m_height;
-    private Terminal  m_terminal;
-    private SqlExecutor m_executor;
-    private ExecutionContext m_exeContext;
-    private volatile boolean m_keepRunning = true;
-    private boolean m_paused = false;
-
-    // Stupid BindingReader doesn't have a real nonblocking mode
-    // Must create a new thread to get user input
-    private Thread m_inputThread;
-    private BindingReader m_keyReader;
+public class QueryResultLogView extends FullScreenView<QueryResultLogView.Action> {
+    private static final int DEFAULT_MAX_FRAME_RATE = 60; // frames per second
+    private static final int DEFAULT_IDLE_REFRESH_INTERVAL = 1000; // all intervals are in ms
+    private static final int RATE_WINDOW = 5000;
+
+    private int m_maxFrameRate = DEFAULT_MAX_FRAME_RATE;
+    // How often the status bar is redrawn when no rows arrive
+    private int m_idleRefreshInterval = DEFAULT_IDLE_REFRESH_INTERVAL;
+    private LogViewFrame m_frame;
+    private volatile boolean m_paused = false;
+    private long m_lastFrameNanos;
+    private long m_displayedRows;
+    private long m_consumedRows;
+    private final RateWindow m_inputRate = new RateWindow(RATE_WINDOW);
+    private final RateWindow m_outputRate = new RateWindow(RATE_WINDOW);
+    // From rows being captured to the frame showing them being written to the terminal, in nanoseconds
+    private final LatencyHistogram m_renderLatencies = new LatencyHistogram();
+    // SAMPLE render mode: rows arriving per frame, smoothed, and the 1-in-N ratio drawn
+    private double m_rowsPerFrame;
+    private int m_sampleStep = 1;
 
     public QueryResultLogView() {
+        super(false);
     }
 
-    // -- implementation of CliView -------------------------------------------
-
-    public void open(CliShell shell, QueryResult queryResult) {
-        m_terminal = shell.getTerminal();
-        m_executor = shell.getExecutor();
-        m_exeContext = shell.getEnvironment().generateExecutionContext();
+    // ------------------------------------------------------------------------
 
-        TerminalStatus prevStatus = setupTerminal();
-        try {
-            m_keyReader = new BindingReader(m_terminal.reader());
-            m_inputThread = new InputThread();
-            m_inputThread.start();
-            while (m_keepRunning) {
-                try {
-                    display();
-                    if(m_keepRunning)
-                        Thread.sleep(m_refreshInterval);
-                } catch (InterruptedException e) {
-                    continue;
-                }
-            }
+    @Override
+    protected void init(QueryResult queryResult) {
+        m_frame = new LogViewFrame(m_terminal);
+    }
 
-            try {
-                m_inputThread.join(1* 1000);
-            } catch (InterruptedException e) {
-            }
-        } finally {
-            restoreTerminal(prevStatus);
+    // Draws as soon as rows arrive, or now and then to keep the status bar current
+    @Override
+    protected void awaitNextFrame() {
+        if (m_paused) {
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(m_idleRefreshInterval));
+        } else {
+            m_executor.awaitRows(m_execId, m_idleRefreshInterval);
         }
-        if(m_inputThread.isAlive()) {
-            m_terminal.writer().println("Warning: input thread hang. Have to kill!");
-            m_terminal.writer().flush();
-            m_inputThread.interrupt();
+        // Rows arriving within a frame interval of the last frame are drawn together in the next one
+        long untilNextFrame = m_lastFrameNanos + TimeUnit.SECONDS.toNanos(1) / m_maxFrameRate - System.nanoTime();
+        if (untilNextFrame > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(this, untilNextFrame);
         }
     }
 
-    // ------------------------------------------------------------------------
-
-    private void display() {
+    /**
+     * Draws one frame: every row that arrived since the last frame when they fit on the screen, otherwise
+     * the newest ones that do. How many rows a frame takes thus follows the terminal height and the input
+     * rate, and the status bar is redrawn once per frame however many rows there are.
+     */
+    @Override
+    protected void display() {
         updateTerminalSize();
-        int rowsInBuffer = m_executor.getRowCount();
-        if(rowsInBuffer <= 0 || m_paused) {
-            clearStatusBar();
-            drawStatusBar(rowsInBuffer);
-            return;
+        m_frame.begin();
+        int rowsInBuffer = m_executor.getRowCount(m_execId);
+        List<QueryResultRow> rows = Collections.emptyList();
+        int appended = 0;
+        if(rowsInBuffer > 0 && !m_paused) {
+            // Every row takes at least a line, so only the newest rows that fit on the screen can be seen.
+            // Older rows are dropped without being read or formatted.
+            int visibleLines = Math.max(m_height - 1, 1);
+            if(m_exeContext.getRenderMode() == ExecutionContext.RenderMode.SAMPLE) {
+                // About a screenful per frame, spread evenly over the rows that arrived. Frames come more
+                // often as rows come faster, up to the frame rate or as fast as rows can be drawn, and past
+                // that the ratio goes up.
+                m_rowsPerFrame = m_rowsPerFrame == 0 ? rowsInBuffer : 0.8 * m_rowsPerFrame + 0.2 * rowsInBuffer;
+                m_sampleStep = Math.max((int) Math.ceil(m_rowsPerFrame / visibleLines), 1);
+                rows = m_executor.consumeQueryResultSample(m_exeContext, m_execId, rowsInBuffer - 1, m_sampleStep);
+                appended = m_frame.appendRows(rows, 0, visibleLines, m_height);
+            } else {
+                int firstRow = Math.max(rowsInBuffer - visibleLines, 0);
+                rows = m_executor.consumeQueryResultRows(m_exeContext, m_execId, firstRow, rowsInBuffer - 1);
+                appended = m_frame.appendRows(rows, firstRow, visibleLines, m_height);
+            }
+            m_displayedRows += appended;
+            m_consumedRows += rowsInBuffer;
         }
-
-        while(rowsInBuffer > 0) {
-            clearStatusBar();
-            int step = 10;
-            List<String[]> lines = m_executor.consumeQueryResult(m_exeContext, 0, step - 1);
-            for (String[] line : lines) {
-                for (int i = 0; i <line.length; ++i) {
-                    m_terminal.writer().write(line[i] == null ? "null" : line[i]);
-                    m_terminal.writer().write(i == line.length - 1 ? "\n" : " ");
-                }
+        long now = System.nanoTime();
+        m_inputRate.add(now, m_executor.getProducedRowCount(m_execId));
+        m_outputRate.add(now, m_consumedRows);
+        m_frame.appendStatusBar(getStatusBarText(rowsInBuffer), m_height);
+        m_frame.write();
+        m_lastFrameNanos = System.nanoTime();
+        // The rows appended are the newest ones
+        for (int i = rows.size() - appended; i < rows.size(); i++) {
+            long captureNanos = rows.get(i).getCaptureNanos();
+            if (captureNanos >= 0) {
+                m_renderLatencies.record(m_lastFrameNanos - captureNanos);
             }
-            m_terminal.flush();
-            clearStatusBar();
-            drawStatusBar(rowsInBuffer);
-
-            if(!m_keepRunning || m_paused)
-                return;
-
-            rowsInBuffer = m_executor.getRowCount();
         }
     }
 
-    private void clearStatusBar() {
-        m_terminal.puts(InfoCmp.Capability.save_cursor);
-        m_terminal.puts(InfoCmp.Capability.cursor_address, m_height - 1, 0);
-        m_terminal.puts(InfoCmp.Capability.delete_line, m_height - 1, 0);
-        m_terminal.puts(InfoCmp.Capability.restore_cursor);
-    }
-
-    private void drawStatusBar(int rowsInBuffer) {
-        m_terminal.puts(InfoCmp.Capability.save_cursor);
-        m_terminal.puts(InfoCmp.Capability.cursor_address, m_height - 1, 0);
-        AttributedStyle statusBarStyle = AttributedStyle.DEFAULT.background(AttributedStyle.WHITE)
-                .foreground(AttributedStyle.BLACK);
-        AttributedStringBuilder attrBuilder = new AttributedStringBuilder()
-                .style(statusBarStyle.bold().italic())
-                .append("Q")
-                .style(statusBarStyle)
-                .append(": Quit     ")
-                .style(statusBarStyle.bold().italic())
-                .append("SPACE")
-                .style(statusBarStyle)
-                .append(": Pause/Resume     ")
+    private String getStatusBarText(int rowsInBuffer) {
+        AttributedStringBuilder attrBuilder = beginStatusBar("SPACE", "Pause/Resume")
                 .append(String.valueOf(rowsInBuffer) + " rows in buffer     ");
+        if(m_exeContext.getRenderMode() == ExecutionContext.RenderMode.SAMPLE) {
+            attrBuilder.append(String.valueOf(m_executor.getProducedRowCount(m_execId)) + " rows produced     ")
+                    .append(String.valueOf(m_displayedRows) + " displayed     ")
+                    .append("sampling 1:" + m_sampleStep + "     ");
+        }
+        attrBuilder.append(String.format("in %,.0f/s  out %,.0f/s     ", m_inputRate.getRatePerSecond(),
+                m_outputRate.getRatePerSecond()));
+        // Where rows spend their time: getting to the shell, waiting in its buffer, and from being captured to
+        // being on the screen
+        QueryLatency latency = m_executor.getQueryLatency(m_execId);
+        if(latency != null && latency.getFirstRowMs() >= 0) {
+            attrBuilder.append(String.format("first row %.0f ms  ", latency.getFirstRowMs()));
+        }
+        if(latency != null && latency.getSourceP50Ms() >= 0) {
+            attrBuilder.append(String.format("source p50/p99 %.0f/%.0f ms  ", latency.getSourceP50Ms(),
+                    latency.getSourceP99Ms()));
+        } else if(latency != null && latency.isSourceTimestampMissing()) {
+            attrBuilder.append("source n/a (no timestamp field)  ");
+        }
+        if(latency != null && latency.getBufferP50Ms() >= 0) {
+            attrBuilder.append(String.format("buffer p50/p99 %.1f/%.1f ms  ", latency.getBufferP50Ms(),
+                    latency.getBufferP99Ms()));
+        }
+        if(m_renderLatencies.getCount() > 0) {
+            attrBuilder.append(String.format("render p50/p99 %.1f/%.1f ms     ",
+                    m_renderLatencies.getPercentile(50) / 1e6, m_renderLatencies.getPercentile(99) / 1e6));
+        }
+        long droppedRows = m_executor.getDroppedRowCount(m_execId);
+        if(droppedRows > 0) {
+            attrBuilder.append(String.valueOf(droppedRows) + " rows dropped     ");
+        }
+        long blockedTimeMs = m_executor.getBlockedTimeMs(m_execId);
+        if(blockedTimeMs > 0) {
+            attrBuilder.append(String.valueOf(blockedTimeMs) + " ms blocked     ");
+        }
+        long spooledRows = m_executor.getSpooledRowCount(m_execId);
+        if(m_executor.getSpoolError(m_execId) != null) {
+            attrBuilder.append("spooling failed     ");
+        } else if(spooledRows >= 0) {
+            attrBuilder.append(String.valueOf(spooledRows) + " rows spooled     ");
+        }
         if(m_paused) {
-            attrBuilder.style(statusBarStyle.bold().foreground(AttributedStyle.RED).blink())
+            attrBuilder.style(STATUS_BAR_STYLE.bold().foreground(AttributedStyle.RED).blink())
                     .append("PAUSED");
         }
-        String statusBarText = attrBuilder.toAnsi();
-        m_terminal.writer().print(statusBarText);
-        m_terminal.flush();
-        m_terminal.puts(InfoCmp.Capability.restore_cursor);
-    }
-
-    private TerminalStatus setupTerminal() {
-        TerminalStatus prevStatus = new TerminalStatus();
-
-        // Signal handlers
-        prevStatus.handler_INT = m_terminal.handle(Terminal.Signal.INT, this::handleSignal);
-        prevStatus.handler_QUIT = m_terminal.handle(Terminal.Signal.QUIT, this::handleSignal);
-        prevStatus.handler_TSTP = m_terminal.handle(Terminal.Signal.TSTP, this::handleSignal);
-        prevStatus.handler_CONT = m_terminal.handle(Terminal.Signal.CONT, this::handleSignal);;
-        prevStatus.handler_WINCH = m_terminal.handle(Terminal.Signal.WINCH, this::handleSignal);
-
-        // Attributes
-        prevStatus.attributes = m_terminal.getAttributes();
-        Attributes newAttributes = new Attributes(prevStatus.attributes);
-        // (003, ETX, Ctrl-C, or also 0177, DEL, rubout) Interrupt char‐
-        // acter (INTR).  Send a SIGINT signal.  Recognized when ISIG is
-        // set, and then not passed as input.
-        newAttributes.setControlChar(Attributes.ControlChar.VINTR, 0);
-        // (034, FS, Ctrl-\) Quit character (QUIT).  Send SIGQUIT signal.
-        // Recognized when ISIG is set, and then not passed as input.
-        // newAttributes.setControlChar(Attributes.ControlChar.VQUIT, 0);
-        newAttributes.setControlChar(Attributes.ControlChar.VMIN, 1);
-        newAttributes.setControlChar(Attributes.ControlChar.VTIME, 0);
-        // Enables signals and SIGTTOU signal to the process group of a background
-        // process which tries to write to our terminal
-        newAttributes.setLocalFlags(
-                EnumSet.of(Attributes.LocalFlag.ISIG, Attributes.LocalFlag.TOSTOP), true);
-        // No canonical mode, no echo, and no implementation-defined input processing
-        newAttributes.setLocalFlags(EnumSet.of(
-                Attributes.LocalFlag.ICANON, Attributes.LocalFlag.ECHO,
-                Attributes.LocalFlag.IEXTEN), false);
-        // Input flags
-        newAttributes.setInputFlags(EnumSet.of(
-                Attributes.InputFlag.ICRNL, Attributes.InputFlag.INLCR, Attributes.InputFlag.IXON), false);
-        m_terminal.setAttributes(newAttributes);
-
-        // Capabilities
-        // tput smcup; use alternate screen
-        m_terminal.puts(InfoCmp.Capability.enter_ca_mode);
-        m_terminal.puts(InfoCmp.Capability.cursor_invisible);
-        m_terminal.puts(InfoCmp.Capability.cursor_home);
-
-        m_terminal.flush();
-
-        return prevStatus;
+        return attrBuilder.toAnsi();
     }
 
-    private void restoreTerminal(TerminalStatus status) {
-        // Signal handlers
-        m_terminal.handle(Terminal.Signal.INT, status.handler_INT);
-        m_terminal.handle(Terminal.Signal.QUIT, status.handler_QUIT);
-        m_terminal.handle(Terminal.Signal.TSTP, status.handler_TSTP);
-        m_terminal.handle(Terminal.Signal.CONT, status.handler_CONT);
-        m_terminal.handle(Terminal.Signal.WINCH, status.handler_WINCH);
-
-        // Attributes
-        m_terminal.setAttributes(status.attributes);
-
-        // Capability
-        m_terminal.puts(InfoCmp.Capability.exit_ca_mode);
-        m_terminal.puts(InfoCmp.Capability.cursor_visible);
-    }
-
-    private void handleSignal(Terminal.Signal signal) {
+    @Override
+    protected void handleOtherSignal(Terminal.Signal signal) {
         switch (signal) {
-            case INT:
-            case QUIT:
-                m_keepRunning = false;
-                break;
             case TSTP:
                 m_paused = true;
                 break;
@@ -228,28 +191,13 @@ public class QueryResultLogView implements CliView {
         }
     }
 
-    private static class TerminalStatus {
-        Terminal.SignalHandler handler_INT;
-        Terminal.SignalHandler handler_QUIT;
-        Terminal.SignalHandler handler_TSTP;
-        Terminal.SignalHandler handler_CONT;
-        Terminal.SignalHandler handler_WINCH;
-
-        Attributes attributes;
-    }
-
-    private void updateTerminalSize() {
-        m_terminal.flush();
-        m_width = m_terminal.getWidth();
-        m_height = m_terminal.getHeight();
-    }
-
     public enum Action {
         QUIT,
         SPACE
     }
 
-    private KeyMap<Action> bindActionKey() {
+    @Override
+    protected KeyMap<Action> bindActionKey() {
         KeyMap<Action> keyMap = new KeyMap<>();
         keyMap.bind(Action.QUIT, "Q", "q", ctrl('c'));
         keyMap.bind(Action.SPACE, " ");
@@ -257,25 +205,16 @@ public class QueryResultLogView implements CliView {
         return keyMap;
     }
 
-    private class InputThread extends Thread {
-        public InputThread() {
-        }
-
-        public void run() {
-            KeyMap<Action> keyMap = bindActionKey();
-
-            Action action = m_keyReader.readBinding(keyMap, null, true);
-            while (action != null && m_keepRunning) {
-                switch (action) {
-                    case QUIT:
-                        m_keepRunning = false;
-                        return;
-                    case SPACE:
-                        m_paused = !m_paused;
-                        break;
-                }
-                action = m_keyReader.readBinding(keyMap, null, true);
-            }
+    @Override
+    protected void handleAction(Action action) {
+        switch (action) {
+            case QUIT:
+                quit();
+                break;
+            case SPACE:
+                m_paused = !m_paused;
+                wakeUpDisplay();
+                break;
         }
     }
 }
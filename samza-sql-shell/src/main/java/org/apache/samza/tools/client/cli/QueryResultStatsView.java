@@ -0,0 +1,149 @@
+package org.apache.samza.tools.client.cli;
+
+import org.apache.samza.tools.client.interfaces.ColumnStatistics;
+import org.apache.samza.tools.client.interfaces.QueryLatency;
+import org.jline.keymap.KeyMap;
+import org.jline.utils.AttributedStringBuilder;
+import org.jline.utils.AttributedStyle;
+import org.jline.utils.InfoCmp;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.jline.keymap.KeyMap.ctrl;
+
+
+/**
+ * A panel of statistics of the columns of a running query over all the rows it produced: how many values and
+ * nulls, the estimated number of distinct values, the most frequent values and, for numeric columns, min, max
+ * and quantiles. The statistics come from sketches kept as rows are captured, so the panel costs the same
+ * however fast rows come and however long the query runs. The executor doesn't buffer the rows of queries
+ * shown here, so there is nothing to drain.
+ */
+public class QueryResultStatsView extends FullScreenView<QueryResultStatsView.Action> {
+    private static final int DEFAULT_REFRESH_INTERVAL = 1000; // ms
+    private static final int MAX_NAME_WIDTH = 24;
+    // After the column name, which is as wide as the widest one
+    private static final String LINE_FORMAT = " %-8s %12s %10s %10s %11s %11s %11s %11s %11s  %s";
+
+    private int m_refreshInterval = DEFAULT_REFRESH_INTERVAL;
+
+    public QueryResultStatsView() {
+        super(false);
+    }
+
+    // ------------------------------------------------------------------------
+
+    @Override
+    protected void awaitNextFrame() {
+        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(m_refreshInterval));
+    }
+
+    @Override
+    protected void display() {
+        updateTerminalSize();
+
+        List<ColumnStatistics> statistics = m_executor.getColumnStatistics(m_execId);
+        int nameWidth = "column".length();
+        if(statistics != null) {
+            for (ColumnStatistics column : statistics) {
+                nameWidth = Math.max(nameWidth, Math.min(column.getName().length(), MAX_NAME_WIDTH));
+            }
+        }
+
+        StringBuilder frame = new StringBuilder(m_width * m_height * 2);
+        int screenLine = 0;
+        appendCapability(frame, InfoCmp.Capability.cursor_home);
+        String header = String.format("%-" + nameWidth + "s" + LINE_FORMAT, "column", "type", "values", "nulls",
+                "distinct", "min", "p50", "p90", "p99", "max", "most frequent");
+        appendLine(frame, new AttributedStringBuilder().style(AttributedStyle.BOLD).append(clip(header)).toAnsi(),
+                screenLine++);
+        for (int i = 0; statistics != null && i < statistics.size() && screenLine < m_height - 1; i++) {
+            appendLine(frame, clip(formatColumn(statistics.get(i), nameWidth)), screenLine++);
+        }
+        while (screenLine < m_height - 1) {
+            appendLine(frame, "", screenLine++);
+        }
+        appendCapability(frame, InfoCmp.Capability.cursor_address, m_height - 1, 0);
+        appendCapability(frame, InfoCmp.Capability.clr_eol);
+        frame.append(getStatusBarText(statistics));
+
+        PrintWriter writer = m_terminal.writer();
+        writer.write(frame.toString());
+        writer.flush();
+    }
+
+    private static String formatColumn(ColumnStatistics column, int nameWidth) {
+        String name = column.getName();
+        String type = column.getTypeName();
+        double[] quantiles = column.getQuantiles();
+        StringBuilder frequentValues = new StringBuilder();
+        for (ColumnStatistics.FrequentValue value : column.getFrequentValues()) {
+            if (frequentValues.length() > 0) {
+                frequentValues.append(", ");
+            }
+            frequentValues.append(value.getValue())
+                    .append(String.format(" %.0f%%", 100.0 * value.getCount() / Math.max(column.getCount(), 1)));
+        }
+        return String.format("%-" + nameWidth + "s" + LINE_FORMAT,
+                name.length() > nameWidth ? name.substring(0, nameWidth) : name,
+                type.length() > 8 ? type.substring(0, 8) : type,
+                column.getCount(), column.getNullCount(), "~" + column.getDistinctCount(),
+                formatNumber(column.getMin()), formatNumber(quantiles[0]), formatNumber(quantiles[1]),
+                formatNumber(quantiles[2]), formatNumber(column.getMax()), frequentValues);
+    }
+
+    private static String formatNumber(double value) {
+        if (Double.isNaN(value)) {
+            return "";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e10) {
+            return String.valueOf((long) value);
+        }
+        return String.format("%.4g", value);
+    }
+
+    // Control characters of values are shown as spaces so a column takes exactly one line
+    private String clip(String line) {
+        StringBuilder clipped = new StringBuilder(Math.min(line.length(), m_width));
+        for (int i = 0; i < line.length() && clipped.length() < m_width; i++) {
+            char c = line.charAt(i);
+            clipped.append(Character.isISOControl(c) ? ' ' : c);
+        }
+        return clipped.toString();
+    }
+
+    private String getStatusBarText(List<ColumnStatistics> statistics) {
+        AttributedStringBuilder attrBuilder = beginStatusBar()
+                .append(String.valueOf(m_executor.getProducedRowCount(m_execId)) + " rows produced     ");
+        QueryLatency latency = m_executor.getQueryLatency(m_execId);
+        if(latency != null && latency.getFirstRowMs() >= 0) {
+            attrBuilder.append(String.format("first row %.0f ms     ", latency.getFirstRowMs()));
+        }
+        if(statistics == null) {
+            attrBuilder.append("No statistics     ");
+        }
+        return attrBuilder.toAnsi();
+    }
+
+    public enum Action {
+        QUIT
+    }
+
+    @Override
+    protected KeyMap<Action> bindActionKey() {
+        KeyMap<Action> keyMap = new KeyMap<>();
+        keyMap.bind(Action.QUIT, "Q", "q", ctrl('c'));
+
+        return keyMap;
+    }
+
+    @Override
+    protected void handleAction(Action action) {
+        if (action == Action.QUIT) {
+            quit();
+        }
+    }
+}
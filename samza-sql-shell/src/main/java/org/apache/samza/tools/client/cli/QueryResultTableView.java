@@ -0,0 +1,355 @@
+package org.apache.samza.tools.client.cli;
+
+import org.apache.samza.tools.client.interfaces.ColumnBatch;
+import org.apache.samza.tools.client.interfaces.ExecutionException;
+import org.apache.samza.tools.client.interfaces.QueryResult;
+import org.apache.samza.tools.client.interfaces.QueryResultFilter;
+import org.apache.samza.tools.client.interfaces.QueryResultRanking;
+import org.jline.keymap.KeyMap;
+import org.jline.utils.AttributedStringBuilder;
+import org.jline.utils.AttributedStyle;
+import org.jline.utils.InfoCmp;
+
+import java.io.PrintWriter;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.jline.keymap.KeyMap.ctrl;
+import static org.jline.keymap.KeyMap.key;
+
+
+/**
+ * Pages through the rows of a query, as a table with a column per field of the result schema. Unlike
+ * QueryResultLogView, rows are not consumed, so the view can go back and forth over the rows the executor
+ * keeps while the query keeps adding more. Each frame fetches and decodes only the rows on the screen, so
+ * paging costs the same however many rows are kept. At the end of the table the view follows new rows as they
+ * come. As nothing consumes the rows, a query whose rows don't fit has its oldest rows dropped or is held
+ * back, as its overflow policy says.
+ *
+ * Like less, / filters the table down to the rows with a value matching a regular expression. The rows kept are
+ * scanned once, in parallel, when the filter is set, and new rows as they come.
+ *
+ * T shows the rows with the largest values of the leftmost column seen so far, then the smallest, then the table
+ * again. The ranking is kept as rows come rather than by sorting the rows kept on each frame.
+ */
+public class QueryResultTableView extends FullScreenView<QueryResultTableView.Action> {
+    private static final int DEFAULT_IDLE_REFRESH_INTERVAL = 1000; // all intervals are in ms
+    private static final int DEFAULT_FOLLOW_REFRESH_INTERVAL = 200;
+    // Header, separator and status bar
+    private static final int NON_ROW_LINES = 3;
+    private static final int DEFAULT_RANKING_LIMIT = 100;
+
+    private int m_idleRefreshInterval = DEFAULT_IDLE_REFRESH_INTERVAL;
+    // How often the end of the table is redrawn while following new rows
+    private int m_followRefreshInterval = DEFAULT_FOLLOW_REFRESH_INTERVAL;
+    private int m_rankingLimit = DEFAULT_RANKING_LIMIT;
+    private TableLayout m_layout;
+    // Keys pressed, applied by the display thread when it draws the next frame
+    private final Queue<Action> m_actions = new ConcurrentLinkedQueue<>();
+    // Text typed after /, shown instead of the status bar, or null
+    private volatile String m_prompt;
+    // Pattern entered with the last FILTER action
+    private volatile String m_pendingFilter;
+    // Only touched by the display thread
+    private int m_topRow;
+    private int m_firstColumn;
+    private boolean m_follow;
+    private QueryResultFilter m_filter;
+    private QueryResultRanking m_ranking;
+    // Why the last filter or ranking couldn't be set
+    private String m_error;
+
+    public QueryResultTableView() {
+        super(true);
+    }
+
+    // ------------------------------------------------------------------------
+
+    @Override
+    protected void init(QueryResult queryResult) {
+        m_layout = new TableLayout(queryResult.getSchema());
+    }
+
+    @Override
+    protected void close() {
+        if (m_ranking != null) {
+            m_ranking.close();
+        }
+    }
+
+    @Override
+    protected void awaitNextFrame() {
+        long interval = m_follow ? m_followRefreshInterval : m_idleRefreshInterval;
+        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(interval));
+    }
+
+    @Override
+    protected void display() {
+        updateTerminalSize();
+        int pageRows = Math.max(m_height - NON_ROW_LINES, 1);
+
+        Action action;
+        while ((action = m_actions.poll()) != null) {
+            applyAction(action, pageRows, getRowCount());
+        }
+        int rowCount = getRowCount();
+        int lastTopRow = Math.max(rowCount - pageRows, 0);
+        m_topRow = m_follow ? lastTopRow : Math.min(Math.max(m_topRow, 0), lastTopRow);
+
+        // Only the rows on the screen are fetched, and the columns only widen to fit those
+        ColumnBatch batch = rowCount == 0 ? null : getRows(m_topRow, m_topRow + pageRows - 1);
+        if(batch != null) {
+            m_layout.fit(batch);
+        }
+
+        StringBuilder frame = new StringBuilder(m_width * m_height * 2);
+        StringBuilder line = new StringBuilder(m_width);
+        int screenLine = 0;
+        appendCapability(frame, InfoCmp.Capability.cursor_home);
+        m_layout.appendHeader(line, m_firstColumn, m_width);
+        appendLine(frame, new AttributedStringBuilder().style(AttributedStyle.BOLD).append(line).toAnsi(),
+                screenLine++);
+        line.setLength(0);
+        m_layout.appendSeparator(line, m_firstColumn, m_width);
+        appendLine(frame, line, screenLine++);
+        int shownRows = batch == null ? 0 : batch.getRowCount();
+        for(int row = 0; row < shownRows && screenLine < m_height - 1; ++row) {
+            line.setLength(0);
+            m_layout.appendRow(line, batch, row, m_firstColumn, m_width);
+            appendLine(frame, line, screenLine++);
+        }
+        while (screenLine < m_height - 1) {
+            appendLine(frame, "", screenLine++);
+        }
+        appendCapability(frame, InfoCmp.Capability.cursor_address, m_height - 1, 0);
+        appendCapability(frame, InfoCmp.Capability.clr_eol);
+        frame.append(getStatusBarText(rowCount, shownRows));
+
+        PrintWriter writer = m_terminal.writer();
+        writer.write(frame.toString());
+        writer.flush();
+    }
+
+    // Rows of the filter or the ranking if there is one
+    private int getRowCount() {
+        if(m_ranking != null) {
+            return m_ranking.getRowCount();
+        }
+        return m_filter == null ? m_executor.getRowCount(m_execId) : m_filter.update();
+    }
+
+    private ColumnBatch getRows(int startRow, int endRow) {
+        if(m_ranking != null) {
+            return m_ranking.getRows(startRow, endRow);
+        }
+        return m_filter == null ? m_executor.retrieveQueryResultColumns(m_exeContext, m_execId, startRow, endRow)
+                : m_filter.getRows(startRow, endRow);
+    }
+
+    private void clearRows() {
+        m_filter = null;
+        if(m_ranking != null) {
+            m_ranking.close();
+            m_ranking = null;
+        }
+        m_error = null;
+    }
+
+    private void setFilter(String regex) {
+        clearRows();
+        if(regex == null || regex.isEmpty()) {
+            return;
+        }
+        try {
+            m_filter = m_executor.filterQueryResult(m_exeContext, m_execId, Pattern.compile(regex));
+        } catch (PatternSyntaxException e) {
+            m_error = "Invalid pattern: " + e.getDescription();
+        }
+    }
+
+    // Largest values of the leftmost column, then smallest, then none
+    private void nextRanking() {
+        QueryResultRanking previous = m_ranking;
+        clearRows();
+        if(previous != null && (previous.isAscending() || previous.getColumnIndex() != m_firstColumn)) {
+            return;
+        }
+        try {
+            m_ranking = m_executor.rankQueryResult(m_exeContext, m_execId, m_firstColumn, m_rankingLimit,
+                    previous != null);
+        } catch (ExecutionException e) {
+            m_error = e.getMessage();
+        }
+    }
+
+    private void applyAction(Action action, int pageRows, int rowCount) {
+        int lastTopRow = Math.max(rowCount - pageRows, 0);
+        if(m_follow) {
+            m_topRow = lastTopRow;
+        }
+        switch (action) {
+            case PAGE_UP:
+                m_topRow -= pageRows;
+                break;
+            case PAGE_DOWN:
+                m_topRow += pageRows;
+                break;
+            case UP:
+                m_topRow--;
+                break;
+            case DOWN:
+                m_topRow++;
+                break;
+            case HOME:
+                m_topRow = 0;
+                break;
+            case END:
+                m_topRow = lastTopRow;
+                break;
+            case LEFT:
+                m_firstColumn = Math.max(m_firstColumn - 1, 0);
+                break;
+            case RIGHT:
+                m_firstColumn = Math.min(m_firstColumn + 1, m_layout.getColumnCount() - 1);
+                break;
+            case FILTER:
+                setFilter(m_pendingFilter);
+                m_topRow = 0;
+                break;
+            case RANK:
+                nextRanking();
+                m_topRow = 0;
+                break;
+        }
+        // Moving to the end of the table keeps it there as rows come
+        m_follow = action == Action.END || (m_follow && (action == Action.LEFT || action == Action.RIGHT));
+        m_topRow = Math.min(Math.max(m_topRow, 0), lastTopRow);
+    }
+
+    private String getStatusBarText(int rowCount, int shownRows) {
+        String prompt = m_prompt;
+        if(prompt != null) {
+            return new AttributedStringBuilder()
+                    .append("/" + prompt)
+                    .style(STATUS_BAR_STYLE)
+                    .append(" ")
+                    .toAnsi();
+        }
+        int lastColumn = m_firstColumn + m_layout.getVisibleColumnCount(m_firstColumn, m_width) - 1;
+        AttributedStringBuilder attrBuilder = beginStatusBar("PgUp/PgDn Home/End", "Rows", "Left/Right", "Columns")
+                .append(shownRows == 0 ? "0 rows" : String.format("rows %d-%d of %d", m_topRow + 1,
+                        m_topRow + shownRows, rowCount))
+                .append(String.format("     columns %d-%d of %d     ", m_firstColumn + 1,
+                        Math.min(lastColumn, m_layout.getColumnCount() - 1) + 1, m_layout.getColumnCount()));
+        if(m_filter != null) {
+            attrBuilder.append("filter /" + m_filter.getPattern().pattern() + "/     ");
+        } else if(m_ranking != null) {
+            attrBuilder.append(String.format("%s %d by %s of %d rows     ",
+                    m_ranking.isAscending() ? "bottom" : "top", m_ranking.getLimit(),
+                    m_layout.getColumnName(m_ranking.getColumnIndex()), m_ranking.getRankedRowCount()));
+        } else if(m_error != null) {
+            attrBuilder.style(STATUS_BAR_STYLE.bold().foreground(AttributedStyle.RED))
+                    .append(m_error + "     ")
+                    .style(STATUS_BAR_STYLE);
+        } else {
+            appendKey(attrBuilder, "/", "Filter");
+            appendKey(attrBuilder, "T", "Top");
+        }
+        if(m_follow) {
+            attrBuilder.style(STATUS_BAR_STYLE.bold())
+                    .append("FOLLOWING");
+        }
+        return attrBuilder.toAnsi();
+    }
+
+    public enum Action {
+        QUIT,
+        PAGE_UP,
+        PAGE_DOWN,
+        UP,
+        DOWN,
+        HOME,
+        END,
+        LEFT,
+        RIGHT,
+        FILTER,
+        RANK
+    }
+
+    @Override
+    protected KeyMap<Action> bindActionKey() {
+        KeyMap<Action> keyMap = new KeyMap<>();
+        keyMap.bind(Action.QUIT, "Q", "q", ctrl('c'));
+        keyMap.bind(Action.PAGE_UP, key(m_terminal, InfoCmp.Capability.key_ppage), "b");
+        keyMap.bind(Action.PAGE_DOWN, key(m_terminal, InfoCmp.Capability.key_npage), " ", "f");
+        keyMap.bind(Action.UP, key(m_terminal, InfoCmp.Capability.key_up), "k");
+        keyMap.bind(Action.DOWN, key(m_terminal, InfoCmp.Capability.key_down), "j", "\r");
+        keyMap.bind(Action.HOME, key(m_terminal, InfoCmp.Capability.key_home), "g", "<");
+        keyMap.bind(Action.END, key(m_terminal, InfoCmp.Capability.key_end), "G", ">");
+        keyMap.bind(Action.LEFT, key(m_terminal, InfoCmp.Capability.key_left), "h");
+        keyMap.bind(Action.RIGHT, key(m_terminal, InfoCmp.Capability.key_right), "l");
+        keyMap.bind(Action.FILTER, "/");
+        keyMap.bind(Action.RANK, "t", "T");
+
+        return keyMap;
+    }
+
+    @Override
+    protected void handleAction(Action action) {
+        if (action == Action.QUIT) {
+            quit();
+            return;
+        }
+        if (action == Action.FILTER) {
+            String regex = readPrompt();
+            if (regex == null) {
+                return;
+            }
+            m_pendingFilter = regex;
+        }
+        m_actions.add(action);
+        wakeUpDisplay();
+    }
+
+    /**
+     * Reads a line of text, echoed in the status bar. An empty line clears the filter.
+     * @return null if canceled with ESC or Ctrl-C
+     */
+    private String readPrompt() {
+        StringBuilder text = new StringBuilder();
+        try {
+            while (m_keepRunning) {
+                m_prompt = text.toString();
+                wakeUpDisplay();
+                int c = m_keyReader.readCharacter();
+                switch (c) {
+                    case -1:
+                    case 3:     // Ctrl-C
+                    case 27:    // ESC
+                        return null;
+                    case '\r':
+                    case '\n':
+                        return text.toString();
+                    case 8:     // Backspace
+                    case 127:   // DEL
+                        if (text.length() > 0) {
+                            text.setLength(text.offsetByCodePoints(text.length(), -1));
+                        }
+                        break;
+                    default:
+                        if (c >= ' ') {
+                            text.appendCodePoint(c);
+                        }
+                }
+            }
+            return null;
+        } finally {
+            m_prompt = null;
+            wakeUpDisplay();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.apache.samza.tools.client.cli;
+
+import org.apache.samza.tools.client.interfaces.ColumnBatch;
+import org.apache.samza.tools.client.interfaces.SqlSchema;
+
+
+/**
+ * Column widths and row formatting of QueryResultTableView. Widths start at the width of the column names and
+ * grow to fit the values of the rows they are fitted to, which are only the rows the view fetches to show, up
+ * to MAX_COLUMN_WIDTH. They never shrink, so columns don't jump around while scrolling.
+ */
+class TableLayout {
+    static final int MAX_COLUMN_WIDTH = 40;
+    private static final String COLUMN_SEPARATOR = " | ";
+    private static final String NULL = "NULL";
+
+    private final SqlSchema m_schema;
+    private final int[] m_widths;
+
+    TableLayout(SqlSchema schema) {
+        m_schema = schema;
+        m_widths = new int[schema.getFieldCount()];
+        for (int i = 0; i < m_widths.length; i++) {
+            m_widths[i] = Math.min(schema.getFieldName(i).length(), MAX_COLUMN_WIDTH);
+        }
+    }
+
+    int getColumnCount() {
+        return m_widths.length;
+    }
+
+    String getColumnName(int colIdx) {
+        return m_schema.getFieldName(colIdx);
+    }
+
+    int getWidth(int colIdx) {
+        return m_widths[colIdx];
+    }
+
+    /**
+     * Widens columns to fit the values of all the rows of the batch.
+     */
+    void fit(ColumnBatch batch) {
+        int rowCount = batch.getRowCount();
+        for (int colIdx = 0; colIdx < m_widths.length; colIdx++) {
+            if (m_widths[colIdx] == MAX_COLUMN_WIDTH) {
+                continue;
+            }
+            ColumnBatch.Column column = batch.getColumn(colIdx);
+            int width = m_widths[colIdx];
+            for (int row = 0; row < rowCount && width < MAX_COLUMN_WIDTH; row++) {
+                String value = column.getString(row);
+                width = Math.max(width, Math.min(value == null ? NULL.length() : value.length(), MAX_COLUMN_WIDTH));
+            }
+            m_widths[colIdx] = width;
+        }
+    }
+
+    /**
+     * @return how many columns from firstColumn on fit in the width, at least 1
+     */
+    int getVisibleColumnCount(int firstColumn, int width) {
+        int count = 0;
+        int used = 0;
+        for (int colIdx = firstColumn; colIdx < m_widths.length; colIdx++) {
+            used += (count == 0 ? 0 : COLUMN_SEPARATOR.length()) + m_widths[colIdx];
+            if (used > width && count > 0) {
+                break;
+            }
+            count++;
+        }
+        return Math.max(count, 1);
+    }
+
+    void appendHeader(StringBuilder line, int firstColumn, int width) {
+        int lineStart = line.length();
+        for (int colIdx = firstColumn; colIdx < m_widths.length && line.length() - lineStart < width; colIdx++) {
+            appendCell(line, lineStart, colIdx, firstColumn, m_schema.getFieldName(colIdx), width);
+        }
+    }
+
+    void appendSeparator(StringBuilder line, int firstColumn, int width) {
+        int lineStart = line.length();
+        for (int colIdx = firstColumn; colIdx < m_widths.length && line.length() - lineStart < width; colIdx++) {
+            if (colIdx > firstColumn) {
+                appendClipped(line, lineStart, "-+-", width);
+            }
+            for (int i = 0; i < m_widths[colIdx] && line.length() - lineStart < width; i++) {
+                line.append('-');
+            }
+        }
+    }
+
+    /**
+     * Appends a row of the batch, columns from firstColumn on, clipped to the width. Values longer than their
+     * column are cut, and control characters in them are shown as spaces so a row takes exactly one line.
+     */
+    void appendRow(StringBuilder line, ColumnBatch batch, int row, int firstColumn, int width) {
+        int lineStart = line.length();
+        for (int colIdx = firstColumn; colIdx < m_widths.length && line.length() - lineStart < width; colIdx++) {
+            String value = batch.getColumn(colIdx).getString(row);
+            appendCell(line, lineStart, colIdx, firstColumn, value == null ? NULL : value, width);
+        }
+    }
+
+    private void appendCell(StringBuilder line, int lineStart, int colIdx, int firstColumn, String value,
+            int width) {
+        if (colIdx > firstColumn) {
+            appendClipped(line, lineStart, COLUMN_SEPARATOR, width);
+        }
+        int cellEnd = Math.min(line.length() + m_widths[colIdx], lineStart + width);
+        for (int i = 0; i < value.length() && line.length() < cellEnd; i++) {
+            char c = value.charAt(i);
+            line.append(Character.isISOControl(c) ? ' ' : c);
+        }
+        // The last column isn't padded
+        if (colIdx < m_widths.length - 1) {
+            while (line.length() < cellEnd) {
+                line.append(' ');
+            }
+        }
+    }
+
+    private static void appendClipped(StringBuilder line, int lineStart, String str, int width) {
+        for (int i = 0; i < str.length() && line.length() - lineStart < width; i++) {
+            line.append(str.charAt(i));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.apache.samza.tools.client.cli;
+
+import org.jline.terminal.Attributes;
+import org.jline.terminal.Terminal;
+import org.jline.utils.InfoCmp;
+
+import java.util.EnumSet;
+
+
+/**
+ * The terminal mode full screen views run in: the alternate screen without a cursor, keys read one at a time
+ * without echo, and signals handled by the view. Refer to OReilly's Posix Programming Guide Chapter 8,
+ * Terminal I/O and termios(3) for terminal control.
+ */
+class TerminalMode {
+    private final Terminal m_terminal;
+    private final Terminal.SignalHandler m_handlerINT;
+    private final Terminal.SignalHandler m_handlerQUIT;
+    private final Terminal.SignalHandler m_handlerTSTP;
+    private final Terminal.SignalHandler m_handlerCONT;
+    private final Terminal.SignalHandler m_handlerWINCH;
+    private final Attributes m_attributes;
+    private final boolean m_keypad;
+
+    private TerminalMode(Terminal terminal, Terminal.SignalHandler signalHandler, boolean keypad) {
+        m_terminal = terminal;
+        m_keypad = keypad;
+
+        // Signal handlers
+        m_handlerINT = terminal.handle(Terminal.Signal.INT, signalHandler);
+        m_handlerQUIT = terminal.handle(Terminal.Signal.QUIT, signalHandler);
+        m_handlerTSTP = terminal.handle(Terminal.Signal.TSTP, signalHandler);
+        m_handlerCONT = terminal.handle(Terminal.Signal.CONT, signalHandler);
+        m_handlerWINCH = terminal.handle(Terminal.Signal.WINCH, signalHandler);
+
+        // Attributes
+        m_attributes = terminal.getAttributes();
+        Attributes newAttributes = new Attributes(m_attributes);
+        // (003, ETX, Ctrl-C, or also 0177, DEL, rubout) Interrupt char‐
+        // acter (INTR).  Send a SIGINT signal.  Recognized when ISIG is
+        // set, and then not passed as input.
+        newAttributes.setControlChar(Attributes.ControlChar.VINTR, 0);
+        // (034, FS, Ctrl-\) Quit character (QUIT).  Send SIGQUIT signal.
+        // Recognized when ISIG is set, and then not passed as input.
+        // newAttributes.setControlChar(Attributes.ControlChar.VQUIT, 0);
+        newAttributes.setControlChar(Attributes.ControlChar.VMIN, 1);
+        newAttributes.setControlChar(Attributes.ControlChar.VTIME, 0);
+        // Enables signals and SIGTTOU signal to the process group of a background
+        // process which tries to write to our terminal
+        newAttributes.setLocalFlags(
+                EnumSet.of(Attributes.LocalFlag.ISIG, Attributes.LocalFlag.TOSTOP), true);
+        // No canonical mode, no echo, and no implementation-defined input processing
+        newAttributes.setLocalFlags(EnumSet.of(
+                Attributes.LocalFlag.ICANON, Attributes.LocalFlag.ECHO,
+                Attributes.LocalFlag.IEXTEN), false);
+        // Input flags
+        newAttributes.setInputFlags(EnumSet.of(
+                Attributes.InputFlag.ICRNL, Attributes.InputFlag.INLCR, Attributes.InputFlag.IXON), false);
+        terminal.setAttributes(newAttributes);
+
+        // Capabilities
+        // tput smcup; use alternate screen
+        terminal.puts(InfoCmp.Capability.enter_ca_mode);
+        if (keypad) {
+            // Arrow and paging keys send what their key_* capabilities say
+            terminal.puts(InfoCmp.Capability.keypad_xmit);
+        }
+        terminal.puts(InfoCmp.Capability.cursor_invisible);
+        terminal.puts(InfoCmp.Capability.cursor_home);
+
+        terminal.flush();
+    }
+
+    /**
+     * @param keypad whether the view reads arrow and paging keys
+     */
+    static TerminalMode enter(Terminal terminal, Terminal.SignalHandler signalHandler, boolean keypad) {
+        return new TerminalMode(terminal, signalHandler, keypad);
+    }
+
+    void restore() {
+        // Signal handlers
+        m_terminal.handle(Terminal.Signal.INT, m_handlerINT);
+        m_terminal.handle(Terminal.Signal.QUIT, m_handlerQUIT);
+        m_terminal.handle(Terminal.Signal.TSTP, m_handlerTSTP);
+        m_terminal.handle(Terminal.Signal.CONT, m_handlerCONT);
+        m_terminal.handle(Terminal.Signal.WINCH, m_handlerWINCH);
+
+        // Attributes
+        m_terminal.setAttributes(m_attributes);
+
+        // Capability
+        if (m_keypad) {
+            m_terminal.puts(InfoCmp.Capability.keypad_local);
+        }
+        m_terminal.puts(InfoCmp.Capability.exit_ca_mode);
+        m_terminal.puts(InfoCmp.Capability.cursor_visible);
+    }
+}
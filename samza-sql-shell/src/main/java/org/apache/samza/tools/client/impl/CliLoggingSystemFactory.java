@@ -2,22 +2,79 @@ package org.apache.samza.tools.client.impl;
 
 import org.apache.samza.Partition;
 import org.apache.samza.config.Config;
+import org.apache.samza.config.JobConfig;
 import org.apache.samza.metrics.MetricsRegistry;
 import org.apache.samza.system.*;
+import org.apache.samza.tools.client.interfaces.OverflowPolicy;
+import org.apache.samza.tools.client.util.TieredRowQueue;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class CliLoggingSystemFactory implements SystemFactory {
 
     private static final Logger LOG = LoggerFactory.getLogger(CliLoggingSystemFactory.class);
-    private static AtomicInteger messageCounter = new AtomicInteger(0);
+    private static final LongAdder messageCounter = new LongAdder();
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    // Result buffer settings, under systems.<system name>.
+    public static final String CFG_OVERFLOW_POLICY = "overflow.policy";
+    public static final String CFG_MAX_BUFFERED_ROWS = "overflow.max.rows";
+    public static final String CFG_BLOCK_TIMEOUT_MS = "overflow.block.timeout.ms";
+    // Logs about one in every N messages at DEBUG, 0 turns message logging off
+    public static final String CFG_MESSAGE_LOG_INTERVAL = "message.log.interval";
+    // Rows a producer collects before handing them to the result buffer, 1 publishes every row right away
+    public static final String CFG_BATCH_SIZE = "batch.size";
+    // Longest time a collected row waits for its batch to fill up
+    public static final String CFG_BATCH_LINGER_MS = "batch.linger.ms";
+    // Top-level field of output rows holding the epoch milliseconds the source record was produced at, for
+    // measuring source latency. Empty turns the measurement off.
+    public static final String CFG_LATENCY_TIMESTAMP_FIELD = "latency.timestamp.field";
+    private static final int DEFAULT_MAX_BUFFERED_ROWS = 1000000;
+    private static final long DEFAULT_BLOCK_TIMEOUT_MS = 1000;
+    private static final int DEFAULT_MESSAGE_LOG_INTERVAL = 1000;
+    private static final int DEFAULT_BATCH_SIZE = 256;
+    private static final long DEFAULT_BATCH_LINGER_MS = 20;
+    private static final String DEFAULT_LATENCY_TIMESTAMP_FIELD = "timestamp";
+    // Source latency is measured on about one in this many rows
+    private static final int LATENCY_SAMPLE_INTERVAL = 64;
+    // Longer latencies mean the field isn't a production time, or the rows are replayed
+    private static final long MAX_SOURCE_LATENCY_MS = TimeUnit.DAYS.toMillis(1);
+    // Execution id of jobs not started by SamzaExecutor
+    static final int NO_EXECUTION = -1;
+
+    /**
+     * Creates the buffer the producers of the given system save rows of an execution to, applying the
+     * overflow settings of the system. With BLOCK, send() waits for the view to make room, which in turn
+     * holds back the Samza run loop instead of losing rows.
+     */
+    static TieredRowQueue createResultBuffer(String systemName, Config config, int hotCapacity) {
+        Config systemConfig = config.subset("systems." + systemName + ".");
+        OverflowPolicy overflowPolicy = OverflowPolicy.valueOf(
+                systemConfig.get(CFG_OVERFLOW_POLICY, OverflowPolicy.DROP_OLDEST.name()).toUpperCase());
+        return new TieredRowQueue(hotCapacity, TieredRowQueue.DEFAULT_SEGMENT_ROWS, null,
+                systemConfig.getInt(CFG_MAX_BUFFERED_ROWS, DEFAULT_MAX_BUFFERED_ROWS), overflowPolicy,
+                systemConfig.getLong(CFG_BLOCK_TIMEOUT_MS, DEFAULT_BLOCK_TIMEOUT_MS));
+    }
 
     @Override
     public SystemConsumer getConsumer(String systemName, Config config, MetricsRegistry registry) {
@@ -26,7 +83,13 @@ public class CliLoggingSystemFactory implements SystemFactory {
 
     @Override
     public SystemProducer getProducer(String systemName, Config config, MetricsRegistry registry) {
-        return new CliLoggingSystemFactory.LoggingSystemProducer();
+        int execId = getExecutionId(config);
+        Config systemConfig = config.subset("systems." + systemName + ".");
+        return new CliLoggingSystemFactory.LoggingSystemProducer(execId,
+                systemConfig.getInt(CFG_MESSAGE_LOG_INTERVAL, DEFAULT_MESSAGE_LOG_INTERVAL),
+                systemConfig.getInt(CFG_BATCH_SIZE, DEFAULT_BATCH_SIZE),
+                systemConfig.getLong(CFG_BATCH_LINGER_MS, DEFAULT_BATCH_LINGER_MS),
+                systemConfig.get(CFG_LATENCY_TIMESTAMP_FIELD, DEFAULT_LATENCY_TIMESTAMP_FIELD));
     }
 
     @Override
@@ -34,15 +97,92 @@ public class CliLoggingSystemFactory implements SystemFactory {
         return new CliLoggingSystemFactory.SimpleSystemAdmin(config);
     }
 
+    /**
+     * SamzaExecutor sets the processor id of each job to its execution id. A job without one, or with an id
+     * set some other way, gets NO_EXECUTION, which has no result buffer, so its rows are only counted.
+     */
+    static int getExecutionId(Config config) {
+        String processorId = config.get(JobConfig.PROCESSOR_ID());
+        try {
+            return Integer.parseInt(processorId);
+        } catch (NumberFormatException e) {
+            LOG.warn("Processor id {} is not an execution id, the rows of the job are not buffered", processorId);
+            return NO_EXECUTION;
+        }
+    }
+
+    // Rows sent by the producers of all jobs, buffered or not
+    static long getMessageCount() {
+        return messageCounter.sum();
+    }
+
+    /**
+     * @return the value of the given top-level integer field of a JSON row, or -1 if it has none
+     */
+    static long readLongField(byte[] row, String field) {
+        try (JsonParser parser = JSON_FACTORY.createJsonParser(row)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return -1;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (name.equals(field)) {
+                    return value == JsonToken.VALUE_NUMBER_INT ? parser.getLongValue() : -1;
+                }
+                parser.skipChildren();
+            }
+        } catch (IOException e) {
+            // Not JSON, so no field either
+        }
+        return -1;
+    }
+
 
+    /**
+     * Rows are collected in one batch per source and sending thread, and handed to the result buffer of
+     * the execution in one go when the batch is full, when Samza flushes the source, or by a timer once
+     * the oldest row of the batch has waited for the linger time. The reader is woken once per batch.
+     */
     private class LoggingSystemProducer implements SystemProducer {
+        private final int m_execId;
+        private final int m_messageLogInterval;
+        private final int m_batchSize;
+        private final long m_batchLingerNanos;
+        private final String m_timestampField;
+        private final ThreadLocal<Map<String, Batch>> m_threadBatches = ThreadLocal.withInitial(HashMap::new);
+        // All batches of all threads, for flush and the linger timer
+        private final ConcurrentLinkedQueue<Batch> m_batches = new ConcurrentLinkedQueue<>();
+        private ScheduledExecutorService m_lingerTimer;
+
+        LoggingSystemProducer(int execId, int messageLogInterval, int batchSize, long batchLingerMs,
+                String timestampField) {
+            m_execId = execId;
+            m_messageLogInterval = messageLogInterval;
+            m_batchSize = Math.max(batchSize, 1);
+            m_batchLingerNanos = TimeUnit.MILLISECONDS.toNanos(batchLingerMs);
+            m_timestampField = timestampField.isEmpty() ? null : timestampField;
+        }
 
         @Override
         public void start() {
+            if (m_batchSize > 1 && m_batchLingerNanos > 0) {
+                m_lingerTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "log-system-linger-" + m_execId);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                m_lingerTimer.scheduleWithFixedDelay(this::publishLingeringBatches, m_batchLingerNanos,
+                        m_batchLingerNanos, TimeUnit.NANOSECONDS);
+            }
         }
 
         @Override
         public void stop() {
+            if (m_lingerTimer != null) {
+                m_lingerTimer.shutdownNow();
+            }
+            m_batches.forEach(Batch::publish);
         }
 
         @Override
@@ -52,16 +192,107 @@ public class CliLoggingSystemFactory implements SystemFactory {
 
         @Override
         public void send(String source, OutgoingMessageEnvelope envelope) {
-            LOG.info(String.format(String.format("Message %d :", messageCounter.incrementAndGet())));
-            String msg = String.format("OutputStream:%s Key:%s Value:%s", envelope.getSystemStream(), envelope.getKey(),
-                    new String((byte[]) envelope.getMessage()));
-            LOG.info(msg);
+            // Runs for every row, keep it free of allocations unless a message is sampled for logging or latency
+            messageCounter.increment();
+            if (m_messageLogInterval > 0 && LOG.isDebugEnabled()
+                    && ThreadLocalRandom.current().nextInt(m_messageLogInterval) == 0) {
+                LOG.debug("Message {} OutputStream:{} Key:{} Value:{}", messageCounter.sum(),
+                        envelope.getSystemStream(), envelope.getKey(),
+                        new String((byte[]) envelope.getMessage(), StandardCharsets.UTF_8));
+            }
 
-            SamzaExecutor.saveOutputMessage(envelope);
+            if (m_timestampField != null && ThreadLocalRandom.current().nextInt(LATENCY_SAMPLE_INTERVAL) == 0) {
+                long timestamp = readLongField((byte[]) envelope.getMessage(), m_timestampField);
+                long latencyMs = System.currentTimeMillis() - timestamp;
+                if (timestamp < 0) {
+                    SamzaExecutor.recordMissingTimestamp(m_execId);
+                } else if (timestamp > 0 && latencyMs >= 0 && latencyMs < MAX_SOURCE_LATENCY_MS) {
+                    SamzaExecutor.recordSourceLatency(m_execId, TimeUnit.MILLISECONDS.toNanos(latencyMs));
+                }
+            }
+
+            if (m_batchSize == 1) {
+                SamzaExecutor.saveOutputMessage(m_execId, envelope);
+                return;
+            }
+            Map<String, Batch> batches = m_threadBatches.get();
+            Batch batch = batches.get(source);
+            if (batch == null) {
+                batch = new Batch(source);
+                batches.put(source, batch);
+                m_batches.add(batch);
+            }
+            batch.add((byte[]) envelope.getMessage());
         }
 
         @Override
         public void flush(String source) {
+            for (Batch batch : m_batches) {
+                if (batch.m_source.equals(source)) {
+                    batch.publish();
+                }
+            }
+        }
+
+        private void publishLingeringBatches() {
+            long now = System.nanoTime();
+            for (Batch batch : m_batches) {
+                batch.publishIfOlderThan(now - m_batchLingerNanos);
+            }
+        }
+
+        /**
+         * Rows sent by one thread for one source. Its lock only guards the rows, which are swapped for an empty
+         * list and saved outside of it, so the sending thread doesn't wait while the linger timer or a flush
+         * saves to a full result buffer. Saving takes the publish lock, which keeps batches in order.
+         */
+        private class Batch {
+            private final String m_source;
+            private final Object m_publishLock = new Object();
+            private List<byte[]> m_rows = new ArrayList<>(m_batchSize);
+            private long m_firstRowNanos;
+
+            Batch(String source) {
+                m_source = source;
+            }
+
+            void add(byte[] row) {
+                boolean full;
+                synchronized (this) {
+                    if (m_rows.isEmpty()) {
+                        m_firstRowNanos = System.nanoTime();
+                    }
+                    m_rows.add(row);
+                    full = m_rows.size() >= m_batchSize;
+                }
+                if (full) {
+                    publish();
+                }
+            }
+
+            void publishIfOlderThan(long nanos) {
+                boolean lingering;
+                synchronized (this) {
+                    lingering = !m_rows.isEmpty() && m_firstRowNanos - nanos <= 0;
+                }
+                if (lingering) {
+                    publish();
+                }
+            }
+
+            void publish() {
+                synchronized (m_publishLock) {
+                    List<byte[]> rows;
+                    synchronized (this) {
+                        if (m_rows.isEmpty()) {
+                            return;
+                        }
+                        rows = m_rows;
+                        m_rows = new ArrayList<>(m_batchSize);
+                    }
+                    SamzaExecutor.saveOutputMessages(m_execId, rows);
+                }
+            }
         }
     }
 
@@ -0,0 +1,934 @@
+package org.apache.samza.tools.client.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Pattern;
+import org.apache.samza.tools.client.interfaces.ColumnBatch;
+import org.apache.samza.tools.client.interfaces.ExecutionException;
+import org.apache.samza.tools.client.interfaces.QueryResultFilter;
+import org.apache.samza.tools.client.interfaces.QueryResultRanking;
+import org.apache.samza.tools.client.interfaces.SqlSchema;
+import org.apache.samza.tools.client.util.TieredRowQueue;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Decodes query result rows, the JSON the log system receives, into typed columns keyed by the result schema.
+ * The rows stay serialized in the result queue of their execution and are decoded when they are read, a page
+ * at a time, so the queue is the only copy of them however they are viewed.
+ *
+ * Within a batch, integer, floating point and boolean fields are kept in primitive arrays, and strings as well
+ * as values of any other type in a dictionary of the distinct values of the batch, so repeated values cost an
+ * int per row. A row that isn't there anymore, or isn't JSON, decodes as nulls. Batches are never modified.
+ *
+ * Filters and rankings refer to the rows of the queue by their position in the whole result. On each update
+ * they read the rows added since, in pieces of a fixed number of rows.
+ */
+class ColumnarDecoder {
+    private static final Logger LOG = LoggerFactory.getLogger(ColumnarDecoder.class);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    static final int DEFAULT_PIECE_ROWS = 1024;
+    // Pieces read before they are scanned in parallel, which bounds the rows held at once
+    private static final int PIECES_PER_SCAN = 64;
+
+    private final SqlSchema m_schema;
+    private final SamzaSqlFieldType.TypeName[] m_types;
+    private final Map<String, Integer> m_columnIndex = new HashMap<>();
+    private final int m_pieceRows;
+
+    ColumnarDecoder(SqlSchema schema) {
+        this(schema, DEFAULT_PIECE_ROWS);
+    }
+
+    ColumnarDecoder(SqlSchema schema, int pieceRows) {
+        if (pieceRows <= 0) {
+            throw new IllegalArgumentException();
+        }
+        m_schema = schema;
+        m_pieceRows = pieceRows;
+        m_types = new SamzaSqlFieldType.TypeName[schema.getFieldCount()];
+        for (int i = 0; i < m_types.length; i++) {
+            m_types[i] = getTypeName(schema.getFieldTypeName(i));
+            m_columnIndex.put(schema.getFieldName(i), i);
+        }
+    }
+
+    SqlSchema getSchema() {
+        return m_schema;
+    }
+
+    /**
+     * Safe to call from several threads at once.
+     * @return the rows decoded, in the same order, null rows as nulls
+     */
+    ColumnBatch decode(List<byte[]> rows) {
+        return new ChunkBatch(m_schema, decodeChunk(rows));
+    }
+
+    /**
+     * @return a filter of the rows of the queue with a value the pattern finds a match in, having scanned the
+     * rows in it
+     */
+    QueryResultFilter filter(TieredRowQueue queue, Pattern pattern) {
+        RowFilter filter = new RowFilter(queue, pattern);
+        filter.update();
+        return filter;
+    }
+
+    /**
+     * @return a ranking of the rows of the queue by the values of the column, having ranked the rows in it
+     * @throws ExecutionException if the column isn't numeric or boolean
+     */
+    QueryResultRanking rank(TieredRowQueue queue, int colIdx, int limit, boolean ascending) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException();
+        }
+        switch (m_types[colIdx]) {
+            case BYTE:
+            case INT16:
+            case INT32:
+            case INT64:
+            case FLOAT:
+            case DOUBLE:
+            case BOOLEAN:
+                break;
+            default:
+                throw new ExecutionException("Column " + m_schema.getFieldName(colIdx) + " of type "
+                        + m_types[colIdx] + " can't be ranked");
+        }
+        Ranking ranking = new Ranking(queue, colIdx, limit, ascending);
+        ranking.update();
+        return ranking;
+    }
+
+    private Chunk decodeChunk(List<byte[]> rows) {
+        Chunk chunk = new Chunk(m_types, rows.size());
+        for (byte[] row : rows) {
+            decode(chunk, row, chunk.m_rowCount++);
+        }
+        chunk.seal();
+        return chunk;
+    }
+
+    private void decode(Chunk chunk, byte[] row, int rowIdx) {
+        for (ColumnData column : chunk.m_columns) {
+            column.setNull(rowIdx);
+        }
+        if (row == null) {
+            return;
+        }
+        try (JsonParser parser = JSON_FACTORY.createJsonParser(row)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                Integer colIdx = m_columnIndex.get(parser.getCurrentName());
+                JsonToken token = parser.nextToken();
+                if (colIdx == null) {
+                    parser.skipChildren();
+                } else {
+                    chunk.m_columns[colIdx].set(rowIdx, parser, token);
+                }
+            }
+        } catch (IOException e) {
+            LOG.debug("Unable to decode query result row", e);
+        }
+    }
+
+    static SamzaSqlFieldType.TypeName getTypeName(String typeName) {
+        if (typeName != null) {
+            try {
+                return SamzaSqlFieldType.TypeName.valueOf(typeName);
+            } catch (IllegalArgumentException e) {
+                // Complex types like MAP(STRING) are kept as text
+            }
+        }
+        return SamzaSqlFieldType.TypeName.ANY;
+    }
+
+    private static ColumnData createColumn(SamzaSqlFieldType.TypeName type, int rows) {
+        switch (type) {
+            case BYTE:
+            case INT16:
+            case INT32:
+                return new IntColumn(type, rows);
+            case INT64:
+                return new LongColumn(type, rows);
+            case FLOAT:
+            case DOUBLE:
+                return new DoubleColumn(type, rows);
+            case BOOLEAN:
+                return new BooleanColumn(type, rows);
+            default:
+                return new DictionaryColumn(type, rows);
+        }
+    }
+
+    private static final class Chunk {
+        final ColumnData[] m_columns;
+        int m_rowCount;
+
+        Chunk(SamzaSqlFieldType.TypeName[] types, int rows) {
+            m_columns = new ColumnData[types.length];
+            for (int i = 0; i < types.length; i++) {
+                m_columns[i] = createColumn(types[i], rows);
+            }
+        }
+
+        void seal() {
+            for (ColumnData column : m_columns) {
+                column.seal();
+            }
+        }
+    }
+
+    private static final class ChunkBatch implements ColumnBatch {
+        private final SqlSchema m_schema;
+        private final Chunk m_chunk;
+        private final Column[] m_columns;
+
+        ChunkBatch(SqlSchema schema, Chunk chunk) {
+            m_schema = schema;
+            m_chunk = chunk;
+            m_columns = new Column[schema.getFieldCount()];
+            for (int i = 0; i < m_columns.length; i++) {
+                m_columns[i] = new ColumnView(i);
+            }
+        }
+
+        @Override
+        public SqlSchema getSchema() {
+            return m_schema;
+        }
+
+        @Override
+        public int getRowCount() {
+            return m_chunk.m_rowCount;
+        }
+
+        @Override
+        public Column getColumn(int colIdx) {
+            return m_columns[colIdx];
+        }
+
+        private final class ColumnView implements Column {
+            private final int m_colIdx;
+
+            ColumnView(int colIdx) {
+                m_colIdx = colIdx;
+            }
+
+            private ColumnData data(int row) {
+                if (row < 0 || row >= m_chunk.m_rowCount) {
+                    throw new IndexOutOfBoundsException("Row " + row + " of " + m_chunk.m_rowCount);
+                }
+                return m_chunk.m_columns[m_colIdx];
+            }
+
+            @Override
+            public String getTypeName() {
+                return ColumnarDecoder.getTypeName(m_schema.getFieldTypeName(m_colIdx)).toString();
+            }
+
+            @Override
+            public boolean isNull(int row) {
+                return data(row).isNull(row);
+            }
+
+            @Override
+            public int getInt(int row) {
+                return data(row).getInt(row);
+            }
+
+            @Override
+            public long getLong(int row) {
+                return data(row).getLong(row);
+            }
+
+            @Override
+            public double getDouble(int row) {
+                return data(row).getDouble(row);
+            }
+
+            @Override
+            public boolean getBoolean(int row) {
+                return data(row).getBoolean(row);
+            }
+
+            @Override
+            public String getString(int row) {
+                return data(row).getString(row);
+            }
+        }
+    }
+
+    // -- filtering -----------------------------------------------------------------
+
+    /**
+     * Keeps the positions, in the whole result, of the rows that match, as rows never change once in the queue.
+     * The rows added since the last update are read from the queue by the calling thread, which is the one
+     * reading it, and decoded and scanned on a fork-join pool, a piece per task.
+     */
+    private final class RowFilter implements QueryResultFilter {
+        private final TieredRowQueue m_queue;
+        private final Pattern m_pattern;
+        // Guarded by this
+        private long[] m_matches = new long[64];
+        private int m_firstMatch;
+        private int m_matchCount;
+        // Position of the first row not scanned yet
+        private long m_scanned;
+
+        RowFilter(TieredRowQueue queue, Pattern pattern) {
+            m_queue = queue;
+            m_pattern = pattern;
+        }
+
+        @Override
+        public Pattern getPattern() {
+            return m_pattern;
+        }
+
+        @Override
+        public synchronized int update() {
+            dropMatchesBehindHead();
+            // Rows added while scanning are left for the next update
+            long end = m_queue.getTailPosition();
+            long position = m_scanned;
+            while (position < end) {
+                List<List<byte[]>> pieces = new ArrayList<>();
+                long[] pieceStarts = new long[PIECES_PER_SCAN];
+                while (pieces.size() < PIECES_PER_SCAN && position < end) {
+                    List<byte[]> piece = new ArrayList<>();
+                    long start = m_queue.getFrom(position, (int) Math.min(m_pieceRows, end - position), piece);
+                    if (piece.isEmpty()) {
+                        position = end;
+                        break;
+                    }
+                    pieceStarts[pieces.size()] = start;
+                    pieces.add(piece);
+                    position = start + piece.size();
+                }
+                if (pieces.isEmpty()) {
+                    break;
+                }
+                BitSet[] pieceMatches = new BitSet[pieces.size()];
+                ForkJoinPool.commonPool().invoke(new ScanTask(m_pattern, pieces, pieceMatches, 0,
+                        pieceMatches.length));
+                for (int i = 0; i < pieceMatches.length; i++) {
+                    BitSet matches = pieceMatches[i];
+                    for (int row = matches.nextSetBit(0); row >= 0; row = matches.nextSetBit(row + 1)) {
+                        addMatch(pieceStarts[i] + row);
+                    }
+                }
+            }
+            m_scanned = Math.max(m_scanned, position);
+            return getRowCount();
+        }
+
+        @Override
+        public synchronized int getRowCount() {
+            return m_matchCount - m_firstMatch;
+        }
+
+        @Override
+        public synchronized ColumnBatch getRows(int startRow, int endRow) {
+            dropMatchesBehindHead();
+            int lowerBound = Math.max(startRow, 0);
+            int upperBound = Math.min(endRow, getRowCount() - 1);
+            List<byte[]> rows = new ArrayList<>(Math.max(upperBound - lowerBound + 1, 0));
+            for (int match = lowerBound; match <= upperBound; match++) {
+                rows.add(m_queue.getAt(m_matches[m_firstMatch + match]));
+            }
+            return decode(rows);
+        }
+
+        private void dropMatchesBehindHead() {
+            long head = m_queue.getHeadPosition();
+            while (m_firstMatch < m_matchCount && m_matches[m_firstMatch] < head) {
+                m_firstMatch++;
+            }
+        }
+
+        private void addMatch(long position) {
+            if (m_matchCount == m_matches.length) {
+                // Make room by dropping the matches of rows dropped before growing
+                if (m_firstMatch > 0) {
+                    System.arraycopy(m_matches, m_firstMatch, m_matches, 0, m_matchCount - m_firstMatch);
+                    m_matchCount -= m_firstMatch;
+                    m_firstMatch = 0;
+                }
+                if (m_matchCount == m_matches.length) {
+                    m_matches = Arrays.copyOf(m_matches, m_matches.length * 2);
+                }
+            }
+            m_matches[m_matchCount++] = position;
+        }
+    }
+
+    private static void scan(Pattern pattern, Chunk chunk, BitSet matches) {
+        for (ColumnData column : chunk.m_columns) {
+            column.match(pattern, chunk.m_rowCount, matches);
+        }
+    }
+
+    private final class ScanTask extends RecursiveAction {
+        private final Pattern m_pattern;
+        private final List<List<byte[]>> m_pieces;
+        private final BitSet[] m_matches;
+        private final int m_from;
+        private final int m_to;
+
+        ScanTask(Pattern pattern, List<List<byte[]>> pieces, BitSet[] matches, int from, int to) {
+            m_pattern = pattern;
+            m_pieces = pieces;
+            m_matches = matches;
+            m_from = from;
+            m_to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (m_to - m_from == 1) {
+                Chunk chunk = decodeChunk(m_pieces.get(m_from));
+                BitSet matches = new BitSet(chunk.m_rowCount);
+                scan(m_pattern, chunk, matches);
+                m_matches[m_from] = matches;
+                return;
+            }
+            int middle = (m_from + m_to) >>> 1;
+            invokeAll(new ScanTask(m_pattern, m_pieces, m_matches, m_from, middle),
+                    new ScanTask(m_pattern, m_pieces, m_matches, middle, m_to));
+        }
+    }
+
+    // -- ranking -------------------------------------------------------------------
+
+    /**
+     * A min-heap of the best rows by their sort key, so the root is the row a better one replaces. Keys are
+     * negated for ascending rankings. The heap holds the serialized rows it ranks, so they stay in it after the
+     * queue drops them. Each call catches up with the rows added to the queue since the last one, so a row is
+     * compared once; rows the queue dropped before that aren't ranked. Guarded by this.
+     */
+    private final class Ranking implements QueryResultRanking {
+        private final TieredRowQueue m_queue;
+        private final int m_colIdx;
+        private final int m_limit;
+        private final boolean m_ascending;
+        private final long[] m_keys;
+        private final byte[][] m_rows;
+        private int m_size;
+        private long m_rankedRows;
+        // Position of the first row not ranked yet
+        private long m_position;
+        private boolean m_closed;
+
+        Ranking(TieredRowQueue queue, int colIdx, int limit, boolean ascending) {
+            m_queue = queue;
+            m_colIdx = colIdx;
+            m_limit = limit;
+            m_ascending = ascending;
+            m_keys = new long[limit];
+            m_rows = new byte[limit][];
+        }
+
+        synchronized void update() {
+            long end = m_queue.getTailPosition();
+            while (!m_closed && m_position < end) {
+                List<byte[]> piece = new ArrayList<>();
+                long start = m_queue.getFrom(m_position, (int) Math.min(m_pieceRows, end - m_position), piece);
+                if (piece.isEmpty()) {
+                    break;
+                }
+                Chunk chunk = decodeChunk(piece);
+                for (int row = 0; row < chunk.m_rowCount; row++) {
+                    offer(chunk, row, piece.get(row));
+                }
+                m_position = start + piece.size();
+            }
+        }
+
+        private void offer(Chunk chunk, int row, byte[] payload) {
+            ColumnData column = chunk.m_columns[m_colIdx];
+            if (column.isNull(row)) {
+                return;
+            }
+            m_rankedRows++;
+            long key = column.getSortKey(row);
+            if (m_ascending) {
+                key = ~key;
+            }
+            if (m_size < m_limit) {
+                m_keys[m_size] = key;
+                m_rows[m_size] = payload;
+                siftUp(m_keys, m_rows, m_size++);
+            } else if (key > m_keys[0]) {
+                // Ties keep the row ranked first
+                m_keys[0] = key;
+                m_rows[0] = payload;
+                siftDown(m_keys, m_rows, 0, m_size);
+            }
+        }
+
+        @Override
+        public int getColumnIndex() {
+            return m_colIdx;
+        }
+
+        @Override
+        public boolean isAscending() {
+            return m_ascending;
+        }
+
+        @Override
+        public int getLimit() {
+            return m_limit;
+        }
+
+        @Override
+        public synchronized long getRankedRowCount() {
+            update();
+            return m_rankedRows;
+        }
+
+        @Override
+        public synchronized int getRowCount() {
+            update();
+            return m_size;
+        }
+
+        @Override
+        public synchronized ColumnBatch getRows(int startRow, int endRow) {
+            update();
+            // Sorted by popping a copy of the heap, worst first
+            long[] keys = Arrays.copyOf(m_keys, m_size);
+            byte[][] heapRows = Arrays.copyOf(m_rows, m_size);
+            byte[][] sortedRows = new byte[m_size][];
+            for (int size = m_size; size > 0; size--) {
+                sortedRows[size - 1] = heapRows[0];
+                keys[0] = keys[size - 1];
+                heapRows[0] = heapRows[size - 1];
+                siftDown(keys, heapRows, 0, size - 1);
+            }
+
+            int lowerBound = Math.max(startRow, 0);
+            int upperBound = Math.min(endRow, m_size - 1);
+            return decode(lowerBound > upperBound ? Collections.<byte[]>emptyList()
+                    : Arrays.asList(sortedRows).subList(lowerBound, upperBound + 1));
+        }
+
+        @Override
+        public synchronized void close() {
+            m_closed = true;
+        }
+    }
+
+    private static void siftUp(long[] keys, byte[][] rows, int idx) {
+        while (idx > 0) {
+            int parent = (idx - 1) >>> 1;
+            if (keys[parent] <= keys[idx]) {
+                break;
+            }
+            swap(keys, rows, parent, idx);
+            idx = parent;
+        }
+    }
+
+    private static void siftDown(long[] keys, byte[][] rows, int idx, int size) {
+        while (true) {
+            int child = 2 * idx + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && keys[child + 1] < keys[child]) {
+                child++;
+            }
+            if (keys[idx] <= keys[child]) {
+                break;
+            }
+            swap(keys, rows, idx, child);
+            idx = child;
+        }
+    }
+
+    private static void swap(long[] keys, byte[][] rows, int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        byte[] row = rows[i];
+        rows[i] = rows[j];
+        rows[j] = row;
+    }
+
+    // -- column data -------------------------------------------------------------
+
+    private abstract static class ColumnData {
+        final SamzaSqlFieldType.TypeName m_type;
+
+        ColumnData(SamzaSqlFieldType.TypeName type) {
+            m_type = type;
+        }
+
+        abstract void setNull(int row);
+
+        /**
+         * Sets the value the parser is on. Leaves the row null if the value doesn't fit the column type.
+         */
+        abstract void set(int row, JsonParser parser, JsonToken token) throws IOException;
+
+        abstract boolean isNull(int row);
+
+        void seal() {
+        }
+
+        int getInt(int row) {
+            throw new UnsupportedOperationException(m_type + " column has no int values");
+        }
+
+        long getLong(int row) {
+            return getInt(row);
+        }
+
+        double getDouble(int row) {
+            return getLong(row);
+        }
+
+        boolean getBoolean(int row) {
+            throw new UnsupportedOperationException(m_type + " column has no boolean values");
+        }
+
+        abstract String getString(int row);
+
+        /**
+         * @return a key ordering non-null values of the column as signed longs do
+         */
+        long getSortKey(int row) {
+            throw new UnsupportedOperationException(m_type + " column has no sort key");
+        }
+
+        /**
+         * Sets the bits of the rows, out of the first rowCount, with a value the pattern finds a match in.
+         */
+        void match(Pattern pattern, int rowCount, BitSet matches) {
+            for (int row = 0; row < rowCount; row++) {
+                String value = getString(row);
+                if (value != null && pattern.matcher(value).find()) {
+                    matches.set(row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Base of the primitive columns, which track nulls in a bit set.
+     */
+    private abstract static class PrimitiveColumn extends ColumnData {
+        final BitSet m_nulls;
+
+        PrimitiveColumn(SamzaSqlFieldType.TypeName type, BitSet nulls) {
+            super(type);
+            m_nulls = nulls;
+        }
+
+        @Override
+        void setNull(int row) {
+            m_nulls.set(row);
+        }
+
+        @Override
+        boolean isNull(int row) {
+            return m_nulls.get(row);
+        }
+
+        @Override
+        void set(int row, JsonParser parser, JsonToken token) throws IOException {
+            if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                parser.skipChildren();
+            } else if (setScalar(row, parser, token)) {
+                m_nulls.clear(row);
+            }
+        }
+
+        abstract boolean setScalar(int row, JsonParser parser, JsonToken token) throws IOException;
+
+        @Override
+        String getString(int row) {
+            return isNull(row) ? null : getNonNullString(row);
+        }
+
+        abstract String getNonNullString(int row);
+    }
+
+    private static final class IntColumn extends PrimitiveColumn {
+        private final int[] m_values;
+
+        IntColumn(SamzaSqlFieldType.TypeName type, int rows) {
+            super(type, new BitSet(rows));
+            m_values = new int[rows];
+        }
+
+        @Override
+        boolean setScalar(int row, JsonParser parser, JsonToken token) throws IOException {
+            if (token != JsonToken.VALUE_NUMBER_INT) {
+                return false;
+            }
+            m_values[row] = parser.getIntValue();
+            return true;
+        }
+
+
+        @Override
+        int getInt(int row) {
+            return m_values[row];
+        }
+
+        @Override
+        long getSortKey(int row) {
+            return m_values[row];
+        }
+
+        @Override
+        String getNonNullString(int row) {
+            return String.valueOf(m_values[row]);
+        }
+    }
+
+    private static final class LongColumn extends PrimitiveColumn {
+        private final long[] m_values;
+
+        LongColumn(SamzaSqlFieldType.TypeName type, int rows) {
+            super(type, new BitSet(rows));
+            m_values = new long[rows];
+        }
+
+        @Override
+        boolean setScalar(int row, JsonParser parser, JsonToken token) throws IOException {
+            if (token != JsonToken.VALUE_NUMBER_INT) {
+                return false;
+            }
+            m_values[row] = parser.getLongValue();
+            return true;
+        }
+
+
+        @Override
+        int getInt(int row) {
+            return (int) m_values[row];
+        }
+
+        @Override
+        long getLong(int row) {
+            return m_values[row];
+        }
+
+        @Override
+        long getSortKey(int row) {
+            return m_values[row];
+        }
+
+        @Override
+        String getNonNullString(int row) {
+            return String.valueOf(m_values[row]);
+        }
+    }
+
+    private static final class DoubleColumn extends PrimitiveColumn {
+        private final double[] m_values;
+
+        DoubleColumn(SamzaSqlFieldType.TypeName type, int rows) {
+            super(type, new BitSet(rows));
+            m_values = new double[rows];
+        }
+
+        @Override
+        boolean setScalar(int row, JsonParser parser, JsonToken token) throws IOException {
+            if (token != JsonToken.VALUE_NUMBER_INT && token != JsonToken.VALUE_NUMBER_FLOAT) {
+                return false;
+            }
+            m_values[row] = parser.getDoubleValue();
+            return true;
+        }
+
+
+        @Override
+        int getInt(int row) {
+            return (int) m_values[row];
+        }
+
+        @Override
+        long getLong(int row) {
+            return (long) m_values[row];
+        }
+
+        @Override
+        double getDouble(int row) {
+            return m_values[row];
+        }
+
+        // The bits of a double order like the double when negative values have all bits but the sign flipped
+        @Override
+        long getSortKey(int row) {
+            long bits = Double.doubleToLongBits(m_values[row]);
+            return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+        }
+
+        @Override
+        String getNonNullString(int row) {
+            return String.valueOf(m_values[row]);
+        }
+    }
+
+    private static final class BooleanColumn extends PrimitiveColumn {
+        private final BitSet m_values;
+
+        BooleanColumn(SamzaSqlFieldType.TypeName type, int rows) {
+            super(type, new BitSet(rows));
+            m_values = new BitSet(rows);
+        }
+
+        @Override
+        boolean setScalar(int row, JsonParser parser, JsonToken token) {
+            if (token != JsonToken.VALUE_TRUE && token != JsonToken.VALUE_FALSE) {
+                return false;
+            }
+            m_values.set(row, token == JsonToken.VALUE_TRUE);
+            return true;
+        }
+
+
+        @Override
+        boolean getBoolean(int row) {
+            return m_values.get(row);
+        }
+
+        @Override
+        long getSortKey(int row) {
+            return m_values.get(row) ? 1 : 0;
+        }
+
+        @Override
+        String getNonNullString(int row) {
+            return String.valueOf(m_values.get(row));
+        }
+    }
+
+    /**
+     * Strings, and values of any other type as JSON text, dictionary encoded within the chunk.
+     */
+    private static final class DictionaryColumn extends ColumnData {
+        private static final int NULL_CODE = -1;
+        private final int[] m_codes;
+        private List<String> m_dictionary;
+        // Only while the chunk is being filled
+        private Map<String, Integer> m_lookup;
+
+        DictionaryColumn(SamzaSqlFieldType.TypeName type, int rows) {
+            super(type);
+            m_codes = new int[rows];
+            m_dictionary = new ArrayList<>();
+            m_lookup = new HashMap<>();
+        }
+
+        @Override
+        void setNull(int row) {
+            m_codes[row] = NULL_CODE;
+        }
+
+        @Override
+        void set(int row, JsonParser parser, JsonToken token) throws IOException {
+            String value;
+            if (token == JsonToken.VALUE_NULL) {
+                return;
+            } else if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                value = MAPPER.readTree(parser).toString();
+            } else {
+                value = parser.getText();
+            }
+            Integer code = m_lookup.get(value);
+            if (code == null) {
+                code = m_dictionary.size();
+                m_dictionary.add(value);
+                m_lookup.put(value, code);
+            }
+            m_codes[row] = code;
+        }
+
+        @Override
+        void seal() {
+            m_dictionary = Arrays.asList(m_dictionary.toArray(new String[m_dictionary.size()]));
+            m_lookup = null;
+        }
+
+
+        @Override
+        boolean isNull(int row) {
+            return m_codes[row] == NULL_CODE;
+        }
+
+        @Override
+        int getInt(int row) {
+            return Integer.parseInt(getNumber(row));
+        }
+
+        @Override
+        long getLong(int row) {
+            return Long.parseLong(getNumber(row));
+        }
+
+        @Override
+        double getDouble(int row) {
+            return Double.parseDouble(getNumber(row));
+        }
+
+        @Override
+        boolean getBoolean(int row) {
+            return Boolean.parseBoolean(getString(row));
+        }
+
+        @Override
+        String getString(int row) {
+            int code = m_codes[row];
+            return code == NULL_CODE ? null : m_dictionary.get(code);
+        }
+
+        // Each distinct value is matched once
+        @Override
+        void match(Pattern pattern, int rowCount, BitSet matches) {
+            boolean[] matchingCodes = new boolean[m_dictionary.size()];
+            boolean anyMatch = false;
+            for (int code = 0; code < matchingCodes.length; code++) {
+                matchingCodes[code] = pattern.matcher(m_dictionary.get(code)).find();
+                anyMatch |= matchingCodes[code];
+            }
+            for (int row = 0; row < rowCount && anyMatch; row++) {
+                int code = m_codes[row];
+                if (code != NULL_CODE && matchingCodes[code]) {
+                    matches.set(row);
+                }
+            }
+        }
+
+        private String getNumber(int row) {
+            String value = getString(row);
+            if (value == null || value.isEmpty()
+                    || !(Character.isDigit(value.charAt(0)) || value.charAt(0) == '-')) {
+                throw new UnsupportedOperationException("Not a number in " + m_type + " column: " + value);
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.apache.samza.tools.client.impl;
+
+import org.apache.samza.tools.client.interfaces.PhaseTimings;
+
+
+/**
+ * When an execution started and when its first row reached the shell, which is how long a user waits to see
+ * anything, and how long the phases of starting it took.
+ */
+class ExecutionTiming {
+    private final long m_startNanos = System.nanoTime();
+    private volatile long m_firstRowNanos = -1;
+    private volatile long m_parseNanos = -1;
+    private volatile long m_planNanos = -1;
+    private volatile boolean m_planCached;
+    private volatile long m_jobStartNanos = -1;
+
+    // Threads racing on the first row record about the same time, so any of them may win
+    void recordRowsArrived() {
+        if (m_firstRowNanos < 0) {
+            m_firstRowNanos = System.nanoTime();
+        }
+    }
+
+    void recordPlan(long parseNanos, long planNanos, boolean cached) {
+        m_parseNanos = parseNanos;
+        m_planNanos = planNanos;
+        m_planCached = cached;
+    }
+
+    void recordJobStart(long jobStartNanos) {
+        m_jobStartNanos = jobStartNanos;
+    }
+
+    /**
+     * @return -1 until the first row arrived
+     */
+    long getTimeToFirstRowNanos() {
+        long firstRowNanos = m_firstRowNanos;
+        return firstRowNanos < 0 ? -1 : firstRowNanos - m_startNanos;
+    }
+
+    PhaseTimings getPhaseTimings() {
+        return new PhaseTimings(toMillis(m_parseNanos), toMillis(m_planNanos), m_planCached,
+                toMillis(m_jobStartNanos));
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos < 0 ? -1 : nanos / 1e6;
+    }
+}
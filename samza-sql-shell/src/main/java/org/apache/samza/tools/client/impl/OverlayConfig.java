@@ -0,0 +1,153 @@
+package org.apache.samza.tools.client.impl;
+
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import org.apache.samza.config.Config;
+import org.apache.samza.config.MapConfig;
+
+
+/**
+ * A config of the entries of an overlay on top of those of a base config, which is used as is instead of
+ * copied. Executions share one base config of the settings common to all of them and each only adds its
+ * own, so lookups cost a map lookup or two and nothing is copied until something iterates the entries.
+ */
+class OverlayConfig extends Config {
+    private final Config m_base;
+    private final Map<String, String> m_overlay;
+    private final int m_size;
+
+    OverlayConfig(Config base, Map<String, String> overlay) {
+        m_base = base;
+        m_overlay = Collections.unmodifiableMap(new HashMap<>(overlay));
+        int size = base.size();
+        for (String key : m_overlay.keySet()) {
+            if (!base.containsKey(key)) {
+                size++;
+            }
+        }
+        m_size = size;
+    }
+
+    Config getBase() {
+        return m_base;
+    }
+
+    /**
+     * @return the entries added to or replacing those of the base config
+     */
+    Map<String, String> getOverlay() {
+        return m_overlay;
+    }
+
+    @Override
+    public String get(Object key) {
+        String value = m_overlay.get(key);
+        return value != null || m_overlay.containsKey(key) ? value : m_base.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return m_overlay.containsKey(key) || m_base.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return values().contains(value);
+    }
+
+    @Override
+    public int size() {
+        return m_size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return m_size == 0;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return Stream.concat(m_overlay.entrySet().stream(),
+                        m_base.entrySet().stream().filter(e -> !m_overlay.containsKey(e.getKey()))).iterator();
+            }
+
+            @Override
+            public int size() {
+                return m_size;
+            }
+        };
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return new AbstractSet<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return entrySet().stream().map(Map.Entry::getKey).iterator();
+            }
+
+            @Override
+            public boolean contains(Object key) {
+                return containsKey(key);
+            }
+
+            @Override
+            public int size() {
+                return m_size;
+            }
+        };
+    }
+
+    @Override
+    public Collection<String> values() {
+        return new AbstractCollection<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return entrySet().stream().map(Map.Entry::getValue).iterator();
+            }
+
+            @Override
+            public int size() {
+                return m_size;
+            }
+        };
+    }
+
+    @Override
+    public Config subset(String prefix, boolean stripPrefix) {
+        return new OverlayConfig(m_base.subset(prefix, stripPrefix),
+                new MapConfig(m_overlay).subset(prefix, stripPrefix));
+    }
+
+    @Override
+    public Config sanitize() {
+        return new OverlayConfig(m_base.sanitize(), new MapConfig(m_overlay).sanitize());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Map && entrySet().equals(((Map<?, ?>) obj).entrySet());
+    }
+
+    @Override
+    public int hashCode() {
+        return entrySet().hashCode();
+    }
+
+    // Sorted, to be read
+    @Override
+    public String toString() {
+        return new TreeMap<>(this).toString();
+    }
+}
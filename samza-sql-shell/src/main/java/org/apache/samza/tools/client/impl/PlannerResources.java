@@ -0,0 +1,199 @@
+package org.apache.samza.tools.client.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import org.apache.calcite.rel.RelRoot;
+import org.apache.commons.lang.Validate;
+import org.apache.samza.config.Config;
+import org.apache.samza.sql.avro.AvroRelSchemaProvider;
+import org.apache.samza.sql.interfaces.RelSchemaProvider;
+import org.apache.samza.sql.interfaces.RelSchemaProviderFactory;
+import org.apache.samza.sql.interfaces.SqlIOConfig;
+import org.apache.samza.sql.interfaces.SqlIOResolver;
+import org.apache.samza.sql.interfaces.UdfMetadata;
+import org.apache.samza.sql.planner.QueryPlanner;
+import org.apache.samza.sql.runner.SamzaSqlApplicationConfig;
+import org.apache.samza.sql.testutil.JsonUtil;
+import org.apache.samza.sql.testutil.ReflectionUtils;
+import org.apache.samza.sql.testutil.SamzaSqlQueryParser;
+import org.apache.samza.tools.client.util.CliUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.apache.samza.sql.runner.SamzaSqlApplicationConfig.*;
+
+
+/**
+ * What planning a query needs besides the query, created once and shared by all executions: the IO resolver,
+ * the UDFs found by reflection, and the IO config and schema provider of each source queried so far. Creating
+ * them is most of the time it takes to plan a query the first time, and none of them depend on the query.
+ *
+ * Schema providers read the schema of their stream each time they are asked, so a changed schema still shows
+ * in the next query.
+ *
+ * Plans are cached by normalized statement along with the schemas of their sources, the schema version
+ * being the schema itself. A statement run again over unchanged schemas is neither parsed nor planned again.
+ */
+class PlannerResources {
+    private static final Logger LOG = LoggerFactory.getLogger(PlannerResources.class);
+    // Planned at warm up. Its stream has no schema, so only planning up to reading the schema is warmed up.
+    static final String WARM_UP_STATEMENT = "insert into log.outputStream select * from kafka.warmup";
+    static final int PLAN_CACHE_SIZE = 64;
+
+    private volatile SqlIOResolver m_ioResolver;
+    private volatile Collection<UdfMetadata> m_udfMetadata;
+    private final Map<String, SqlIOConfig> m_sourceConfigs = new ConcurrentHashMap<>();
+    private final Map<String, RelSchemaProvider> m_schemaProviders = new ConcurrentHashMap<>();
+    // Least recently used plans go first
+    private final Map<String, CachedPlan> m_plans = Collections.synchronizedMap(
+            new LinkedHashMap<String, CachedPlan>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedPlan> eldest) {
+                    return size() > PLAN_CACHE_SIZE;
+                }
+            });
+
+    /**
+     * Creates the resources and loads the planner classes ahead of the first query, which then starts faster.
+     * Failures are only logged, as the resources are created again when a query needs them.
+     */
+    void warmUp(Config baseConfig) {
+        long startNanos = System.nanoTime();
+        Config config = new OverlayConfig(baseConfig, Collections.singletonMap(CFG_SQL_STMTS_JSON,
+                JsonUtil.toJson(Collections.singletonList(WARM_UP_STATEMENT))));
+        try {
+            getUdfMetadata(config);
+            plan(WARM_UP_STATEMENT, config, false, false);
+        } catch (Exception e) {
+            LOG.debug("Planner warm up stopped", e);
+        }
+        LOG.info("Planner warmed up in {} ms", (System.nanoTime() - startNanos) / 1000000);
+    }
+
+    /**
+     * @param statement an INSERT statement
+     */
+    QueryPlan plan(String statement, Config config) {
+        return plan(statement, config, true, true);
+    }
+
+    /**
+     * Plans the statement even if its plan is cached, so planning gets timed, and caches the new plan.
+     */
+    QueryPlan replan(String statement, Config config) {
+        return plan(statement, config, false, true);
+    }
+
+    SqlIOResolver getIOResolver(Config config) {
+        SqlIOResolver ioResolver = m_ioResolver;
+        if (ioResolver == null) {
+            ioResolver = SamzaSqlApplicationConfig.createIOResolver(config);
+            m_ioResolver = ioResolver;
+        }
+        return ioResolver;
+    }
+
+    SqlIOConfig getSourceConfig(String source, Config config) {
+        return m_sourceConfigs.computeIfAbsent(source, s -> getIOResolver(config).fetchSourceInfo(s));
+    }
+
+    RelSchemaProvider getSchemaProvider(String source, Config config) {
+        return m_schemaProviders.computeIfAbsent(source, s -> {
+            SqlIOConfig sourceInfo = getSourceConfig(s, config);
+            return initializePlugin("RelSchemaProvider", sourceInfo.getRelSchemaProviderName(), config,
+                    CFG_FMT_REL_SCHEMA_PROVIDER_DOMAIN,
+                    (o, c) -> ((RelSchemaProviderFactory) o).create(sourceInfo.getSystemStream(), c));
+        });
+    }
+
+    private QueryPlan plan(String statement, Config config, boolean lookUp, boolean keep) {
+        String key = CliUtil.normalizeSql(statement);
+        CachedPlan cachedPlan = lookUp ? m_plans.get(key) : null;
+        if (cachedPlan != null
+                && cachedPlan.m_schemas.equals(getSchemas(cachedPlan.m_queryInfo.getSources(), config))) {
+            return new QueryPlan(cachedPlan.m_queryInfo, cachedPlan.m_root, 0, 0, true);
+        }
+
+        long startNanos = System.nanoTime();
+        SamzaSqlQueryParser.QueryInfo queryInfo =
+                SamzaSqlApplicationConfig.fetchQueryInfo(Collections.singletonList(statement)).get(0);
+        long parsedNanos = System.nanoTime();
+        // Only the sources of the query, as the planner reads the schema of every source it's given
+        Map<String, SqlIOConfig> sourceConfigs = new HashMap<>();
+        Map<String, RelSchemaProvider> schemaProviders = new HashMap<>();
+        for (String source : queryInfo.getSources()) {
+            sourceConfigs.put(source, getSourceConfig(source, config));
+            schemaProviders.put(source, getSchemaProvider(source, config));
+        }
+        // Read before planning, so a schema changing meanwhile makes the plan look stale rather than current
+        Map<String, String> schemas = keep ? getSchemas(queryInfo.getSources(), config) : null;
+        RelRoot root;
+        try {
+            root = new QueryPlanner(schemaProviders, sourceConfigs, getUdfMetadata(config))
+                    .plan(queryInfo.getSelectQuery());
+        } finally {
+            if (!keep) {
+                m_sourceConfigs.keySet().removeAll(sourceConfigs.keySet());
+                m_schemaProviders.keySet().removeAll(schemaProviders.keySet());
+            }
+        }
+        if (schemas != null) {
+            m_plans.put(key, new CachedPlan(queryInfo, root, schemas));
+        }
+        return new QueryPlan(queryInfo, root, parsedNanos - startNanos, System.nanoTime() - parsedNanos, false);
+    }
+
+    // Null when a source has no schema text to compare, which leaves its queries uncached
+    private Map<String, String> getSchemas(Collection<String> sources, Config config) {
+        Map<String, String> schemas = new HashMap<>();
+        for (String source : sources) {
+            RelSchemaProvider schemaProvider = getSchemaProvider(source, config);
+            if (!(schemaProvider instanceof AvroRelSchemaProvider)) {
+                return null;
+            }
+            schemas.put(source, ((AvroRelSchemaProvider) schemaProvider).getSchema(
+                    getSourceConfig(source, config).getSystemStream()));
+        }
+        return schemas;
+    }
+
+    // UDFs are only found by the application config, which is created once for them with the statements of config
+    private Collection<UdfMetadata> getUdfMetadata(Config config) {
+        Collection<UdfMetadata> udfMetadata = m_udfMetadata;
+        if (udfMetadata == null) {
+            udfMetadata = new SamzaSqlApplicationConfig(config).getUdfMetadata();
+            m_udfMetadata = udfMetadata;
+        }
+        return udfMetadata;
+    }
+
+    static <T> T initializePlugin(String pluginName, String plugin, Config staticConfig,
+        String pluginDomainFormat, BiFunction<Object, Config, T> factoryInvoker) {
+        String pluginDomain = String.format(pluginDomainFormat, plugin);
+        Config pluginConfig = staticConfig.subset(pluginDomain);
+        String factoryName = pluginConfig.getOrDefault(CFG_FACTORY, "");
+        Validate.notEmpty(factoryName, String.format("Factory is not set for %s", plugin));
+        Object factory = ReflectionUtils.createInstance(factoryName);
+        Validate.notNull(factory, String.format("Factory creation failed for %s", plugin));
+        LOG.info("Instantiating {} using factory {} with props {}", pluginName, factoryName, pluginConfig);
+        return factoryInvoker.apply(factory, pluginConfig);
+    }
+
+    private static final class CachedPlan {
+        final SamzaSqlQueryParser.QueryInfo m_queryInfo;
+        final RelRoot m_root;
+        // By source
+        final Map<String, String> m_schemas;
+
+        CachedPlan(SamzaSqlQueryParser.QueryInfo queryInfo, RelRoot root, Map<String, String> schemas) {
+            m_queryInfo = queryInfo;
+            m_root = root;
+            m_schemas = schemas;
+        }
+    }
+}
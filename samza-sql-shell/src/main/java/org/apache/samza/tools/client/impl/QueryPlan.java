@@ -0,0 +1,53 @@
+package org.apache.samza.tools.client.impl;
+
+import org.apache.calcite.rel.RelRoot;
+import org.apache.samza.sql.testutil.SamzaSqlQueryParser;
+
+
+/**
+ * The plan of a query statement with how long parsing and planning it took, both 0 when the plan came from
+ * the cache of PlannerResources.
+ */
+class QueryPlan {
+    private final SamzaSqlQueryParser.QueryInfo m_queryInfo;
+    private final RelRoot m_root;
+    private final long m_parseNanos;
+    private final long m_planNanos;
+    private final boolean m_cached;
+
+    QueryPlan(SamzaSqlQueryParser.QueryInfo queryInfo, RelRoot root, long parseNanos, long planNanos,
+            boolean cached) {
+        m_queryInfo = queryInfo;
+        m_root = root;
+        m_parseNanos = parseNanos;
+        m_planNanos = planNanos;
+        m_cached = cached;
+    }
+
+    /**
+     * @return the sources, the sink and the SELECT of the statement
+     */
+    SamzaSqlQueryParser.QueryInfo getQueryInfo() {
+        return m_queryInfo;
+    }
+
+    RelRoot getRoot() {
+        return m_root;
+    }
+
+    long getParseNanos() {
+        return m_parseNanos;
+    }
+
+    /**
+     * @return the time Calcite took to validate the SELECT and convert it to relational algebra. QueryPlanner
+     * does both in one call, so they can't be timed apart.
+     */
+    long getPlanNanos() {
+        return m_planNanos;
+    }
+
+    boolean isCached() {
+        return m_cached;
+    }
+}
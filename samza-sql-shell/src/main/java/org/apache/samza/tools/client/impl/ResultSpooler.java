@@ -0,0 +1,511 @@
+package org.apache.samza.tools.client.impl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.samza.tools.client.interfaces.ExecutionContext;
+import org.apache.samza.tools.client.interfaces.SqlSchema;
+import org.apache.samza.tools.client.util.ChannelOutputStream;
+import org.apache.samza.tools.client.util.Utf8Buffer;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.NullNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Writes the rows of a query to a file as they arrive, whatever the views showing them do.
+ *
+ * The log system producers hand rows over through a bounded queue and a thread of the spooler writes them,
+ * so a slow disk holds the query back rather than losing rows, and a paused or slow terminal doesn't hold
+ * the file back. The thread takes rows in batches and encodes them into a large direct buffer that goes to
+ * a FileChannel when it is full, and at least once a second while rows trickle in.
+ *
+ * Rows with values that don't fit the type of their column, like 3000000000 or "notanint" in an INT32 one, and
+ * rows that aren't JSON, are still written, with those values left null or empty. They are counted so the
+ * shell can tell how many rows lost values.
+ */
+class ResultSpooler implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(ResultSpooler.class);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    static final int DEFAULT_QUEUE_CAPACITY = 64 * 1024;
+    private static final int BATCH_ROWS = 4096;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final long FLUSH_INTERVAL_MS = 1000;
+    private static final long OFFER_TIMEOUT_MS = 100;
+    // Queued by close, after the last row
+    private static final byte[] END_OF_ROWS = new byte[0];
+
+    private final File m_file;
+    private final BlockingQueue<byte[]> m_rows;
+    private final RowWriter m_rowWriter;
+    private final Thread m_thread;
+    private volatile boolean m_closed;
+    private volatile long m_rowsWritten;
+    private volatile long m_coercedRows;
+    private volatile IOException m_error;
+
+    /**
+     * Creates or truncates the file and starts writing.
+     * @param compressed gzip JSONL and CSV files, deflate the blocks of AVRO ones
+     */
+    ResultSpooler(File file, ExecutionContext.SpoolFormat format, boolean compressed, SqlSchema schema)
+            throws IOException {
+        this(file, format, compressed, schema, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    ResultSpooler(File file, ExecutionContext.SpoolFormat format, boolean compressed, SqlSchema schema,
+            int queueCapacity) throws IOException {
+        m_file = file;
+        m_rows = new ArrayBlockingQueue<>(queueCapacity);
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        OutputStream out = new ChannelOutputStream(channel, BUFFER_SIZE);
+        try {
+            switch (format) {
+                case CSV:
+                    m_rowWriter = new CsvWriter(compressed ? gzip(out) : out, schema);
+                    break;
+                case AVRO:
+                    m_rowWriter = new AvroWriter(out, schema, compressed);
+                    break;
+                default:
+                    m_rowWriter = new JsonLinesWriter(compressed ? gzip(out) : out);
+            }
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            throw e;
+        }
+        m_thread = new Thread(this::writeRows, "result-spooler-" + file.getName());
+        m_thread.setDaemon(true);
+        m_thread.start();
+    }
+
+    /**
+     * Blocks while the queue is full. Rows added after close, or after the spooler failed, are ignored.
+     */
+    void addAll(List<byte[]> rows) {
+        boolean interrupted = false;
+        for (byte[] row : rows) {
+            while (!m_closed) {
+                try {
+                    if (m_rows.offer(row, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    // Rows are not given up on, but the caller still gets to see it was interrupted
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    File getFile() {
+        return m_file;
+    }
+
+    long getRowsWritten() {
+        return m_rowsWritten;
+    }
+
+    /**
+     * @return rows written with values left out because they didn't fit the type of their column
+     */
+    long getCoercedRowCount() {
+        return m_coercedRows;
+    }
+
+    /**
+     * @return the error that stopped the spooler, or null
+     */
+    IOException getError() {
+        return m_error;
+    }
+
+    /**
+     * Stops taking rows, writes the ones already queued and closes the file.
+     */
+    @Override
+    public void close() {
+        boolean interrupted = false;
+        if (!m_closed) {
+            m_closed = true;
+            while (m_thread.isAlive()) {
+                try {
+                    if (m_rows.offer(END_OF_ROWS, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        while (m_thread.isAlive()) {
+            try {
+                m_thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeRows() {
+        List<byte[]> batch = new ArrayList<>(BATCH_ROWS);
+        long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS);
+        long lastFlush = System.nanoTime();
+        try {
+            boolean done = false;
+            while (!done) {
+                byte[] first = m_rows.poll(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    m_rows.drainTo(batch, BATCH_ROWS - 1);
+                }
+                long written = 0;
+                long coerced = 0;
+                for (byte[] row : batch) {
+                    if (row == END_OF_ROWS) {
+                        done = true;
+                        break;
+                    }
+                    if (!m_rowWriter.write(row)) {
+                        coerced++;
+                    }
+                    written++;
+                }
+                batch.clear();
+                m_rowsWritten += written;
+                m_coercedRows += coerced;
+
+                // Rows that trickle in still show up in the file within a second or so
+                long now = System.nanoTime();
+                if (!done && m_rows.isEmpty() && now - lastFlush >= flushIntervalNanos) {
+                    m_rowWriter.flush();
+                    lastFlush = now;
+                }
+            }
+            m_rowWriter.close();
+        } catch (IOException e) {
+            fail(e);
+        } catch (InterruptedException e) {
+            fail(new IOException("Spooling was interrupted", e));
+        }
+    }
+
+    private void fail(IOException e) {
+        LOG.error("Failed to spool query results to " + m_file, e);
+        m_error = e;
+        m_closed = true;
+        m_rows.clear();
+        try {
+            m_rowWriter.close();
+        } catch (IOException | RuntimeException closeError) {
+            // The first error is the one that matters
+        }
+    }
+
+    private static OutputStream gzip(OutputStream out) throws IOException {
+        // Sync flushes let readers see the rows written so far
+        return new GZIPOutputStream(out, 64 * 1024, true);
+    }
+
+    private interface RowWriter extends Closeable {
+        /**
+         * @return false if values of the row didn't fit their column and were left out
+         */
+        boolean write(byte[] row) throws IOException;
+
+        void flush() throws IOException;
+    }
+
+    // Rows are JSON objects on a single line already
+    private static final class JsonLinesWriter implements RowWriter {
+        private final OutputStream m_out;
+
+        JsonLinesWriter(OutputStream out) {
+            m_out = out;
+        }
+
+        @Override
+        public boolean write(byte[] row) throws IOException {
+            m_out.write(row);
+            m_out.write('\n');
+            return true;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            m_out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            m_out.close();
+        }
+    }
+
+    /**
+     * RFC 4180 CSV with a header line of the result columns. Nested values are written as JSON and missing
+     * or null values as empty fields.
+     */
+    private static final class CsvWriter implements RowWriter {
+        private final OutputStream m_out;
+        private final Map<String, Integer> m_columnIndex = new HashMap<>();
+        private final String[] m_values;
+        private final Utf8Buffer m_line = new Utf8Buffer(1024);
+
+        CsvWriter(OutputStream out, SqlSchema schema) throws IOException {
+            m_out = out;
+            m_values = new String[schema.getFieldCount()];
+            for (int i = 0; i < m_values.length; i++) {
+                m_columnIndex.put(schema.getFieldName(i), i);
+                m_values[i] = schema.getFieldName(i);
+            }
+            writeLine();
+        }
+
+        @Override
+        public boolean write(byte[] row) throws IOException {
+            for (int i = 0; i < m_values.length; i++) {
+                m_values[i] = null;
+            }
+            boolean decoded = false;
+            try (JsonParser parser = JSON_FACTORY.createJsonParser(row)) {
+                if (parser.nextToken() == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        Integer colIdx = m_columnIndex.get(parser.getCurrentName());
+                        JsonToken token = parser.nextToken();
+                        if (colIdx == null) {
+                            parser.skipChildren();
+                        } else if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                            m_values[colIdx] = MAPPER.readTree(parser).toString();
+                        } else if (token != JsonToken.VALUE_NULL) {
+                            m_values[colIdx] = parser.getText();
+                        }
+                    }
+                    decoded = true;
+                }
+            } catch (IOException e) {
+                // A row that isn't JSON doesn't stop the others from being written
+                LOG.debug("Unable to decode query result row", e);
+            }
+            writeLine();
+            return decoded;
+        }
+
+        private void writeLine() throws IOException {
+            m_line.clear();
+            for (int i = 0; i < m_values.length; i++) {
+                if (i > 0) {
+                    m_line.append(',');
+                }
+                if (m_values[i] != null) {
+                    appendField(m_values[i]);
+                }
+            }
+            m_line.append('\n');
+            m_line.writeTo(m_out);
+        }
+
+        private void appendField(String value) {
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                m_line.append(value);
+                return;
+            }
+            m_line.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    m_line.append('"');
+                }
+                m_line.append(c);
+            }
+            m_line.append('"');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            m_out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            m_out.close();
+        }
+    }
+
+    /**
+     * Avro object container file of records with a nullable field per result column. Integer, floating point
+     * and boolean columns keep their type, everything else is written as a string, nested values as JSON.
+     */
+    private static final class AvroWriter implements RowWriter {
+        private final DataFileWriter<GenericRecord> m_writer;
+        private final Schema m_schema;
+        private final Map<String, Integer> m_columnIndex = new HashMap<>();
+        private final Schema.Type[] m_types;
+
+        AvroWriter(OutputStream out, SqlSchema schema, boolean compressed) throws IOException {
+            m_types = new Schema.Type[schema.getFieldCount()];
+            List<Schema.Field> fields = new ArrayList<>(m_types.length);
+            Set<String> fieldNames = new HashSet<>();
+            for (int i = 0; i < m_types.length; i++) {
+                m_columnIndex.put(schema.getFieldName(i), i);
+                m_types[i] = getAvroType(ColumnarDecoder.getTypeName(schema.getFieldTypeName(i)));
+                List<Schema> union = new ArrayList<>(2);
+                union.add(Schema.create(Schema.Type.NULL));
+                union.add(Schema.create(m_types[i]));
+                String fieldName = toAvroName(schema.getFieldName(i));
+                if (!fieldNames.add(fieldName)) {
+                    fieldName = fieldName + "_" + i;
+                    fieldNames.add(fieldName);
+                }
+                fields.add(new Schema.Field(fieldName, Schema.createUnion(union), schema.getFieldName(i),
+                        NullNode.getInstance()));
+            }
+            m_schema = Schema.createRecord("QueryResult", null, "org.apache.samza.tools.client", false);
+            m_schema.setFields(fields);
+
+            m_writer = new DataFileWriter<>(new GenericDatumWriter<GenericRecord>(m_schema));
+            if (compressed) {
+                m_writer.setCodec(CodecFactory.deflateCodec(Deflater.DEFAULT_COMPRESSION));
+            }
+            m_writer.create(m_schema, out);
+        }
+
+        @Override
+        public boolean write(byte[] row) throws IOException {
+            GenericData.Record record = new GenericData.Record(m_schema);
+            boolean fits = false;
+            try (JsonParser parser = JSON_FACTORY.createJsonParser(row)) {
+                if (parser.nextToken() == JsonToken.START_OBJECT) {
+                    fits = true;
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        Integer colIdx = m_columnIndex.get(parser.getCurrentName());
+                        JsonToken token = parser.nextToken();
+                        if (colIdx == null) {
+                            parser.skipChildren();
+                            continue;
+                        }
+                        Object value = getValue(parser, token, m_types[colIdx]);
+                        fits &= value != null || token == JsonToken.VALUE_NULL;
+                        record.put(colIdx, value);
+                    }
+                }
+            } catch (IOException e) {
+                LOG.debug("Unable to decode query result row", e);
+                fits = false;
+            }
+            m_writer.append(record);
+            return fits;
+        }
+
+        /**
+         * @return the value in the type of its column, or null if it is null or doesn't fit the type, like a number
+         * out of the range of an INT column
+         */
+        private static Object getValue(JsonParser parser, JsonToken token, Schema.Type type) throws IOException {
+            if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                String json = MAPPER.readTree(parser).toString();
+                return type == Schema.Type.STRING ? json : null;
+            }
+            switch (type) {
+                case INT:
+                    return token == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() == JsonParser.NumberType.INT
+                            ? parser.getIntValue() : null;
+                case LONG:
+                    return token == JsonToken.VALUE_NUMBER_INT
+                            && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER
+                            ? parser.getLongValue() : null;
+                case FLOAT:
+                    return isNumber(token) ? (float) parser.getDoubleValue() : null;
+                case DOUBLE:
+                    return isNumber(token) ? parser.getDoubleValue() : null;
+                case BOOLEAN:
+                    return token == JsonToken.VALUE_TRUE ? Boolean.TRUE
+                            : token == JsonToken.VALUE_FALSE ? Boolean.FALSE : null;
+                default:
+                    return token == JsonToken.VALUE_NULL ? null : parser.getText();
+            }
+        }
+
+        private static boolean isNumber(JsonToken token) {
+            return token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT;
+        }
+
+        private static Schema.Type getAvroType(SamzaSqlFieldType.TypeName typeName) {
+            switch (typeName) {
+                case BYTE:
+                case INT16:
+                case INT32:
+                    return Schema.Type.INT;
+                case INT64:
+                    return Schema.Type.LONG;
+                case FLOAT:
+                    return Schema.Type.FLOAT;
+                case DOUBLE:
+                    return Schema.Type.DOUBLE;
+                case BOOLEAN:
+                    return Schema.Type.BOOLEAN;
+                default:
+                    return Schema.Type.STRING;
+            }
+        }
+
+        // Avro names are [A-Za-z_][A-Za-z0-9_]*, unlike column names such as EXPR$0
+        private static String toAvroName(String name) {
+            StringBuilder builder = new StringBuilder(name.length() + 1);
+            for (int i = 0; i < name.length(); i++) {
+                char c = name.charAt(i);
+                boolean valid = c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                        || (i > 0 && c >= '0' && c <= '9');
+                builder.append(valid ? c : '_');
+            }
+            return builder.length() == 0 ? "_" : builder.toString();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            m_writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            m_writer.close();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package org.apache.samza.tools.client.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.samza.tools.client.interfaces.ColumnBatch;
+import org.apache.samza.tools.client.interfaces.ColumnStatistics;
+import org.apache.samza.tools.client.interfaces.SqlSchema;
+import org.apache.samza.tools.client.util.HyperLogLog;
+import org.apache.samza.tools.client.util.QuantileSketch;
+import org.apache.samza.tools.client.util.SpaceSaving;
+
+
+/**
+ * Sketches of the values of each column of a query's rows, updated as rows are captured and never holding
+ * on to them: a HyperLogLog for distinct counts, space-saving counters for the most frequent values and,
+ * for numeric columns, a quantile sketch. Memory stays the same however many rows go by.
+ *
+ * Rows are added as ColumnarDecoder decodes them, so they are read from typed columns rather than parsed
+ * again. Each thread adding rows has sketches of its own, merged when the statistics are read, so threads
+ * capturing rows don't wait for each other.
+ */
+class ResultStatistics {
+    static final int DISTINCT_PRECISION = 12;
+    static final int FREQUENT_VALUE_COUNTERS = 64;
+    static final int FREQUENT_VALUES = 5;
+    static final double QUANTILE_ACCURACY = 0.01;
+
+    private final SqlSchema m_schema;
+    private final boolean[] m_numeric;
+    private final boolean[] m_nested;
+    // Each guarded by itself, only contended while statistics are read
+    private final List<Sketches> m_allSketches = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Sketches> m_sketches = ThreadLocal.withInitial(() -> {
+        Sketches sketches = new Sketches();
+        m_allSketches.add(sketches);
+        return sketches;
+    });
+
+    ResultStatistics(SqlSchema schema) {
+        m_schema = schema;
+        m_numeric = new boolean[schema.getFieldCount()];
+        m_nested = new boolean[schema.getFieldCount()];
+        for (int i = 0; i < m_numeric.length; i++) {
+            switch (ColumnarDecoder.getTypeName(schema.getFieldTypeName(i))) {
+                case BYTE:
+                case INT16:
+                case INT32:
+                case INT64:
+                case FLOAT:
+                case DOUBLE:
+                    m_numeric[i] = true;
+                    break;
+                case ANY:
+                    // Maps, arrays and structs
+                    m_nested[i] = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    void addAll(ColumnBatch rows) {
+        Sketches sketches = m_sketches.get();
+        synchronized (sketches) {
+            sketches.m_rowCount += rows.getRowCount();
+            for (int colIdx = 0; colIdx < m_numeric.length; colIdx++) {
+                ColumnBatch.Column column = rows.getColumn(colIdx);
+                ColumnSketch sketch = sketches.m_columns[colIdx];
+                for (int row = 0; row < rows.getRowCount(); row++) {
+                    if (!column.isNull(row)) {
+                        sketch.add(column, row);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return how many rows were added so far
+     */
+    long getRowCount() {
+        long rowCount = 0;
+        for (Sketches sketches : m_allSketches) {
+            synchronized (sketches) {
+                rowCount += sketches.m_rowCount;
+            }
+        }
+        return rowCount;
+    }
+
+    /**
+     * @return statistics of each column of the rows added so far
+     */
+    List<ColumnStatistics> getColumnStatistics() {
+        Sketches merged = new Sketches();
+        for (Sketches sketches : m_allSketches) {
+            synchronized (sketches) {
+                merged.merge(sketches);
+            }
+        }
+        List<ColumnStatistics> statistics = new ArrayList<>(m_numeric.length);
+        for (int i = 0; i < m_numeric.length; i++) {
+            ColumnSketch column = merged.m_columns[i];
+            double[] quantiles = new double[ColumnStatistics.QUANTILES.length];
+            for (int q = 0; q < quantiles.length; q++) {
+                quantiles[q] = column.m_quantiles == null ? Double.NaN
+                        : column.m_quantiles.getQuantile(ColumnStatistics.QUANTILES[q]);
+            }
+            List<ColumnStatistics.FrequentValue> frequentValues = new ArrayList<>();
+            for (SpaceSaving.Counter counter : column.m_frequentValues.getTop(FREQUENT_VALUES)) {
+                frequentValues.add(new ColumnStatistics.FrequentValue(counter.getValue(), counter.getCount(),
+                        counter.getError()));
+            }
+            statistics.add(new ColumnStatistics(m_schema.getFieldName(i), m_schema.getFieldTypeName(i),
+                    column.m_count, merged.m_rowCount - column.m_count, column.m_distinct.estimate(),
+                    column.m_quantiles == null ? Double.NaN : column.m_quantiles.getMin(),
+                    column.m_quantiles == null ? Double.NaN : column.m_quantiles.getMax(),
+                    quantiles, frequentValues));
+        }
+        return statistics;
+    }
+
+    private final class Sketches {
+        final ColumnSketch[] m_columns = new ColumnSketch[m_numeric.length];
+        long m_rowCount;
+
+        Sketches() {
+            for (int i = 0; i < m_columns.length; i++) {
+                m_columns[i] = new ColumnSketch(m_numeric[i], m_nested[i]);
+            }
+        }
+
+        void merge(Sketches other) {
+            for (int i = 0; i < m_columns.length; i++) {
+                m_columns[i].merge(other.m_columns[i]);
+            }
+            m_rowCount += other.m_rowCount;
+        }
+    }
+
+    private static final class ColumnSketch {
+        final HyperLogLog m_distinct = new HyperLogLog(DISTINCT_PRECISION);
+        final SpaceSaving m_frequentValues = new SpaceSaving(FREQUENT_VALUE_COUNTERS);
+        // Null unless the column is numeric
+        final QuantileSketch m_quantiles;
+        final boolean m_nested;
+        long m_count;
+
+        ColumnSketch(boolean numeric, boolean nested) {
+            m_quantiles = numeric ? new QuantileSketch(QUANTILE_ACCURACY) : null;
+            m_nested = nested;
+        }
+
+        // Nested values are only counted
+        void add(ColumnBatch.Column column, int row) {
+            m_count++;
+            if (m_nested) {
+                return;
+            }
+            String text = column.getString(row);
+            if (m_quantiles != null) {
+                double value = column.getDouble(row);
+                m_quantiles.add(value);
+                // 1 and 1.0 are the same value
+                m_distinct.add(HyperLogLog.hash(Double.doubleToLongBits(value)));
+            } else {
+                m_distinct.add(HyperLogLog.hash(text));
+            }
+            m_frequentValues.add(text);
+        }
+
+        void merge(ColumnSketch other) {
+            m_distinct.merge(other.m_distinct);
+            m_frequentValues.merge(other.m_frequentValues);
+            if (m_quantiles != null) {
+                m_quantiles.merge(other.m_quantiles);
+            }
+            m_count += other.m_count;
+        }
+    }
+}
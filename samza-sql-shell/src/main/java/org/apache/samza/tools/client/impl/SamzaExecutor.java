@@ -5,8 +5,17 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.BiFunction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -14,9 +23,12 @@ import kafka.utils.ZkUtils;
 import org.I0Itec.zkclient.ZkClient;
 import org.I0Itec.zkclient.ZkConnection;
 import org.apache.avro.Schema;
+import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.RelRoot;
+import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeField;
-import org.apache.commons.lang.Validate;
+import org.apache.calcite.sql.SqlExplainLevel;
 import org.apache.samza.SamzaException;
 import org.apache.samza.config.Config;
 import org.apache.samza.config.JobConfig;
@@ -31,22 +43,19 @@ import org.apache.samza.sql.fn.RegexMatchUdf;
 import org.apache.samza.sql.impl.ConfigBasedIOResolverFactory;
 import org.apache.samza.sql.impl.ConfigBasedUdfResolver;
 import org.apache.samza.sql.interfaces.RelSchemaProvider;
-import org.apache.samza.sql.interfaces.RelSchemaProviderFactory;
 import org.apache.samza.sql.interfaces.SqlIOConfig;
-import org.apache.samza.sql.interfaces.SqlIOResolver;
-import org.apache.samza.sql.planner.QueryPlanner;
 import org.apache.samza.sql.runner.SamzaSqlApplication;
 import org.apache.samza.sql.runner.SamzaSqlApplicationConfig;
 import org.apache.samza.sql.runner.SamzaSqlApplicationRunner;
 import org.apache.samza.sql.testutil.JsonUtil;
-import org.apache.samza.sql.testutil.ReflectionUtils;
 import org.apache.samza.standalone.PassthroughJobCoordinatorFactory;
 import org.apache.samza.system.OutgoingMessageEnvelope;
 import org.apache.samza.system.kafka.KafkaSystemFactory;
 import org.apache.samza.tools.avro.AvroSchemaGenRelConverterFactory;
 import org.apache.samza.tools.avro.AvroSerDeFactory;
 import org.apache.samza.tools.client.interfaces.*;
-import org.apache.samza.tools.client.util.RandomAccessQueue;
+import org.apache.samza.tools.client.util.LatencyHistogram;
+import org.apache.samza.tools.client.util.TieredRowQueue;
 import org.apache.samza.tools.json.JsonRelConverterFactory;
 import org.apache.samza.tools.schemas.ProfileChangeEvent;
 import org.jline.utils.Log;
@@ -63,15 +72,31 @@ public class SamzaExecutor implements SqlExecutor {
     private static final Logger LOG = LoggerFactory.getLogger(SamzaExecutor.class);
     private static final String SAMZA_SYSTEM_KAFKA = "kafka";
     private static final String SAMZA_SYSTEM_LOG = "log";
+    // Rows kept in memory per execution. Older rows are spilled to disk.
     private static final int RANDOM_ACCESS_QUEUE_CAPACITY = 5000;
+    // Settings common to all executions, which only add their own on top
+    private static final Config BASE_CONFIG = createBaseConfig();
+    // Loaded at start, as loading what a job start goes through takes a while the first time. Unlike the
+    // planner resources, the runner itself can't be built ahead: it is bound to the config of its job.
+    static final List<String> RUNNER_CLASSES = Arrays.asList(
+            "org.apache.samza.sql.runner.SamzaSqlApplicationRunner",
+            "org.apache.samza.sql.runner.SamzaSqlApplication",
+            "org.apache.samza.runtime.LocalApplicationRunner",
+            "org.apache.samza.processor.StreamProcessor",
+            "org.apache.samza.container.SamzaContainer",
+            "org.apache.samza.system.kafka.KafkaSystemFactory",
+            "org.apache.kafka.clients.consumer.KafkaConsumer",
+            "org.apache.kafka.clients.producer.KafkaProducer");
 
     private static class SamzaExecution {
         SamzaSqlApplicationRunner runner;
         SamzaSqlApplication app;
+        Config config;
 
-        SamzaExecution(SamzaSqlApplicationRunner runner, SamzaSqlApplication app) {
+        SamzaExecution(SamzaSqlApplicationRunner runner, SamzaSqlApplication app, Config config) {
             this.runner = runner;
             this.app = app;
+            this.config = config;
         }
 
         ExecutionStatus getExecutionStatus() {
@@ -91,26 +116,151 @@ public class SamzaExecutor implements SqlExecutor {
         }
     }
 
+    static class SamzaExecutionHandle<T> implements ExecutionHandle<T> {
+        final int execId;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        volatile State state;
+        volatile String error;
+        volatile SamzaExecution execution;
+
+        SamzaExecutionHandle(int execId, State state) {
+            this.execId = execId;
+            this.state = state;
+        }
+
+        void run(SamzaExecution execution) {
+            this.execution = execution;
+            state = State.RUNNING;
+        }
+
+        void fail(String error) {
+            this.error = error;
+            state = State.FINISHED;
+        }
+
+        @Override
+        public int getExecutionId() {
+            return execId;
+        }
+
+        @Override
+        public State getState() {
+            SamzaExecution exec = execution;
+            if (state == State.RUNNING && exec != null) {
+                ExecutionStatus status = exec.getExecutionStatus();
+                if (status == ExecutionStatus.SuccessfulFinish || status == ExecutionStatus.UnsuccessfulFinish) {
+                    return State.FINISHED;
+                }
+            }
+            return state;
+        }
+
+        @Override
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public CompletableFuture<T> getResult() {
+            return result;
+        }
+    }
+
     private static AtomicInteger m_execIdSeq = new AtomicInteger(0);
-    private Map<Integer, SamzaExecution> m_executions = new HashMap<>();
-    private static RandomAccessQueue<OutgoingMessageEnvelope> m_outputData =
-        new RandomAccessQueue<>(OutgoingMessageEnvelope.class, RANDOM_ACCESS_QUEUE_CAPACITY);
-    private String m_lastErrorMsg = "";
+    // Executions get added by the threads starting them
+    private Map<Integer, SamzaExecution> m_executions = new ConcurrentHashMap<>();
+    private final ExecutorService m_starter = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "sql-execution-start");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Result buffers keyed by execution id. The log system producers are created by Samza, so they reach
+    // the buffer of their execution through this static map using the job's processor id.
+    private static Map<Integer, TieredRowQueue> m_outputData = new ConcurrentHashMap<>();
+    // Decoders of the rows of queries into typed columns, keyed by execution id. Rows are decoded as they are read.
+    private static Map<Integer, ColumnarDecoder> m_decoders = new ConcurrentHashMap<>();
+    // Source latencies in nanoseconds of rows of queries, recorded by the log system producers
+    private static Map<Integer, LatencyHistogram> m_sourceLatencies = new ConcurrentHashMap<>();
+    // Rows of queries sampled for their source latency that had no timestamp field
+    private static Map<Integer, LongAdder> m_untimedRows = new ConcurrentHashMap<>();
+    // Spool files of queries, kept after they are closed so their row counts can still be read
+    private static Map<Integer, ResultSpooler> m_spoolers = new ConcurrentHashMap<>();
+    // Sketches of the column values of queries shown in the STATS view, fed the rows as they are captured
+    private static Map<Integer, ResultStatistics> m_statistics = new ConcurrentHashMap<>();
+    // When executions started and got their first row
+    private static Map<Integer, ExecutionTiming> m_timings = new ConcurrentHashMap<>();
+    // Set once by stop(), under m_stopLock, which starts register their executions under too
+    private volatile boolean m_stopped;
+    private final Object m_stopLock = new Object();
+    // Ids of executions still starting, and of those stopExecution asked to stop before they run
+    private final Set<Integer> m_starting = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> m_canceledStarts = ConcurrentHashMap.newKeySet();
+    private final PlannerResources m_plannerResources = new PlannerResources();
+    // Of the last synchronous call. Asynchronous executions have their errors on their handles.
+    private volatile String m_lastErrorMsg = "";
+    private final Config m_baseConfig;
+
+    public SamzaExecutor() {
+        this(BASE_CONFIG);
+    }
+
+    // Tests give settings of their own, like where schemas are read from, over BASE_CONFIG
+    SamzaExecutor(Config baseConfig) {
+        m_baseConfig = baseConfig;
+    }
 
     // -- implementation of SqlExecutor ------------------------------------------
 
     @Override
     public void start(ExecutionContext context) {
+        // In the background, so the shell takes commands right away
+        Thread warmUpThread = new Thread(() -> {
+            m_plannerResources.warmUp(m_baseConfig);
+            loadRunnerClasses();
+        }, "warm-up");
+        warmUpThread.setDaemon(true);
+        warmUpThread.start();
+    }
 
+    /**
+     * @return how many of RUNNER_CLASSES could be loaded. The others are only logged, a job start fails on
+     *         them with a better error.
+     */
+    static int loadRunnerClasses() {
+        long startNanos = System.nanoTime();
+        int loaded = 0;
+        for (String className : RUNNER_CLASSES) {
+            try {
+                Class.forName(className, true, SamzaExecutor.class.getClassLoader());
+                loaded++;
+            } catch (ClassNotFoundException | LinkageError e) {
+                LOG.debug("Unable to load " + className, e);
+            }
+        }
+        LOG.info("Runner classes loaded in {} ms", (System.nanoTime() - startNanos) / 1000000);
+        return loaded;
     }
 
     @Override
     public void stop(ExecutionContext context) {
+        synchronized (m_stopLock) {
+            m_stopped = true;
+        }
+        // Starts still in flight stop their jobs themselves, see addExecution
+        m_starter.shutdown();
         for (int execId : m_executions.keySet()) {
             stopExecution(context, execId);
             removeExecution(context, execId);
         }
+        m_outputData.values().forEach(TieredRowQueue::close);
         m_outputData.clear();
+        m_decoders.clear();
+        m_sourceLatencies.clear();
+        m_untimedRows.clear();
+        m_spoolers.values().forEach(ResultSpooler::close);
+        m_spoolers.clear();
+        m_statistics.clear();
+        m_timings.clear();
     }
 
     @Override
@@ -131,17 +281,10 @@ public class SamzaExecutor implements SqlExecutor {
     @Override
     public SqlSchema getTableScema(ExecutionContext context, String tableName) {
         m_lastErrorMsg = "";
-        int execId = m_execIdSeq.incrementAndGet();
-        Map<String, String> staticConfigs = fetchSamzaSqlConfig(execId);
-        Config samzaSqlConfig = new MapConfig(staticConfigs);
         SqlSchema sqlSchema = null;
         try {
-            SqlIOResolver ioResolver = SamzaSqlApplicationConfig.createIOResolver(samzaSqlConfig);
-            SqlIOConfig sourceInfo = ioResolver.fetchSourceInfo(tableName);
-            RelSchemaProvider schemaProvider =
-                initializePlugin("RelSchemaProvider", sourceInfo.getRelSchemaProviderName(), samzaSqlConfig,
-                    CFG_FMT_REL_SCHEMA_PROVIDER_DOMAIN,
-                    (o, c) -> ((RelSchemaProviderFactory) o).create(sourceInfo.getSystemStream(), c));
+            SqlIOConfig sourceInfo = m_plannerResources.getSourceConfig(tableName, m_baseConfig);
+            RelSchemaProvider schemaProvider = m_plannerResources.getSchemaProvider(tableName, m_baseConfig);
             AvroRelSchemaProvider avroSchemaProvider = (AvroRelSchemaProvider) schemaProvider;
             String schema = avroSchemaProvider.getSchema(sourceInfo.getSystemStream());
             sqlSchema = convertAvroToSamzaSqlSchema(schema);
@@ -154,54 +297,392 @@ public class SamzaExecutor implements SqlExecutor {
 
     @Override
     public QueryResult executeQuery(ExecutionContext context, String statement) {
-        m_lastErrorMsg = "";
-        m_outputData.clear();
+        return awaitResult(executeQueryAsync(context, statement));
+    }
 
-        int execId = m_execIdSeq.incrementAndGet();
-        Map<String, String> staticConfigs = fetchSamzaSqlConfig(execId);
+    @Override
+    public ExecutionHandle<QueryResult> executeQueryAsync(ExecutionContext context, String statement) {
+        SamzaExecutionHandle<QueryResult> handle =
+                new SamzaExecutionHandle<>(m_execIdSeq.incrementAndGet(), ExecutionHandle.State.PLANNING);
+        ExecutionTiming timing = new ExecutionTiming();
+        m_timings.put(handle.execId, timing);
+        startInBackground(handle, () -> startQuery(context, statement, handle, timing),
+                new QueryResult(handle.execId, null, false));
+        return handle;
+    }
+
+    private QueryResult startQuery(ExecutionContext context, String statement,
+            SamzaExecutionHandle<QueryResult> handle, ExecutionTiming timing) {
+        int execId = handle.execId;
         List<String> sqlStmts = formatSqlStmts(Collections.singletonList(statement));
-        staticConfigs.put(SamzaSqlApplicationConfig.CFG_SQL_STMTS_JSON, JsonUtil.toJson(sqlStmts));
+        Config config = fetchSamzaSqlConfig(execId, sqlStmts, context);
 
         SamzaSqlApplicationRunner runner;
         SamzaSqlApplication app;
+        SqlSchema resultSchema;
         try {
-            runner = new SamzaSqlApplicationRunner(true, new MapConfig(staticConfigs));
+            // Rows are decoded as they arrive, so the schema has to be known before the job runs. The query is
+            // still planned twice: SamzaSqlApplication plans it again when the job starts, as Samza has no way
+            // to be handed a plan. The cache only saves this first planning when a query is run again.
+            QueryPlan plan = m_plannerResources.plan(sqlStmts.get(0), config);
+            timing.recordPlan(plan.getParseNanos(), plan.getPlanNanos(), plan.isCached());
+            resultSchema = generateResultSchema(plan.getRoot());
+            createResultBuffers(execId, config, resultSchema, context);
+            handle.state = ExecutionHandle.State.STARTING;
+            ensureNotStopped(execId);
+            long jobStartNanos = System.nanoTime();
+            runner = new SamzaSqlApplicationRunner(true, config);
             app = new SamzaSqlApplication();
             runner.run(app);
+            timing.recordJobStart(System.nanoTime() - jobStartNanos);
+        } catch (IOException | RuntimeException ex) {
+            removeResultBuffers(execId);
+            handle.fail(ex.toString());
+            LOG.error(handle.error);
+            return new QueryResult(execId, null, false);
+        }
+        SamzaExecution execution = new SamzaExecution(runner, app, config);
+        if (!addExecution(execId, execution, handle)) {
+            return new QueryResult(execId, null, false);
+        }
+        handle.run(execution);
+        LOG.debug("Executing sql. Id ", execId);
+
+        return new QueryResult(execId, resultSchema, true);
+    }
+
+    // Whatever goes wrong, the handle's result completes so nobody waits on it forever
+    <T> void startInBackground(SamzaExecutionHandle<T> handle, Supplier<T> starter, T failedResult) {
+        m_starting.add(handle.execId);
+        try {
+            m_starter.execute(() -> {
+                try {
+                    handle.result.complete(starter.get());
+                } catch (Throwable t) {
+                    failStart(handle, t, failedResult);
+                } finally {
+                    m_starting.remove(handle.execId);
+                    m_canceledStarts.remove(handle.execId);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // The executor is stopped
+            m_starting.remove(handle.execId);
+            failStart(handle, ex, failedResult);
+        }
+    }
+
+    // For failures the starter didn't handle itself, including errors, which don't get to its cleanup
+    private static <T> void failStart(SamzaExecutionHandle<T> handle, Throwable t, T failedResult) {
+        removeResultBuffers(handle.execId);
+        handle.fail(t.toString());
+        LOG.error(handle.error, t);
+        handle.result.complete(failedResult);
+    }
+
+    void ensureNotStopped(int execId) {
+        if (m_stopped) {
+            throw new ExecutionException("The executor is stopped");
+        }
+        if (m_canceledStarts.contains(execId)) {
+            throw new ExecutionException("The execution was stopped while it was starting");
+        }
+    }
+
+    /**
+     * Keeps track of an execution whose job started, unless the executor or the execution was stopped
+     * meanwhile. Neither stop() nor stopExecution sees such an execution, so its job is killed here and the
+     * handle fails.
+     * @return false if the execution was stopped
+     */
+    private boolean addExecution(int execId, SamzaExecution execution, SamzaExecutionHandle<?> handle) {
+        boolean canceled;
+        synchronized (m_stopLock) {
+            canceled = m_canceledStarts.remove(execId);
+            if (!m_stopped && !canceled) {
+                m_executions.put(execId, execution);
+                return true;
+            }
+        }
+        try {
+            execution.runner.kill(execution.app);
+        } catch (SamzaException ex) {
+            LOG.warn("Unable to kill the job of execution " + execId, ex);
+        }
+        removeResultBuffers(execId);
+        handle.fail(canceled ? "The execution was stopped while it was starting"
+                : "The executor stopped while the execution was starting");
+        LOG.error(handle.error);
+        return false;
+    }
+
+    // An execution still starting is only marked, its start stops it before its job runs or right after
+    private boolean cancelStart(int execId) {
+        synchronized (m_stopLock) {
+            if (m_executions.containsKey(execId) || !m_starting.contains(execId)) {
+                return false;
+            }
+            m_canceledStarts.add(execId);
+            return true;
+        }
+    }
+
+    private <T> T awaitResult(ExecutionHandle<T> handle) {
+        T result = handle.getResult().join();
+        m_lastErrorMsg = handle.getError() == null ? "" : handle.getError();
+        return result;
+    }
+
+    @Override
+    public QueryExplanation explainQuery(ExecutionContext context, String statement) {
+        m_lastErrorMsg = "";
+
+        List<String> sqlStmts = formatSqlStmts(Collections.singletonList(statement));
+        Config config = new OverlayConfig(m_baseConfig, Collections.singletonMap(
+                SamzaSqlApplicationConfig.CFG_SQL_STMTS_JSON, JsonUtil.toJson(sqlStmts)));
+        try {
+            QueryPlan plan = m_plannerResources.replan(sqlStmts.get(0), config);
+            List<String> sources = new ArrayList<>();
+            for (String source : plan.getQueryInfo().getSources()) {
+                sources.add(describeStream(source, m_plannerResources.getSourceConfig(source, config)));
+            }
+            String sink = plan.getQueryInfo().getSink();
+            String sinkInfo = describeStream(sink, m_plannerResources.getIOResolver(config).fetchSinkInfo(sink));
+            StringBuilder planText = new StringBuilder();
+            explainRel(plan.getRoot().rel, "", planText);
+            PhaseTimings timings = new PhaseTimings(toMillis(plan.getParseNanos()), toMillis(plan.getPlanNanos()),
+                    false, -1);
+            return new QueryExplanation(planText.toString(), generateResultSchema(plan.getRoot()), sources,
+                    sinkInfo, timings);
         } catch (SamzaException ex) {
             m_lastErrorMsg = ex.toString();
             LOG.error(m_lastErrorMsg);
-            return new QueryResult(execId, null, false);
+            return null;
         }
-        m_executions.put(execId, new SamzaExecution(runner, app));
-        LOG.debug("Executing sql. Id ", execId);
+    }
+
+    private static String describeStream(String name, SqlIOConfig ioConfig) {
+        return String.format("%s: stream %s of system %s, converted by %s, schema from %s", name,
+                ioConfig.getSystemStream().getStream(), ioConfig.getSystemStream().getSystem(),
+                ioConfig.getSamzaRelConverterName(), ioConfig.getRelSchemaProviderName());
+    }
+
+    // An operator per line, with its attributes as Calcite explains them and the type of its rows
+    private static void explainRel(RelNode rel, String indent, StringBuilder planText) {
+        String explained = RelOptUtil.toString(rel, SqlExplainLevel.EXPPLAN_ATTRIBUTES);
+        // Calcite explains the inputs too, on the following lines
+        planText.append(indent).append(explained.split("\\R", 2)[0].trim()).append('\n');
+        planText.append(indent).append("    rows: ").append(rel.getRowType().getFullTypeString()).append('\n');
+        for (RelNode input : rel.getInputs()) {
+            explainRel(input, indent + "  ", planText);
+        }
+    }
 
-        return new QueryResult(execId, generateResultSchema(new MapConfig(staticConfigs)), true);
+    @Override
+    public int getRowCount(int execId) {
+        TieredRowQueue outputData = m_outputData.get(execId);
+        return outputData == null ? 0 : outputData.getSize();
     }
 
     @Override
-    public int getRowCount() {
-        return m_outputData.getSize();
+    public long getProducedRowCount(int execId) {
+        TieredRowQueue outputData = m_outputData.get(execId);
+        if (outputData != null) {
+            return outputData.getOfferedRows();
+        }
+        // Queries in the STATS view have no buffer
+        ResultStatistics statistics = m_statistics.get(execId);
+        return statistics == null ? 0 : statistics.getRowCount();
     }
 
     @Override
-    public List<String[]> retrieveQueryResult(ExecutionContext context, int startRow, int endRow) {
+    public QueryLatency getQueryLatency(int execId) {
+        TieredRowQueue outputData = m_outputData.get(execId);
+        LatencyHistogram sourceLatencies = m_sourceLatencies.get(execId);
+        if (outputData == null && sourceLatencies == null) {
+            return null;
+        }
+        ExecutionTiming timing = m_timings.get(execId);
+        LongAdder untimedRows = m_untimedRows.get(execId);
+        return new QueryLatency(
+                timing == null ? -1 : toMillis(timing.getTimeToFirstRowNanos()),
+                sourceLatencies == null ? -1 : toMillis(sourceLatencies.getPercentile(50)),
+                sourceLatencies == null ? -1 : toMillis(sourceLatencies.getPercentile(99)),
+                outputData == null ? -1 : toMillis(outputData.getWaitTimes().getPercentile(50)),
+                outputData == null ? -1 : toMillis(outputData.getWaitTimes().getPercentile(99)),
+                untimedRows != null && untimedRows.sum() > 0
+                        && (sourceLatencies == null || sourceLatencies.getCount() == 0));
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos < 0 ? -1 : nanos / 1e6;
+    }
+
+    @Override
+    public long getDroppedRowCount(int execId) {
+        TieredRowQueue outputData = m_outputData.get(execId);
+        return outputData == null ? 0 : outputData.getDroppedRows();
+    }
+
+    @Override
+    public long getBlockedTimeMs(int execId) {
+        TieredRowQueue outputData = m_outputData.get(execId);
+        return outputData == null ? 0 : outputData.getBlockedTimeMs();
+    }
+
+    @Override
+    public long getSpooledRowCount(int execId) {
+        ResultSpooler spooler = m_spoolers.get(execId);
+        return spooler == null ? -1 : spooler.getRowsWritten();
+    }
+
+    @Override
+    public long getSpoolCoercedRowCount(int execId) {
+        ResultSpooler spooler = m_spoolers.get(execId);
+        return spooler == null ? 0 : spooler.getCoercedRowCount();
+    }
+
+    @Override
+    public String getSpoolError(int execId) {
+        ResultSpooler spooler = m_spoolers.get(execId);
+        return spooler == null || spooler.getError() == null ? null : spooler.getError().toString();
+    }
+
+    @Override
+    public boolean spoolQueryResult(ExecutionContext context, int execId) {
+        m_lastErrorMsg = "";
+        SamzaExecution exec = m_executions.get(execId);
+        ColumnarDecoder decoder = m_decoders.get(execId);
+        if (exec == null || decoder == null || exec.getExecutionStatus() != ExecutionStatus.Running) {
+            m_lastErrorMsg = "Execution " + execId + " is not a running query";
+            return false;
+        }
+        if (context == null || context.getSpoolFile() == null) {
+            m_lastErrorMsg = "No spool file given";
+            return false;
+        }
+        ResultSpooler spooler = m_spoolers.get(execId);
+        if (spooler != null) {
+            m_lastErrorMsg = "Execution " + execId + " is spooled to " + spooler.getFile() + " already";
+            return false;
+        }
+        try {
+            spooler = new ResultSpooler(context.getSpoolFile(), context.getSpoolFormat(), context.isSpoolCompressed(),
+                    decoder.getSchema());
+        } catch (IOException e) {
+            m_lastErrorMsg = e.toString();
+            return false;
+        }
+        if (m_spoolers.putIfAbsent(execId, spooler) != null) {
+            spooler.close();
+            m_lastErrorMsg = "Execution " + execId + " is spooled already";
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean awaitRows(int execId, long timeoutMs) {
+        TieredRowQueue outputData = m_outputData.get(execId);
+        if (outputData == null) {
+            // Nothing will ever arrive, but callers still expect to wait rather than spin
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(timeoutMs));
+            return false;
+        }
+        return outputData.awaitRows(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public List<String[]> retrieveQueryResult(ExecutionContext context, int execId, int startRow, int endRow) {
         List<String[]> results = new ArrayList<>();
-        for (OutgoingMessageEnvelope row : m_outputData.get(startRow, endRow)) {
-            results.add(getFormattedRow(context, row));
+        TieredRowQueue outputData = m_outputData.get(execId);
+        if (outputData != null) {
+            for (byte[] row : outputData.get(startRow, endRow)) {
+                results.add(getFormattedRow(context, row));
+            }
         }
         return results;
     }
 
     @Override
-    public List<String[]> consumeQueryResult(ExecutionContext context, int startRow, int endRow) {
+    public List<String[]> consumeQueryResult(ExecutionContext context, int execId, int startRow, int endRow) {
         List<String[]> results = new ArrayList<>();
-        for (OutgoingMessageEnvelope row : m_outputData.consume(startRow, endRow)) {
-            results.add(getFormattedRow(context, row));
+        TieredRowQueue outputData = m_outputData.get(execId);
+        if (outputData != null) {
+            for (byte[] row : outputData.consume(startRow, endRow)) {
+                results.add(getFormattedRow(context, row));
+            }
         }
         return results;
     }
 
+    @Override
+    public List<QueryResultRow> consumeQueryResultRows(ExecutionContext context, int execId, int startRow,
+        int endRow) {
+        List<QueryResultRow> results = new ArrayList<>();
+        TieredRowQueue outputData = m_outputData.get(execId);
+        if (outputData != null) {
+            // Sized for the rows there are now, rows added in the meantime get no capture time
+            long[] captureNanos = new long[Math.max(Math.min(endRow - Math.max(startRow, 0) + 1,
+                    outputData.getSize()), 0)];
+            List<byte[]> rows = outputData.consume(startRow, endRow, captureNanos);
+            for (int i = 0; i < rows.size(); i++) {
+                results.add(new CapturedRow(context, rows.get(i), i < captureNanos.length ? captureNanos[i] : -1));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public List<QueryResultRow> consumeQueryResultSample(ExecutionContext context, int execId, int endRow, int step) {
+        List<QueryResultRow> results = new ArrayList<>();
+        TieredRowQueue outputData = m_outputData.get(execId);
+        if (outputData != null) {
+            long[] captureNanos = new long[Math.max(Math.min(endRow + 1, outputData.getSize()), 0)
+                    / Math.max(step, 1) + 1];
+            List<byte[]> rows = outputData.consumeSample(endRow, step, captureNanos);
+            for (int i = 0; i < rows.size(); i++) {
+                results.add(new CapturedRow(context, rows.get(i), i < captureNanos.length ? captureNanos[i] : -1));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public ColumnBatch retrieveQueryResultColumns(ExecutionContext context, int execId, int startRow, int endRow) {
+        TieredRowQueue outputData = m_outputData.get(execId);
+        ColumnarDecoder decoder = m_decoders.get(execId);
+        return outputData == null || decoder == null ? null : decoder.decode(outputData.get(startRow, endRow));
+    }
+
+    @Override
+    public ColumnBatch consumeQueryResultColumns(ExecutionContext context, int execId, int startRow, int endRow) {
+        TieredRowQueue outputData = m_outputData.get(execId);
+        ColumnarDecoder decoder = m_decoders.get(execId);
+        return outputData == null || decoder == null ? null : decoder.decode(outputData.consume(startRow, endRow));
+    }
+
+    @Override
+    public QueryResultFilter filterQueryResult(ExecutionContext context, int execId, Pattern pattern) {
+        TieredRowQueue outputData = m_outputData.get(execId);
+        ColumnarDecoder decoder = m_decoders.get(execId);
+        return outputData == null || decoder == null ? null : decoder.filter(outputData, pattern);
+    }
+
+    @Override
+    public QueryResultRanking rankQueryResult(ExecutionContext context, int execId, int colIdx, int limit,
+            boolean ascending) {
+        TieredRowQueue outputData = m_outputData.get(execId);
+        ColumnarDecoder decoder = m_decoders.get(execId);
+        return outputData == null || decoder == null ? null : decoder.rank(outputData, colIdx, limit, ascending);
+    }
+
+    @Override
+    public List<ColumnStatistics> getColumnStatistics(int execId) {
+        ResultStatistics statistics = m_statistics.get(execId);
+        return statistics == null ? null : statistics.getColumnStatistics();
+    }
+
     @Override
     public NonQueryResult executeNonQuery(ExecutionContext context, File sqlFile) {
         m_lastErrorMsg = "";
@@ -226,24 +707,47 @@ public class SamzaExecutor implements SqlExecutor {
 
     @Override
     public NonQueryResult executeNonQuery(ExecutionContext context, List<String> statement) {
-        m_lastErrorMsg = "";
+        return awaitResult(executeNonQueryAsync(context, statement));
+    }
+
+    @Override
+    public ExecutionHandle<NonQueryResult> executeNonQueryAsync(ExecutionContext context, List<String> statement) {
+        // The job plans the statements itself
+        SamzaExecutionHandle<NonQueryResult> handle =
+                new SamzaExecutionHandle<>(m_execIdSeq.incrementAndGet(), ExecutionHandle.State.STARTING);
+        ExecutionTiming timing = new ExecutionTiming();
+        m_timings.put(handle.execId, timing);
+        startInBackground(handle, () -> startNonQuery(context, statement, handle, timing),
+                new NonQueryResult(handle.execId, false));
+        return handle;
+    }
 
-        int execId = m_execIdSeq.incrementAndGet();
-        Map<String, String> staticConfigs = fetchSamzaSqlConfig(execId);
-        staticConfigs.put(SamzaSqlApplicationConfig.CFG_SQL_STMTS_JSON, JsonUtil.toJson(formatSqlStmts(statement)));
+    private NonQueryResult startNonQuery(ExecutionContext context, List<String> statement,
+            SamzaExecutionHandle<NonQueryResult> handle, ExecutionTiming timing) {
+        int execId = handle.execId;
+        Config config = fetchSamzaSqlConfig(execId, formatSqlStmts(statement), context);
 
         SamzaSqlApplicationRunner runner;
         SamzaSqlApplication app;
         try {
-            runner = new SamzaSqlApplicationRunner(true, new MapConfig(staticConfigs));
+            createResultBuffers(execId, config, null, context);
+            ensureNotStopped(execId);
+            long jobStartNanos = System.nanoTime();
+            runner = new SamzaSqlApplicationRunner(true, config);
             app = new SamzaSqlApplication();
             runner.run(app);
-        } catch (SamzaException ex) {
-            m_lastErrorMsg = ex.toString();
-            LOG.error(m_lastErrorMsg);
+            timing.recordJobStart(System.nanoTime() - jobStartNanos);
+        } catch (IOException | RuntimeException ex) {
+            removeResultBuffers(execId);
+            handle.fail(ex.toString());
+            LOG.error(handle.error);
+            return new NonQueryResult(execId, false);
+        }
+        SamzaExecution execution = new SamzaExecution(runner, app, config);
+        if (!addExecution(execId, execution, handle)) {
             return new NonQueryResult(execId, false);
         }
-        m_executions.put(execId, new SamzaExecution(runner, app));
+        handle.run(execution);
         LOG.debug("Executing sql. Id ", execId);
 
         return new NonQueryResult(execId, true);
@@ -253,6 +757,10 @@ public class SamzaExecutor implements SqlExecutor {
     public boolean stopExecution(ExecutionContext context, int exeId) {
         m_lastErrorMsg = "";
 
+        if (cancelStart(exeId)) {
+            LOG.debug("Stopping execution ", exeId, " before it runs");
+            return true;
+        }
         SamzaExecution exec = m_executions.get(exeId);
         if(exec != null) {
             LOG.debug("Stopping execution ", exeId);
@@ -271,6 +779,11 @@ public class SamzaExecutor implements SqlExecutor {
                 e.printStackTrace();
             }
 
+            // Whatever the job produced before it stopped is in the file once this returns
+            ResultSpooler spooler = m_spoolers.get(exeId);
+            if (spooler != null) {
+                spooler.close();
+            }
             return true;
         } else {
             m_lastErrorMsg = "Trying to stop a non-existing SQL execution " + exeId;
@@ -291,6 +804,7 @@ public class SamzaExecutor implements SqlExecutor {
                 return false;
             }
             m_executions.remove(exeId);
+            removeResultBuffers(exeId);
             LOG.debug("Stopping execution ", exeId);
             return true;
         } else {
@@ -308,6 +822,18 @@ public class SamzaExecutor implements SqlExecutor {
         return m_executions.get(execId).getExecutionStatus();
     }
 
+    @Override
+    public PhaseTimings getPhaseTimings(int execId) {
+        ExecutionTiming timing = m_timings.get(execId);
+        return timing == null ? null : timing.getPhaseTimings();
+    }
+
+    @Override
+    public Map<String, String> getExecutionConfig(int execId) {
+        SamzaExecution exec = m_executions.get(execId);
+        return exec == null ? null : exec.config;
+    }
+
     @Override
     public String getErrorMsg() {
         return m_lastErrorMsg;
@@ -330,8 +856,107 @@ public class SamzaExecutor implements SqlExecutor {
         return udfs;
     }
 
-    static void saveOutputMessage(OutgoingMessageEnvelope messageEnvelope) {
-        m_outputData.add(messageEnvelope);
+    static void saveOutputMessage(int execId, OutgoingMessageEnvelope messageEnvelope) {
+        recordRowsArrived(execId);
+        TieredRowQueue outputData = m_outputData.get(execId);
+        if (outputData != null) {
+            outputData.add((byte[]) messageEnvelope.getMessage());
+        }
+        addStatistics(execId, Collections.singletonList((byte[]) messageEnvelope.getMessage()));
+        ResultSpooler spooler = m_spoolers.get(execId);
+        if (spooler != null) {
+            spooler.addAll(Collections.singletonList((byte[]) messageEnvelope.getMessage()));
+        }
+    }
+
+    static void recordSourceLatency(int execId, long latencyNanos) {
+        LatencyHistogram sourceLatencies = m_sourceLatencies.get(execId);
+        if (sourceLatencies != null) {
+            sourceLatencies.record(latencyNanos);
+        }
+    }
+
+    static void recordMissingTimestamp(int execId) {
+        LongAdder untimedRows = m_untimedRows.get(execId);
+        if (untimedRows != null) {
+            untimedRows.increment();
+        }
+    }
+
+    static void saveOutputMessages(int execId, List<byte[]> messages) {
+        recordRowsArrived(execId);
+        TieredRowQueue outputData = m_outputData.get(execId);
+        if (outputData != null) {
+            outputData.addAll(messages);
+        }
+        addStatistics(execId, messages);
+        ResultSpooler spooler = m_spoolers.get(execId);
+        if (spooler != null) {
+            spooler.addAll(messages);
+        }
+    }
+
+    // Rows are decoded by the thread capturing them, outside of any lock
+    private static void addStatistics(int execId, List<byte[]> rows) {
+        ResultStatistics statistics = m_statistics.get(execId);
+        ColumnarDecoder decoder = m_decoders.get(execId);
+        if (statistics != null && decoder != null) {
+            statistics.addAll(decoder.decode(rows));
+        }
+    }
+
+    private static void recordRowsArrived(int execId) {
+        ExecutionTiming timing = m_timings.get(execId);
+        if (timing != null) {
+            timing.recordRowsArrived();
+        }
+    }
+
+    /**
+     * Creates the buffers the log system producers save the rows of an execution to. Queries, which have a
+     * result schema, also get their rows measured and spooled, and a decoder that reads their rows from the
+     * buffer into typed columns. The rows of queries shown in the STATS view are decoded as they are captured
+     * instead, to feed their statistics, and are not buffered since nothing reads them. The spool file is ready
+     * before the job runs, so it gets every row.
+     */
+    static void createResultBuffers(int execId, Config config, SqlSchema resultSchema, ExecutionContext context)
+            throws IOException {
+        boolean statsOnly = resultSchema != null && context != null
+                && context.getResultView() == ExecutionContext.ResultView.STATS;
+        if (!statsOnly) {
+            m_outputData.put(execId, CliLoggingSystemFactory.createResultBuffer(SAMZA_SYSTEM_LOG, config,
+                    RANDOM_ACCESS_QUEUE_CAPACITY));
+        }
+        if (resultSchema == null) {
+            return;
+        }
+        m_decoders.put(execId, new ColumnarDecoder(resultSchema));
+        if (statsOnly) {
+            m_statistics.put(execId, new ResultStatistics(resultSchema));
+        }
+        m_sourceLatencies.put(execId, new LatencyHistogram());
+        m_untimedRows.put(execId, new LongAdder());
+        if (context != null && context.getSpoolFile() != null) {
+            m_spoolers.put(execId, new ResultSpooler(context.getSpoolFile(), context.getSpoolFormat(),
+                    context.isSpoolCompressed(), resultSchema));
+        }
+    }
+
+    // Closes whatever createResultBuffers got to create, and forgets the timing of the execution
+    static void removeResultBuffers(int execId) {
+        TieredRowQueue outputData = m_outputData.remove(execId);
+        if (outputData != null) {
+            outputData.close();
+        }
+        m_decoders.remove(execId);
+        m_sourceLatencies.remove(execId);
+        m_untimedRows.remove(execId);
+        m_statistics.remove(execId);
+        m_timings.remove(execId);
+        ResultSpooler spooler = m_spoolers.remove(execId);
+        if (spooler != null) {
+            spooler.close();
+        }
     }
 
     private String getColumnTypeName(SamzaSqlFieldType fieldType) {
@@ -407,18 +1032,6 @@ public class SamzaExecutor implements SqlExecutor {
         }
     }
 
-    private static <T> T initializePlugin(String pluginName, String plugin, Config staticConfig,
-        String pluginDomainFormat, BiFunction<Object, Config, T> factoryInvoker) {
-        String pluginDomain = String.format(pluginDomainFormat, plugin);
-        Config pluginConfig = staticConfig.subset(pluginDomain);
-        String factoryName = pluginConfig.getOrDefault(CFG_FACTORY, "");
-        Validate.notEmpty(factoryName, String.format("Factory is not set for %s", plugin));
-        Object factory = ReflectionUtils.createInstance(factoryName);
-        Validate.notNull(factory, String.format("Factory creation failed for %s", plugin));
-        LOG.info("Instantiating {} using factory {} with props {}", pluginName, factoryName, pluginConfig);
-        return factoryInvoker.apply(factory, pluginConfig);
-    }
-
     private List<String> formatSqlStmts(List<String> statements) {
         return statements.stream().map(sql -> {
             if (!sql.toLowerCase().startsWith("insert")) {
@@ -445,27 +1058,79 @@ public class SamzaExecutor implements SqlExecutor {
         }
     }
 
-    private SqlSchema generateResultSchema(Config config) {
-        SamzaSqlApplicationConfig sqlConfig = new SamzaSqlApplicationConfig(config);
-        QueryPlanner planner = new QueryPlanner(
-            sqlConfig.getRelSchemaProviders(),
-            sqlConfig.getInputSystemStreamConfigBySource(),
-            sqlConfig.getUdfMetadata());
-        RelRoot relRoot = planner.plan(sqlConfig.getQueryInfo().get(0).getSelectQuery());
-
+    private SqlSchema generateResultSchema(RelRoot relRoot) {
         List<String> colNames = new ArrayList<>();
         List<String> colTypeNames = new ArrayList<>();
         for (RelDataTypeField dataTypeField : relRoot.validatedRowType.getFieldList()) {
             colNames.add(dataTypeField.getName());
-            // TODO: colTypeNames.add(dataTypeField.getType().toString());
-            colTypeNames.add(null);
+            colTypeNames.add(getFieldTypeName(dataTypeField.getType()));
         }
         return new SqlSchema(colNames, colTypeNames);
     }
 
-    private String[] getFormattedRow(ExecutionContext context, OutgoingMessageEnvelope row) {
+    /**
+     * Maps a column type of the query plan to the name of a SamzaSqlFieldType.TypeName, which is what result
+     * rows get decoded as.
+     */
+    private static String getFieldTypeName(RelDataType dataType) {
+        SamzaSqlFieldType.TypeName typeName;
+        switch (dataType.getSqlTypeName()) {
+            case TINYINT:
+                typeName = SamzaSqlFieldType.TypeName.BYTE;
+                break;
+            case SMALLINT:
+                typeName = SamzaSqlFieldType.TypeName.INT16;
+                break;
+            case INTEGER:
+                typeName = SamzaSqlFieldType.TypeName.INT32;
+                break;
+            case BIGINT:
+                typeName = SamzaSqlFieldType.TypeName.INT64;
+                break;
+            case DECIMAL:
+                typeName = SamzaSqlFieldType.TypeName.DECIMAL;
+                break;
+            case FLOAT:
+            case REAL:
+                typeName = SamzaSqlFieldType.TypeName.FLOAT;
+                break;
+            case DOUBLE:
+                typeName = SamzaSqlFieldType.TypeName.DOUBLE;
+                break;
+            case BOOLEAN:
+                typeName = SamzaSqlFieldType.TypeName.BOOLEAN;
+                break;
+            case CHAR:
+            case VARCHAR:
+                typeName = SamzaSqlFieldType.TypeName.STRING;
+                break;
+            case BINARY:
+            case VARBINARY:
+                typeName = SamzaSqlFieldType.TypeName.BYTES;
+                break;
+            case DATE:
+            case TIME:
+            case TIMESTAMP:
+                typeName = SamzaSqlFieldType.TypeName.DATETIME;
+                break;
+            case ARRAY:
+                typeName = SamzaSqlFieldType.TypeName.ARRAY;
+                break;
+            case MAP:
+                typeName = SamzaSqlFieldType.TypeName.MAP;
+                break;
+            case ROW:
+                typeName = SamzaSqlFieldType.TypeName.ROW;
+                break;
+            default:
+                typeName = SamzaSqlFieldType.TypeName.ANY;
+        }
+        return typeName.toString();
+    }
+
+    private String[] getFormattedRow(ExecutionContext context, byte[] row) {
         String[] formattedRow = new String[1];
-        if (context == null || !context.getMessageFormat().equals(ExecutionContext.MessageFormat.COMPACT)){
+        if (!isCompact(context)){
             formattedRow[0] = getPrettyFormat(row);
         } else {
             formattedRow[0] = getCompressedFormat(row);
@@ -473,11 +1138,57 @@ public class SamzaExecutor implements SqlExecutor {
         return formattedRow;
     }
 
-    private static Map<String, String> fetchSamzaSqlConfig(int execId) {
+    private static boolean isCompact(ExecutionContext context) {
+        return context != null && context.getMessageFormat().equals(ExecutionContext.MessageFormat.COMPACT);
+    }
+
+    // COMPACT rows are shown as they are, so views can copy their bytes instead of formatting them
+    private class CapturedRow implements QueryResultRow {
+        private final ExecutionContext m_context;
+        private final byte[] m_row;
+        private final long m_captureNanos;
+
+        CapturedRow(ExecutionContext context, byte[] row, long captureNanos) {
+            m_context = context;
+            m_row = row;
+            m_captureNanos = captureNanos;
+        }
+
+        @Override
+        public String[] format() {
+            return isCompact(m_context) ? new String[]{getCompressedFormat(m_row)} : getFormattedRow(m_context, m_row);
+        }
+
+        @Override
+        public byte[] getUtf8Payload() {
+            return isCompact(m_context) ? m_row : null;
+        }
+
+        @Override
+        public long getCaptureNanos() {
+            return m_captureNanos;
+        }
+    }
+
+    // The config of an execution, which is only its own settings over the base config
+    private Config fetchSamzaSqlConfig(int execId, List<String> sqlStmts, ExecutionContext context) {
+        HashMap<String, String> execConfigs = new HashMap<>();
+        execConfigs.put(JobConfig.JOB_NAME(), "sql-job-" + execId);
+        execConfigs.put(JobConfig.PROCESSOR_ID(), String.valueOf(execId));
+        execConfigs.put(SamzaSqlApplicationConfig.CFG_SQL_STMTS_JSON, JsonUtil.toJson(sqlStmts));
+        // Without a context the result buffer has its default overflow policy
+        if (context != null) {
+            String logSystemConfigPrefix =
+                    String.format(ConfigBasedIOResolverFactory.CFG_FMT_SAMZA_PREFIX, SAMZA_SYSTEM_LOG);
+            execConfigs.put(logSystemConfigPrefix + CliLoggingSystemFactory.CFG_OVERFLOW_POLICY,
+                    context.getOverflowPolicy().name());
+        }
+        return new OverlayConfig(m_baseConfig, execConfigs);
+    }
+
+    static Config createBaseConfig() {
         HashMap<String, String> staticConfigs = new HashMap<>();
 
-        staticConfigs.put(JobConfig.JOB_NAME(), "sql-job-" + execId);
-        staticConfigs.put(JobConfig.PROCESSOR_ID(), String.valueOf(execId));
         staticConfigs.put(JobCoordinatorConfig.JOB_COORDINATOR_FACTORY, PassthroughJobCoordinatorFactory.class.getName());
         staticConfigs.put(TaskConfig.GROUPER_FACTORY(), SingleContainerGrouperFactory.class.getName());
 
@@ -541,6 +1252,6 @@ public class SamzaExecutor implements SqlExecutor {
                 configAvroRelSchemaProviderDomain + FileSystemAvroRelSchemaProviderFactory.CFG_SCHEMA_DIR,
             "/tmp/schemas/");
 
-        return staticConfigs;
+        return new MapConfig(staticConfigs);
     }
 }
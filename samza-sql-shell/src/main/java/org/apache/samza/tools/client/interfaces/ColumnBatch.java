@@ -0,0 +1,39 @@
+package org.apache.samza.tools.client.interfaces;
+
+
+/**
+ * Rows of a query result decoded into typed columns. Rows start at 0 within the batch.
+ */
+public interface ColumnBatch {
+    public SqlSchema getSchema();
+
+    public int getRowCount();
+
+    public Column getColumn(int colIdx);
+
+    /**
+     * Values of one column. Numeric getters convert between numeric types; reading a value of a
+     * column that can't be converted throws UnsupportedOperationException.
+     */
+    public interface Column {
+        /**
+         * Name of the SamzaSqlFieldType.TypeName the column was decoded as.
+         */
+        public String getTypeName();
+
+        public boolean isNull(int row);
+
+        public int getInt(int row);
+
+        public long getLong(int row);
+
+        public double getDouble(int row);
+
+        public boolean getBoolean(int row);
+
+        /**
+         * @return the value as shown to the user, JSON text for nested values, or null
+         */
+        public String getString(int row);
+    }
+}
@@ -0,0 +1,110 @@
+package org.apache.samza.tools.client.interfaces;
+
+import java.util.List;
+
+
+/**
+ * Approximate statistics of the values of a query result column over all the rows produced so far, see
+ * SqlExecutor.getColumnStatistics. Quantiles, min and max are NaN for columns that aren't numeric.
+ */
+public class ColumnStatistics {
+    public static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private String m_name;
+    private String m_typeName;
+    private long m_count;
+    private long m_nullCount;
+    private long m_distinctCount;
+    private double m_min;
+    private double m_max;
+    private double[] m_quantiles;
+    private List<FrequentValue> m_frequentValues;
+
+    public ColumnStatistics(String name, String typeName, long count, long nullCount, long distinctCount,
+            double min, double max, double[] quantiles, List<FrequentValue> frequentValues) {
+        m_name = name;
+        m_typeName = typeName;
+        m_count = count;
+        m_nullCount = nullCount;
+        m_distinctCount = distinctCount;
+        m_min = min;
+        m_max = max;
+        m_quantiles = quantiles;
+        m_frequentValues = frequentValues;
+    }
+
+    public String getName() {
+        return m_name;
+    }
+
+    public String getTypeName() {
+        return m_typeName;
+    }
+
+    /**
+     * @return how many rows have a value in the column
+     */
+    public long getCount() {
+        return m_count;
+    }
+
+    public long getNullCount() {
+        return m_nullCount;
+    }
+
+    /**
+     * @return estimated number of distinct values, within a couple of percent
+     */
+    public long getDistinctCount() {
+        return m_distinctCount;
+    }
+
+    public double getMin() {
+        return m_min;
+    }
+
+    public double getMax() {
+        return m_max;
+    }
+
+    /**
+     * @return the values at QUANTILES, each within 1% of the exact one
+     */
+    public double[] getQuantiles() {
+        return m_quantiles;
+    }
+
+    /**
+     * @return the most frequent values, most frequent first. Nested values aren't counted.
+     */
+    public List<FrequentValue> getFrequentValues() {
+        return m_frequentValues;
+    }
+
+    public static class FrequentValue {
+        private String m_value;
+        private long m_count;
+        private long m_error;
+
+        public FrequentValue(String value, long count, long error) {
+            m_value = value;
+            m_count = count;
+            m_error = error;
+        }
+
+        public String getValue() {
+            return m_value;
+        }
+
+        /**
+         * @return the count, over by at most getError
+         */
+        public long getCount() {
+            return m_count;
+        }
+
+        public long getError() {
+            return m_error;
+        }
+    }
+}
@@ -1,7 +1,15 @@
 package org.apache.samza.tools.client.interfaces;
 
+import java.io.File;
+
 public class ExecutionContext {
     private MessageFormat m_messageFormat;
+    private OverflowPolicy m_overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private RenderMode m_renderMode = RenderMode.LATEST;
+    private ResultView m_resultView = ResultView.LOG;
+    private File m_spoolFile;
+    private SpoolFormat m_spoolFormat = SpoolFormat.JSONL;
+    private boolean m_spoolCompressed;
 
     public void setMessageFormat(MessageFormat messageFormat) {
         m_messageFormat = messageFormat;
@@ -11,8 +19,91 @@ public class ExecutionContext {
         return m_messageFormat;
     }
 
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        m_overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * What the result buffer of a new execution does once it's full.
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return m_overflowPolicy;
+    }
+
+    public void setRenderMode(RenderMode renderMode) {
+        m_renderMode = renderMode;
+    }
+
+    public RenderMode getRenderMode() {
+        return m_renderMode;
+    }
+
+    public void setResultView(ResultView resultView) {
+        m_resultView = resultView;
+    }
+
+    public ResultView getResultView() {
+        return m_resultView;
+    }
+
+    /**
+     * Has the rows of a new query written to the file as well, whether or not anything shows them.
+     * @param compressed gzip JSONL and CSV files, deflate the blocks of AVRO ones
+     */
+    public void setSpool(File file, SpoolFormat format, boolean compressed) {
+        m_spoolFile = file;
+        m_spoolFormat = format;
+        m_spoolCompressed = compressed;
+    }
+
+    /**
+     * @return null if rows are not spooled
+     */
+    public File getSpoolFile() {
+        return m_spoolFile;
+    }
+
+    public SpoolFormat getSpoolFormat() {
+        return m_spoolFormat;
+    }
+
+    public boolean isSpoolCompressed() {
+        return m_spoolCompressed;
+    }
+
     public static enum MessageFormat {
         PRETTY,
         COMPACT
     }
+
+    /**
+     * Which rows the log view draws when they arrive faster than it can show them.
+     */
+    public static enum RenderMode {
+        // The newest rows that fit on the screen
+        LATEST,
+        // Every N-th row, with N following the input rate
+        SAMPLE
+    }
+
+    /**
+     * How the shell shows the results of a query.
+     */
+    public static enum ResultView {
+        // Rows scroll by as they arrive and are gone once shown
+        LOG,
+        // Columns of the rows kept, paged through
+        TABLE,
+        // Statistics of the values of each column
+        STATS
+    }
+
+    public static enum SpoolFormat {
+        // A JSON object per line
+        JSONL,
+        // A header line and a line of comma separated values per row
+        CSV,
+        // Avro object container file
+        AVRO
+    }
 }
@@ -0,0 +1,35 @@
+package org.apache.samza.tools.client.interfaces;
+
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * An execution being started in the background, see SqlExecutor.executeQueryAsync. Each handle has its own
+ * error, so executions started concurrently don't overwrite each other's like with getErrorMsg.
+ */
+public interface ExecutionHandle<T> {
+
+    enum State {
+        // Only queries are planned before their job starts
+        PLANNING,
+        STARTING,
+        RUNNING,
+        // Whether the job ended or never started, see getError
+        FINISHED
+    }
+
+    int getExecutionId();
+
+    State getState();
+
+    /**
+     * @return why the execution failed to start, null unless it did
+     */
+    String getError();
+
+    /**
+     * @return completes once the job is running or failed to start, never exceptionally. A result that didn't
+     *         succeed comes with getError.
+     */
+    CompletableFuture<T> getResult();
+}
@@ -0,0 +1,14 @@
+package org.apache.samza.tools.client.interfaces;
+
+
+/**
+ * What a result buffer does with a new row when it already holds as many rows as it may.
+ */
+public enum OverflowPolicy {
+    // Make room by dropping the oldest row
+    DROP_OLDEST,
+    // Drop the new row
+    DROP_NEWEST,
+    // Wait for the reader to make room, up to a timeout, then drop the new row
+    BLOCK
+}
@@ -0,0 +1,41 @@
+package org.apache.samza.tools.client.interfaces;
+
+
+/**
+ * How long the phases of starting an execution took, in milliseconds, -1 for phases it didn't go through.
+ * Parsing extracts the sources, the sink and the SELECT of the statement, planning validates the SELECT
+ * and converts it to relational algebra, and job start runs the Samza job. A plan found in the cache takes
+ * no parsing or planning.
+ *
+ * There is no validate phase of its own: Samza's QueryPlanner validates and converts in a single call, so
+ * the time of validation is part of getPlanMs.
+ */
+public class PhaseTimings {
+    private double m_parseMs;
+    private double m_planMs;
+    private boolean m_planCached;
+    private double m_jobStartMs;
+
+    public PhaseTimings(double parseMs, double planMs, boolean planCached, double jobStartMs) {
+        m_parseMs = parseMs;
+        m_planMs = planMs;
+        m_planCached = planCached;
+        m_jobStartMs = jobStartMs;
+    }
+
+    public double getParseMs() {
+        return m_parseMs;
+    }
+
+    public double getPlanMs() {
+        return m_planMs;
+    }
+
+    public boolean isPlanCached() {
+        return m_planCached;
+    }
+
+    public double getJobStartMs() {
+        return m_jobStartMs;
+    }
+}
@@ -0,0 +1,49 @@
+package org.apache.samza.tools.client.interfaces;
+
+import java.util.List;
+
+
+/**
+ * How a statement would execute, see SqlExecutor.explainQuery: its plan, the columns of its result, the
+ * streams it reads and writes as the IO resolver resolves them, and how long parsing and planning took.
+ */
+public class QueryExplanation {
+    private String m_plan;
+    private SqlSchema m_resultSchema;
+    private List<String> m_sources;
+    private String m_sink;
+    private PhaseTimings m_timings;
+
+    public QueryExplanation(String plan, SqlSchema resultSchema, List<String> sources, String sink,
+            PhaseTimings timings) {
+        m_plan = plan;
+        m_resultSchema = resultSchema;
+        m_sources = sources;
+        m_sink = sink;
+        m_timings = timings;
+    }
+
+    /**
+     * @return the relational operators of the plan, one per line and indented under the operator they feed,
+     *         each followed by the type of the rows it produces
+     */
+    public String getPlan() {
+        return m_plan;
+    }
+
+    public SqlSchema getResultSchema() {
+        return m_resultSchema;
+    }
+
+    public List<String> getSources() {
+        return m_sources;
+    }
+
+    public String getSink() {
+        return m_sink;
+    }
+
+    public PhaseTimings getTimings() {
+        return m_timings;
+    }
+}
@@ -0,0 +1,55 @@
+package org.apache.samza.tools.client.interfaces;
+
+
+/**
+ * Latency percentiles of the rows of an execution, in milliseconds, -1 when nothing was measured.
+ * Time to first row runs from the execution being submitted to its first row reaching the shell. Source
+ * latency runs from the time in the row's timestamp field to the row reaching the shell, buffer latency
+ * from the row reaching the shell to a view taking it for display. Rows without a timestamp field have no
+ * source latency, see isSourceTimestampMissing.
+ */
+public class QueryLatency {
+    private double m_firstRowMs;
+    private double m_sourceP50Ms;
+    private double m_sourceP99Ms;
+    private double m_bufferP50Ms;
+    private double m_bufferP99Ms;
+    private boolean m_sourceTimestampMissing;
+
+    public QueryLatency(double firstRowMs, double sourceP50Ms, double sourceP99Ms, double bufferP50Ms,
+            double bufferP99Ms, boolean sourceTimestampMissing) {
+        m_firstRowMs = firstRowMs;
+        m_sourceP50Ms = sourceP50Ms;
+        m_sourceP99Ms = sourceP99Ms;
+        m_bufferP50Ms = bufferP50Ms;
+        m_bufferP99Ms = bufferP99Ms;
+        m_sourceTimestampMissing = sourceTimestampMissing;
+    }
+
+    public double getFirstRowMs() {
+        return m_firstRowMs;
+    }
+
+    public double getSourceP50Ms() {
+        return m_sourceP50Ms;
+    }
+
+    public double getSourceP99Ms() {
+        return m_sourceP99Ms;
+    }
+
+    public double getBufferP50Ms() {
+        return m_bufferP50Ms;
+    }
+
+    public double getBufferP99Ms() {
+        return m_bufferP99Ms;
+    }
+
+    /**
+     * @return true if the rows sampled for source latency had no timestamp field, so there is none
+     */
+    public boolean isSourceTimestampMissing() {
+        return m_sourceTimestampMissing;
+    }
+}
@@ -6,18 +6,25 @@ public class QueryResult {
     private boolean m_success;
     private SqlSchema m_schema;
 
+    /**
+     * @param schema may only be null for a query that didn't succeed, which has no result to describe
+     * @param success null is taken as false
+     */
     public QueryResult(int execId, SqlSchema schema, Boolean success) {
-        if(schema == null)
+        m_success = Boolean.TRUE.equals(success);
+        if(schema == null && m_success)
             throw new IllegalArgumentException();
         m_execId = execId;
         m_schema = schema;
-        m_success = success;
     }
 
     public int getExecutionId() {
         return m_execId;
     }
 
+    /**
+     * @return null if the query didn't succeed
+     */
     public SqlSchema getSchema() {
         return m_schema;
     }
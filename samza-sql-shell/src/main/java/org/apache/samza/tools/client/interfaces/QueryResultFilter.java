@@ -0,0 +1,28 @@
+package org.apache.samza.tools.client.interfaces;
+
+import java.util.regex.Pattern;
+
+
+/**
+ * The typed rows of a query with a value, as ColumnBatch.Column.getString shows it, in which the pattern finds
+ * a match. See SqlExecutor.filterQueryResult. Rows start at 0 with the oldest matching row still kept.
+ */
+public interface QueryResultFilter {
+    public Pattern getPattern();
+
+    /**
+     * Scans the rows that arrived since the filter was created or last updated.
+     * @return how many rows match
+     */
+    public int update();
+
+    /**
+     * @return how many rows matched as of the last update
+     */
+    public int getRowCount();
+
+    /**
+     * @return matching rows between startRow and endRow, both inclusive, as of the last update
+     */
+    public ColumnBatch getRows(int startRow, int endRow);
+}
@@ -0,0 +1,37 @@
+package org.apache.samza.tools.client.interfaces;
+
+
+/**
+ * The typed rows of a query with the largest, or smallest, values of a column seen so far, best first. See
+ * SqlExecutor.rankQueryResult. Each call ranks the rows that arrived since the last one first, so the ranking
+ * is always current, and rows the execution no longer keeps stay in it until better ones push them out. Rows
+ * with a null value aren't ranked.
+ */
+public interface QueryResultRanking extends AutoCloseable {
+    public int getColumnIndex();
+
+    public boolean isAscending();
+
+    /**
+     * @return how many rows at most are kept
+     */
+    public int getLimit();
+
+    /**
+     * @return how many rows were ranked, including the ones pushed out
+     */
+    public long getRankedRowCount();
+
+    public int getRowCount();
+
+    /**
+     * @return ranked rows between startRow and endRow, both inclusive, best first
+     */
+    public ColumnBatch getRows(int startRow, int endRow);
+
+    /**
+     * Stops ranking the rows arriving.
+     */
+    @Override
+    public void close();
+}
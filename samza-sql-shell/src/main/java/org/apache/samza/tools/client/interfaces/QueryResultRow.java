@@ -0,0 +1,29 @@
+package org.apache.samza.tools.client.interfaces;
+
+
+/**
+ * A row of a query result handed out before it is formatted, so a view only pays for formatting the
+ * rows it actually draws.
+ */
+public interface QueryResultRow {
+    /**
+     * Formats the row in the message format of the ExecutionContext it was retrieved with.
+     */
+    public String[] format();
+
+    /**
+     * @return the UTF-8 payload of the row when it is shown as is, like in COMPACT format, so views can copy
+     * it to the terminal without decoding it; null when the row has to be formatted
+     */
+    public default byte[] getUtf8Payload() {
+        return null;
+    }
+
+    /**
+     * @return when the shell captured the row, from System.nanoTime, so views can tell how long it took to be
+     * shown; -1 if that isn't known
+     */
+    public default long getCaptureNanos() {
+        return -1;
+    }
+}
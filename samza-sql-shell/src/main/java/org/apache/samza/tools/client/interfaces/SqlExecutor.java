@@ -3,6 +3,8 @@ package org.apache.samza.tools.client.interfaces;
 
 import java.io.File;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
 
 
 /**
@@ -61,18 +63,121 @@ public interface SqlExecutor {
      */
     public QueryResult executeQuery(ExecutionContext context, String statement);
 
+    /**
+     * Plans the query and starts its job in the background.
+     *
+     * @return right away, with the execution ID for the calls taking one once the job is running
+     */
+    public ExecutionHandle<QueryResult> executeQueryAsync(ExecutionContext context, String statement);
+
+    /**
+     * Plans a SELECT or INSERT statement without running it.
+     *
+     * @return null if an error occurs. Prepare for subsequent getErrorMsg call.
+     */
+    public QueryExplanation explainQuery(ExecutionContext context, String statement);
+
+
+
+    /**
+     * @return how many rows of the execution for reading.
+     */
+    public int getRowCount(int execId);
+
+    /**
+     * @return rows the execution has produced so far, including those that were dropped or already consumed.
+     */
+    public long getProducedRowCount(int execId);
+
+    /**
+     * @return latency percentiles of the rows of the execution, or null if the execution has no rows
+     */
+    public QueryLatency getQueryLatency(int execId);
 
+    /**
+     * @return rows of the execution lost because its buffer was full, see ExecutionContext.getOverflowPolicy.
+     */
+    public long getDroppedRowCount(int execId);
 
     /**
-     * @return how many rows for reading.
+     * @return how long the execution was held back waiting for the buffer to have room, in milliseconds.
      */
-    public int getRowCount();
+    public long getBlockedTimeMs(int execId);
+
+    /**
+     * Rows of a query go to its spool file until the execution is stopped, see ExecutionContext.setSpool.
+     * @return rows of the execution written to its spool file so far, or -1 if the execution is not spooled.
+     */
+    public long getSpooledRowCount(int execId);
+
+    /**
+     * @return rows of the execution written to its spool file with values left out because they didn't fit the
+     * type of their column, like a string in an INT32 column of an AVRO file
+     */
+    public long getSpoolCoercedRowCount(int execId);
+
+    /**
+     * @return why spooling the execution stopped before the execution did, or null
+     */
+    public String getSpoolError(int execId);
+
+    /**
+     * Starts writing the rows a running query produces from now on to the spool file of the context, see
+     * ExecutionContext.setSpool, like a query started with the spool file set does.
+     * @return false if an error occurs, like the execution not being a running query or being spooled already.
+     * Prepare for subsequent getErrorMsg call.
+     */
+    public boolean spoolQueryResult(ExecutionContext context, int execId);
+
+    /**
+     * Blocks until the execution has rows for reading, the timeout passes or the calling thread is interrupted.
+     * @return true if the execution has rows
+     */
+    public boolean awaitRows(int execId, long timeoutMs);
 
     /**
      * Row starts at 0. Executor shall keep the data retrieved.
-     * For now we get strings for display but we might want strong typed values.
+     * Each execution has its own rows, so concurrent queries don't see or drop each other's data.
+     * Rows come formatted as strings for display, see retrieveQueryResultColumns for typed values.
      */
-    public List<String[]> retrieveQueryResult(ExecutionContext context, int startRow, int endRow);
+    public List<String[]> retrieveQueryResult(ExecutionContext context, int execId, int startRow, int endRow);
+
+    /**
+     * Same rows as retrieveQueryResult, counted by getRowCount, but decoded into typed columns keyed by the
+     * result schema. Only the rows asked for are decoded, from the rows the executor keeps for
+     * retrieveQueryResult, so there is no second copy of them.
+     * @return null if the execution has no typed rows, like non-query executions
+     */
+    public ColumnBatch retrieveQueryResultColumns(ExecutionContext context, int execId, int startRow, int endRow);
+
+    /**
+     * Filters the typed rows of the execution down to the ones with a value the pattern finds a match in, without
+     * running the query again. The rows kept are scanned in parallel right away, the ones arriving later on
+     * QueryResultFilter.update. Call it from the thread reading the rows of the execution.
+     * @return null if the execution has no typed rows
+     */
+    public QueryResultFilter filterQueryResult(ExecutionContext context, int execId, Pattern pattern);
+
+    /**
+     * Ranks the typed rows of the execution by the values of a numeric or boolean column, without sorting the
+     * rows kept: each row is compared once to the rows ranked so far, as the ranking catches up with the rows
+     * arriving. Call it from the thread reading the rows of the execution, and close the ranking once done
+     * with it.
+     * @param limit how many rows the ranking keeps
+     * @param ascending keep the smallest values rather than the largest
+     * @return null if the execution has no typed rows
+     * @throws ExecutionException if the column can't be ranked
+     */
+    public QueryResultRanking rankQueryResult(ExecutionContext context, int execId, int colIdx, int limit,
+            boolean ascending);
+
+    /**
+     * Statistics of each column of the query over every row it produced, kept as the rows are captured
+     * whether or not they are kept.
+     * @return null if the execution has no statistics, like non-query executions and queries not started with
+     * the STATS result view
+     */
+    public List<ColumnStatistics> getColumnStatistics(int execId);
 
 
     /**
@@ -82,7 +187,25 @@ public interface SqlExecutor {
      */
     // For logging view mode. Still not sure what the interface should be like.
     // Don't support this method for now.
-    public List<String[]> consumeQueryResult(ExecutionContext context, int startRow, int endRow);
+    public List<String[]> consumeQueryResult(ExecutionContext context, int execId, int startRow, int endRow);
+
+    /**
+     * Same as consumeQueryResult, but rows are only formatted when QueryResultRow.format is called. Rows
+     * before startRow are dropped without being read.
+     */
+    public List<QueryResultRow> consumeQueryResultRows(ExecutionContext context, int execId, int startRow, int endRow);
+
+    /**
+     * Same as consumeQueryResult, but the rows are decoded into typed columns keyed by the result schema.
+     * @return null if the execution has no typed rows, like non-query executions
+     */
+    public ColumnBatch consumeQueryResultColumns(ExecutionContext context, int execId, int startRow, int endRow);
+
+    /**
+     * Consumes all the rows up to endRow (inclusive) and returns every step-th of them, picked by position in
+     * the whole result so consecutive calls sample it evenly. Rows not picked are dropped without being read.
+     */
+    public List<QueryResultRow> consumeQueryResultSample(ExecutionContext context, int execId, int endRow, int step);
 
     /**
      * Executes all the NON-QUERY statements in the sqlFile.
@@ -95,6 +218,15 @@ public interface SqlExecutor {
     public NonQueryResult executeNonQuery(ExecutionContext context, List<String> statements);
 
     /**
+     * Starts the job of the statements in the background.
+     *
+     * @return right away
+     */
+    public ExecutionHandle<NonQueryResult> executeNonQueryAsync(ExecutionContext context, List<String> statements);
+
+    /**
+     * An execution still starting is stopped by its start, before its job runs or right after. Its handle
+     * then fails.
      */
     public boolean stopExecution(ExecutionContext context, int exeId);
 
@@ -109,6 +241,16 @@ public interface SqlExecutor {
      */
     public ExecutionStatus queryExecutionStatus(int execId);
 
+    /**
+     * @return how long starting the execution took, null if there is no such execution
+     */
+    public PhaseTimings getPhaseTimings(int execId);
+
+    /**
+     * @return the config the execution's job runs with, null if there is no such execution
+     */
+    public Map<String, String> getExecutionConfig(int execId);
+
     /**
      *
      */
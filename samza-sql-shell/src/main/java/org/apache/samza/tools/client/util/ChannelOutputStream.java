@@ -0,0 +1,81 @@
+package org.apache.samza.tools.client.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * OutputStream over a FileChannel that gathers bytes in a direct buffer and hands them to the channel once
+ * the buffer is full, so the file sees a few large writes instead of one per row. Direct buffers are written
+ * without the copy the JDK makes of heap ones. Not thread-safe.
+ */
+public class ChannelOutputStream extends OutputStream {
+    private final FileChannel m_channel;
+    private final ByteBuffer m_buffer;
+    private long m_bytesWritten;
+    private boolean m_closed;
+
+    public ChannelOutputStream(FileChannel channel, int bufferSize) {
+        m_channel = channel;
+        m_buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!m_buffer.hasRemaining()) {
+            drain();
+        }
+        m_buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!m_buffer.hasRemaining()) {
+                drain();
+            }
+            int count = Math.min(length, m_buffer.remaining());
+            m_buffer.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Writes what is buffered to the channel. The channel is not forced to disk.
+     */
+    @Override
+    public void flush() throws IOException {
+        drain();
+    }
+
+    /**
+     * @return bytes handed to the channel so far
+     */
+    public long getBytesWritten() {
+        return m_bytesWritten;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (m_closed) {
+            return;
+        }
+        m_closed = true;
+        try {
+            drain();
+        } finally {
+            m_channel.close();
+        }
+    }
+
+    private void drain() throws IOException {
+        m_buffer.flip();
+        while (m_buffer.hasRemaining()) {
+            m_bytesWritten += m_channel.write(m_buffer);
+        }
+        m_buffer.clear();
+    }
+}
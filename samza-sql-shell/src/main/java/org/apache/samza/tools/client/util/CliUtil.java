@@ -1,16 +1,14 @@
 package org.apache.samza.tools.client.util;
 
-import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import org.apache.samza.system.OutgoingMessageEnvelope;
-import org.codehaus.jackson.map.ObjectMapper;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 
 public class CliUtil {
-    private static final Logger LOG = LoggerFactory.getLogger(CliUtil.class);
+    // Limits how much of a huge nested record PRETTY output shows
+    private static final JsonPrettyFormatter PRETTY_FORMATTER = new JsonPrettyFormatter(32, 1000, 4096);
 
     public static boolean isNullOrEmpty(String str) {
         return str == null || str.isEmpty();
@@ -48,6 +46,32 @@ public class CliUtil {
         return ((st > 0) || (len < command.length())) ? command.substring(st, len) : command;
     }
 
+    // Same statement, same result: whitespace runs outside quotes become one space, and trimCommand applies
+    public static String normalizeSql(String sql) {
+        String trimmed = trimCommand(sql);
+        if(isNullOrEmpty(trimmed))
+            return trimmed;
+
+        StringBuilder normalized = new StringBuilder(trimmed.length());
+        char quote = 0;
+        for(int i = 0; i < trimmed.length(); ++i) {
+            char c = trimmed.charAt(i);
+            if(quote != 0) {
+                // A doubled quote ends the quoted part and starts it again
+                if(c == quote)
+                    quote = 0;
+            } else if(c == '\'' || c == '"' || c == '`') {
+                quote = c;
+            } else if(c <= ' ') {
+                if(normalized.charAt(normalized.length() - 1) == ' ')
+                    continue;
+                c = ' ';
+            }
+            normalized.append(c);
+        }
+        return normalized.toString();
+    }
+
     public static List<String> splitWithSpace(String buffer) {
         List<String> list = new ArrayList<String>();
         if(isNullOrEmpty(buffer))
@@ -69,21 +93,18 @@ public class CliUtil {
     }
 
     public static String getPrettyFormat(OutgoingMessageEnvelope envelope) {
-        String value = new String((byte[]) envelope.getMessage());
-        ObjectMapper mapper = new ObjectMapper();
-        String formattedValue;
-        try {
-            Object json = mapper.readValue(value, Object.class);
-            formattedValue = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(json);
-        } catch (IOException e) {
-            formattedValue = value;
-            LOG.error("Error while formatting json", e);
-        }
+        return getPrettyFormat((byte[]) envelope.getMessage());
+    }
 
-        return formattedValue;
+    public static String getPrettyFormat(byte[] message) {
+        return PRETTY_FORMATTER.format(message);
     }
 
     public static String getCompressedFormat(OutgoingMessageEnvelope envelope) {
-        return new String((byte[]) envelope.getMessage());
+        return getCompressedFormat((byte[]) envelope.getMessage());
+    }
+
+    public static String getCompressedFormat(byte[] message) {
+        return new String(message, StandardCharsets.UTF_8);
     }
 }
@@ -0,0 +1,76 @@
+package org.apache.samza.tools.client.util;
+
+/**
+ * Estimates how many distinct values were added, in 2^precision bytes however many there are. Values are
+ * added as 64-bit hashes, see the hash methods. The standard error is about 1.04 / sqrt(2^precision), 1.6%
+ * at precision 12. Sketches of the same precision merge into the sketch of all their values.
+ */
+public class HyperLogLog {
+    private final int m_precision;
+    private final byte[] m_registers;
+
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("Precision out of range: " + precision);
+        }
+        m_precision = precision;
+        m_registers = new byte[1 << precision];
+    }
+
+    public void add(long hash) {
+        int register = (int) (hash >>> (64 - m_precision));
+        // Position of the first 1 bit after the register bits, capped by a 1 bit past the end
+        int rank = Long.numberOfLeadingZeros((hash << m_precision) | (1L << (m_precision - 1))) + 1;
+        if (rank > m_registers[register]) {
+            m_registers[register] = (byte) rank;
+        }
+    }
+
+    public void merge(HyperLogLog other) {
+        if (other.m_precision != m_precision) {
+            throw new IllegalArgumentException("Precision " + other.m_precision + " differs from " + m_precision);
+        }
+        for (int i = 0; i < m_registers.length; i++) {
+            m_registers[i] = (byte) Math.max(m_registers[i], other.m_registers[i]);
+        }
+    }
+
+    public long estimate() {
+        int registers = m_registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte rank : m_registers) {
+            sum += Math.scalb(1.0, -rank);
+            if (rank == 0) {
+                zeros++;
+            }
+        }
+        double estimate = 0.7213 / (1 + 1.079 / registers) * registers * registers / sum;
+        // Few values leave registers empty, and counting those is more accurate
+        if (estimate <= 2.5 * registers && zeros > 0) {
+            estimate = registers * Math.log((double) registers / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Mixes the bits of the value so that close values get unrelated hashes.
+     */
+    public static long hash(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    public static long hash(CharSequence value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash(hash);
+    }
+}
@@ -0,0 +1,146 @@
+package org.apache.samza.tools.client.util;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Pretty-prints JSON by streaming tokens from the UTF-8 payload straight to the output, without building
+ * a tree or decoding the payload to a String first. Output matches Jackson's default pretty printer.
+ *
+ * Huge records are truncated: objects and arrays nested deeper than maxDepth are shown as {...} or [...],
+ * only the first maxElements fields or elements of each are shown followed by a count of the rest, and
+ * strings are cut after maxStringLength characters.
+ *
+ * Instances are immutable and can be shared between threads.
+ */
+public class JsonPrettyFormatter {
+    private static final Logger LOG = LoggerFactory.getLogger(JsonPrettyFormatter.class);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final String ELLIPSIS = "...";
+
+    private final int m_maxDepth;
+    private final int m_maxElements;
+    private final int m_maxStringLength;
+
+    public JsonPrettyFormatter(int maxDepth, int maxElements, int maxStringLength) {
+        if (maxDepth < 0 || maxElements < 0 || maxStringLength < 0) {
+            throw new IllegalArgumentException();
+        }
+        m_maxDepth = maxDepth;
+        m_maxElements = maxElements;
+        m_maxStringLength = maxStringLength;
+    }
+
+    /**
+     * @return the formatted JSON, or the payload as is if it isn't valid JSON
+     */
+    public String format(byte[] json) {
+        StringWriter writer = new StringWriter(json.length * 2);
+        try {
+            format(json, writer);
+            return writer.toString();
+        } catch (IOException e) {
+            LOG.error("Error while formatting json", e);
+            return new String(json, StandardCharsets.UTF_8);
+        }
+    }
+
+    public void format(byte[] json, Writer out) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createJsonParser(json);
+             JsonGenerator generator = JSON_FACTORY.createJsonGenerator(out)) {
+            generator.useDefaultPrettyPrinter();
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                copyValue(parser, generator, token, 0);
+            }
+        }
+    }
+
+    private void copyValue(JsonParser parser, JsonGenerator generator, JsonToken token, int depth)
+            throws IOException {
+        switch (token) {
+            case START_OBJECT:
+                if (depth >= m_maxDepth) {
+                    parser.skipChildren();
+                    generator.writeRawValue("{" + ELLIPSIS + "}");
+                    return;
+                }
+                generator.writeStartObject();
+                int fields = 0;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    if (fields == m_maxElements) {
+                        generator.writeStringField(ELLIPSIS, skipRest(parser, JsonToken.END_OBJECT) + " more fields");
+                        break;
+                    }
+                    generator.writeFieldName(parser.getCurrentName());
+                    copyValue(parser, generator, parser.nextToken(), depth + 1);
+                    fields++;
+                }
+                generator.writeEndObject();
+                return;
+            case START_ARRAY:
+                if (depth >= m_maxDepth) {
+                    parser.skipChildren();
+                    generator.writeRawValue("[" + ELLIPSIS + "]");
+                    return;
+                }
+                generator.writeStartArray();
+                int elements = 0;
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    if (elements == m_maxElements) {
+                        generator.writeString(ELLIPSIS + " " + skipRest(parser, JsonToken.END_ARRAY) + " more");
+                        break;
+                    }
+                    copyValue(parser, generator, token, depth + 1);
+                    elements++;
+                }
+                generator.writeEndArray();
+                return;
+            case VALUE_STRING:
+                if (parser.getTextLength() > m_maxStringLength) {
+                    char[] chars = parser.getTextCharacters();
+                    int length = m_maxStringLength;
+                    // Not cutting a surrogate pair in half, which would make the output invalid UTF-16
+                    if (length > 0 && Character.isHighSurrogate(chars[parser.getTextOffset() + length - 1])) {
+                        length--;
+                    }
+                    generator.writeString(new String(chars, parser.getTextOffset(), length) + ELLIPSIS);
+                } else {
+                    generator.writeString(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                }
+                return;
+            default:
+                // Numbers, booleans and nulls
+                generator.copyCurrentEvent(parser);
+        }
+    }
+
+    /**
+     * Skips the fields or elements of the object or array the parser is in, starting with the current one,
+     * up to the end token.
+     * @return how many were skipped
+     */
+    private static int skipRest(JsonParser parser, JsonToken endToken) throws IOException {
+        int skipped = 0;
+        JsonToken token = parser.getCurrentToken();
+        while (token != endToken) {
+            if (endToken == JsonToken.END_OBJECT) {
+                // On a field name, move to its value
+                parser.nextToken();
+            }
+            parser.skipChildren();
+            skipped++;
+            token = parser.nextToken();
+        }
+        return skipped;
+    }
+}
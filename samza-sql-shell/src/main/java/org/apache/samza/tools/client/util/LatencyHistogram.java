@@ -0,0 +1,76 @@
+package org.apache.samza.tools.client.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Histogram of non-negative values, such as latencies in nanoseconds, that any number of threads can record
+ * into without locking or allocating. Values are bucketed by their highest bit and the 4 bits below it, so
+ * percentiles are accurate to within 1/16 of the value.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS + SUB_BUCKETS;
+
+    private final AtomicLongArray m_counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Negative values are recorded as 0.
+     */
+    public void record(long value) {
+        m_counts.incrementAndGet(bucketOf(Math.max(value, 0)));
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += m_counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the highest value of the bucket holding the percentile, or -1 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long count = getCount();
+        if (count == 0) {
+            return -1;
+        }
+        long rank = Math.max((long) Math.ceil(count * percentile / 100), 1);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += m_counts.get(i);
+            if (seen >= rank) {
+                return highestValueOf(i);
+            }
+        }
+        // Recorded while counting
+        return highestValueOf(BUCKETS - 1);
+    }
+
+    public void clear() {
+        for (int i = 0; i < BUCKETS; i++) {
+            m_counts.set(i, 0);
+        }
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >> SUB_BUCKET_BITS) - 1;
+        long lowest = (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+        return lowest + ((1L << shift) - 1);
+    }
+}
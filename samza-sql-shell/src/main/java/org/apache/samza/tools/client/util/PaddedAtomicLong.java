@@ -0,0 +1,13 @@
+package org.apache.samza.tools.client.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * AtomicLong padded to a cache line, so counters bumped by producers don't invalidate the line
+ * a consumer reads its own counter from.
+ */
+@SuppressWarnings("unused")
+class PaddedAtomicLong extends AtomicLong {
+  private volatile long p1, p2, p3, p4, p5, p6 = 7L;
+}
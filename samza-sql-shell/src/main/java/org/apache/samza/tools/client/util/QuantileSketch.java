@@ -0,0 +1,181 @@
+package org.apache.samza.tools.client.util;
+
+/**
+ * Quantiles of any doubles, to within a relative accuracy, in at most MAX_BUCKETS counters per sign. Like
+ * LatencyHistogram values are bucketed on a logarithmic scale, here with buckets (gamma^(i-1), gamma^i] for
+ * gamma = (1 + accuracy) / (1 - accuracy), so a quantile is off by at most the accuracy times its value. A
+ * range wider than MAX_BUCKETS buckets collapses its buckets nearest to 0, which only affects quantiles of
+ * values that small. Sketches of the same accuracy merge into the sketch of all their values.
+ */
+public class QuantileSketch {
+    static final int MAX_BUCKETS = 2048;
+    // Smaller magnitudes count as 0
+    private static final double MIN_MAGNITUDE = 1e-300;
+
+    private final double m_accuracy;
+    private final double m_gamma;
+    private final double m_logGamma;
+    private final Buckets m_positive = new Buckets();
+    // By magnitude
+    private final Buckets m_negative = new Buckets();
+    private long m_zeroCount;
+    private long m_count;
+    private double m_min = Double.NaN;
+    private double m_max = Double.NaN;
+
+    public QuantileSketch(double accuracy) {
+        if (!(accuracy > 0 && accuracy < 1)) {
+            throw new IllegalArgumentException("Accuracy out of range: " + accuracy);
+        }
+        m_accuracy = accuracy;
+        m_gamma = (1 + accuracy) / (1 - accuracy);
+        m_logGamma = Math.log(m_gamma);
+    }
+
+    /**
+     * NaN and infinite values are skipped.
+     */
+    public void add(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return;
+        }
+        if (value > MIN_MAGNITUDE) {
+            m_positive.add(bucketOf(value), 1);
+        } else if (value < -MIN_MAGNITUDE) {
+            m_negative.add(bucketOf(-value), 1);
+        } else {
+            m_zeroCount++;
+        }
+        m_min = m_count == 0 ? value : Math.min(m_min, value);
+        m_max = m_count == 0 ? value : Math.max(m_max, value);
+        m_count++;
+    }
+
+    public void merge(QuantileSketch other) {
+        if (other.m_accuracy != m_accuracy) {
+            throw new IllegalArgumentException("Accuracy " + other.m_accuracy + " differs from " + m_accuracy);
+        }
+        if (other.m_count == 0) {
+            return;
+        }
+        m_positive.merge(other.m_positive);
+        m_negative.merge(other.m_negative);
+        m_zeroCount += other.m_zeroCount;
+        m_min = m_count == 0 ? other.m_min : Math.min(m_min, other.m_min);
+        m_max = m_count == 0 ? other.m_max : Math.max(m_max, other.m_max);
+        m_count += other.m_count;
+    }
+
+    public long getCount() {
+        return m_count;
+    }
+
+    /**
+     * @return NaN if nothing was added
+     */
+    public double getMin() {
+        return m_min;
+    }
+
+    public double getMax() {
+        return m_max;
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     * @return the exact min and max for 0 and 1, NaN if nothing was added
+     */
+    public double getQuantile(double quantile) {
+        if (m_count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (Math.min(Math.max(quantile, 0), 1) * (m_count - 1));
+        double value;
+        if (rank == 0) {
+            return m_min;
+        } else if (rank == m_count - 1) {
+            return m_max;
+        } else if (rank < m_negative.m_total) {
+            // Largest magnitudes first
+            value = -valueOf(m_negative.find(m_negative.m_total - 1 - rank));
+        } else if (rank < m_negative.m_total + m_zeroCount) {
+            value = 0;
+        } else {
+            value = valueOf(m_positive.find(rank - m_negative.m_total - m_zeroCount));
+        }
+        return Math.min(Math.max(value, m_min), m_max);
+    }
+
+    private int bucketOf(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / m_logGamma);
+    }
+
+    // Within the accuracy of any value of the bucket
+    private double valueOf(int bucket) {
+        return 2 * Math.pow(m_gamma, bucket) / (m_gamma + 1);
+    }
+
+    /**
+     * Counts of consecutive buckets, in an array that grows to cover the buckets added up to MAX_BUCKETS.
+     */
+    private static final class Buckets {
+        private long[] m_counts;
+        // Bucket of m_counts[0]
+        private int m_offset;
+        private long m_total;
+
+        void add(int bucket, long count) {
+            if (m_counts == null) {
+                m_counts = new long[64];
+                m_offset = bucket - 32;
+            }
+            if (bucket < m_offset || bucket >= m_offset + m_counts.length) {
+                bucket = extend(bucket);
+            }
+            m_counts[bucket - m_offset] += count;
+            m_total += count;
+        }
+
+        void merge(Buckets other) {
+            if (other.m_counts == null) {
+                return;
+            }
+            for (int i = 0; i < other.m_counts.length; i++) {
+                if (other.m_counts[i] > 0) {
+                    add(other.m_offset + i, other.m_counts[i]);
+                }
+            }
+        }
+
+        // Bucket holding the value of the rank, counting from the lowest bucket
+        int find(long rank) {
+            long seen = 0;
+            for (int i = 0; i < m_counts.length; i++) {
+                seen += m_counts[i];
+                if (seen > rank) {
+                    return m_offset + i;
+                }
+            }
+            return m_offset + m_counts.length - 1;
+        }
+
+        // Makes room for the bucket and returns where its count now goes, the lowest bucket kept if collapsed
+        private int extend(int bucket) {
+            int low = Math.min(bucket, m_offset);
+            int high = Math.max(bucket, m_offset + m_counts.length - 1);
+            if (high - low >= MAX_BUCKETS) {
+                low = high - MAX_BUCKETS + 1;
+            }
+            int length = Math.min(Math.max(high - low + 1, m_counts.length * 2), MAX_BUCKETS);
+            // Room to grow further on the side the bucket is on
+            int offset = bucket < m_offset ? high - length + 1 : low;
+            long[] counts = new long[length];
+            for (int i = 0; i < m_counts.length; i++) {
+                counts[Math.max(m_offset + i, offset) - offset] += m_counts[i];
+            }
+            m_counts = counts;
+            m_offset = offset;
+            return Math.max(bucket, offset);
+        }
+    }
+}
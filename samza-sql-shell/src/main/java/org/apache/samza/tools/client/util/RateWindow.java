@@ -0,0 +1,58 @@
+package org.apache.samza.tools.client.util;
+
+
+/**
+ * Rate of a growing counter over a sliding window, from readings of the counter taken now and then. Keeps a
+ * fixed number of readings in arrays, so adding one doesn't allocate. Not thread-safe; meant for the thread
+ * that shows the rate.
+ */
+public class RateWindow {
+    private static final int READINGS = 64;
+
+    private final long m_windowNanos;
+    private final long m_minIntervalNanos;
+    private final long[] m_times = new long[READINGS];
+    private final long[] m_values = new long[READINGS];
+    private int m_next;
+    private int m_count;
+
+    public RateWindow(long windowMs) {
+        m_windowNanos = windowMs * 1_000_000L;
+        // Kept readings are at least this far apart, so they always span the window
+        m_minIntervalNanos = m_windowNanos / (READINGS - 1);
+    }
+
+    public void add(long nowNanos, long value) {
+        int latest = (m_next + READINGS - 1) % READINGS;
+        // The latest reading is only kept for good once it is far enough from the one before it
+        if (m_count > 1 && m_times[latest] - m_times[(latest + READINGS - 1) % READINGS] < m_minIntervalNanos) {
+            m_times[latest] = nowNanos;
+            m_values[latest] = value;
+            return;
+        }
+        m_times[m_next] = nowNanos;
+        m_values[m_next] = value;
+        m_next = (m_next + 1) % READINGS;
+        m_count = Math.min(m_count + 1, READINGS);
+    }
+
+    /**
+     * @return increase of the counter per second over the window, from the oldest reading in it to the latest
+     */
+    public double getRatePerSecond() {
+        if (m_count < 2) {
+            return 0;
+        }
+        int latest = (m_next + READINGS - 1) % READINGS;
+        int oldest = latest;
+        for (int i = 1; i < m_count; i++) {
+            int candidate = (latest + READINGS - i) % READINGS;
+            if (m_times[latest] - m_times[candidate] > m_windowNanos) {
+                break;
+            }
+            oldest = candidate;
+        }
+        long elapsed = m_times[latest] - m_times[oldest];
+        return elapsed <= 0 ? 0 : (m_values[latest] - m_values[oldest]) * 1e9 / elapsed;
+    }
+}
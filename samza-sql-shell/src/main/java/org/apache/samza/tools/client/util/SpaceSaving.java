@@ -0,0 +1,143 @@
+package org.apache.samza.tools.client.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * The most frequent values added, counted with the space-saving algorithm in a fixed number of counters. A
+ * value without a counter takes over the one of the least frequent value, keeping its count as the error, so
+ * counts are over by at most their error and any value added more often than 1/capacity of the time has a
+ * counter. Counters are kept in a min-heap by count, so adding a value costs a hash lookup and a sift.
+ */
+public class SpaceSaving {
+    private final int m_capacity;
+    private final Map<String, Counter> m_counters = new HashMap<>();
+    private final Counter[] m_heap;
+    private int m_size;
+
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException();
+        }
+        m_capacity = capacity;
+        m_heap = new Counter[capacity];
+    }
+
+    public void add(String value) {
+        add(value, 1, 0);
+    }
+
+    /**
+     * Adds the counts of the other sketch to the ones of this one.
+     */
+    public void merge(SpaceSaving other) {
+        for (int i = 0; i < other.m_size; i++) {
+            Counter counter = other.m_heap[i];
+            add(counter.m_value, counter.m_count, counter.m_error);
+        }
+    }
+
+    /**
+     * @return copies of the counters of the count most frequent values, most frequent first
+     */
+    public List<Counter> getTop(int count) {
+        Counter[] counters = Arrays.copyOf(m_heap, m_size);
+        Arrays.sort(counters, Comparator.comparingLong(Counter::getCount).reversed());
+        List<Counter> top = new ArrayList<>(Math.min(count, counters.length));
+        for (int i = 0; i < counters.length && i < count; i++) {
+            top.add(new Counter(counters[i].m_value, counters[i].m_count, counters[i].m_error));
+        }
+        return top;
+    }
+
+    private void add(String value, long count, long error) {
+        Counter counter = m_counters.get(value);
+        if (counter == null && m_size < m_capacity) {
+            counter = new Counter(value, count, error);
+            counter.m_heapIdx = m_size;
+            m_heap[m_size++] = counter;
+            m_counters.put(value, counter);
+            siftUp(counter.m_heapIdx);
+            return;
+        }
+        if (counter == null) {
+            counter = m_heap[0];
+            m_counters.remove(counter.m_value);
+            counter.m_value = value;
+            counter.m_error = counter.m_count;
+            m_counters.put(value, counter);
+        }
+        counter.m_count += count;
+        counter.m_error += error;
+        siftDown(counter.m_heapIdx);
+    }
+
+    private void siftUp(int idx) {
+        while (idx > 0) {
+            int parent = (idx - 1) >>> 1;
+            if (m_heap[parent].m_count <= m_heap[idx].m_count) {
+                break;
+            }
+            swap(parent, idx);
+            idx = parent;
+        }
+    }
+
+    private void siftDown(int idx) {
+        while (true) {
+            int child = 2 * idx + 1;
+            if (child >= m_size) {
+                break;
+            }
+            if (child + 1 < m_size && m_heap[child + 1].m_count < m_heap[child].m_count) {
+                child++;
+            }
+            if (m_heap[idx].m_count <= m_heap[child].m_count) {
+                break;
+            }
+            swap(idx, child);
+            idx = child;
+        }
+    }
+
+    private void swap(int i, int j) {
+        Counter counter = m_heap[i];
+        m_heap[i] = m_heap[j];
+        m_heap[i].m_heapIdx = i;
+        m_heap[j] = counter;
+        counter.m_heapIdx = j;
+    }
+
+    public static class Counter {
+        private String m_value;
+        private long m_count;
+        private long m_error;
+        private int m_heapIdx;
+
+        public Counter(String value, long count, long error) {
+            m_value = value;
+            m_count = count;
+            m_error = error;
+        }
+
+        public String getValue() {
+            return m_value;
+        }
+
+        public long getCount() {
+            return m_count;
+        }
+
+        /**
+         * @return by how much the count may be over
+         */
+        public long getError() {
+            return m_error;
+        }
+    }
+}
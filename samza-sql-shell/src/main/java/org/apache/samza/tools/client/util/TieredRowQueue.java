@@ -0,0 +1,1010 @@
+package org.apache.samza.tools.client.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.apache.samza.tools.client.interfaces.OverflowPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Random access queue of serialized rows, bounded in how many rows it holds but not by memory: rows
+ * that don't fit in memory are spilled to disk.
+ *
+ * The newest rows stay in memory in a lock-free ring. Producers claim a sequence number from the tail,
+ * copy the payload into their own direct-memory slab and then publish it into the slot (sequence & mask):
+ * the slot's stamp is set to -(sequence + 1) while its index entry is updated, and to sequence + 1 once the
+ * entry points at the row. Readers that find -(sequence + 1) yield until the row is published; a stamp
+ * of another lap means the slot was reused. Each slot only holds a long (slab id, offset) entry, so
+ * buffered rows don't add objects for the GC to trace. A full slab is retired and recycled once all of
+ * its rows are spilled. Rows are grouped in segments of a fixed number of rows. Once a whole segment
+ * falls out of the hot window, a background thread deflates it and appends it to a spill file; segments
+ * already consumed by then are skipped. A new spill file is started once the current one is full or all
+ * of its rows were consumed, and files all of whose rows were consumed are deleted, so the disk only
+ * holds about the rows still in the queue. Spilled rows are read back through a memory-mapped window of
+ * a file one decoded segment at a time, so paging through millions of rows costs a constant amount of
+ * heap. Producers only wait for the spill thread when it falls more than a segment behind.
+ *
+ * The queue holds at most maxRows rows between head and tail. A row added beyond that is handled by the
+ * {@link OverflowPolicy}: DROP_OLDEST moves the head forward over the oldest rows, DROP_NEWEST drops the
+ * row being added, and BLOCK makes the producer wait for the consumer to make room, up to a timeout
+ * after which the row is dropped. Dropped rows and time producers spent blocked are counted. For a
+ * sample of the rows, the time from being added to being consumed is recorded as well.
+ *
+ * Only one thread may call get/consume/clear at a time. Indexes passed to them are relative to the head,
+ * positions are in the whole stream.
+ */
+public class TieredRowQueue {
+  private static final Logger LOG = LoggerFactory.getLogger(TieredRowQueue.class);
+  public static final int DEFAULT_SEGMENT_ROWS = 1024;
+  private static final long MAPPED_WINDOW_SIZE = 64L * 1024 * 1024;
+  private static final long SPILL_FILE_SIZE = MAPPED_WINDOW_SIZE;
+  private static final int ROW_LENGTH_PREFIX = 4;
+  private static final int SLAB_SIZE = 1024 * 1024;
+  // Every 64th row has its arrival time kept, in a ring of 1024 slots, to measure how long rows wait
+  private static final int WAIT_SAMPLE_SHIFT = 6;
+  private static final int WAIT_SAMPLE_SLOTS = 1024;
+
+  // Hot tier. Each slot holds the slab id in the high and the offset in the low 32 bits.
+  private final AtomicLongArray m_index;
+  private final AtomicLongArray m_stamps;
+  // When the row in each slot was added, from System.nanoTime
+  private final AtomicLongArray m_arrivals;
+  private final int m_mask;
+  private final int m_hotCapacity;
+  private final int m_segmentRows;
+  private final int m_segmentShift;
+  private final int m_maxRows;
+  private final OverflowPolicy m_overflowPolicy;
+  private final long m_blockTimeoutNanos;
+  private final LongAdder m_droppedRows = new LongAdder();
+  private final LongAdder m_blockedNanos = new LongAdder();
+  // Sequence + 1 and arrival time of the sampled row in each slot
+  private final AtomicLongArray m_waitSampleSeqs = new AtomicLongArray(WAIT_SAMPLE_SLOTS);
+  private final AtomicLongArray m_waitSampleNanos = new AtomicLongArray(WAIT_SAMPLE_SLOTS);
+  private final LatencyHistogram m_waitTimes = new LatencyHistogram();
+  // Advanced by the consumer, and by producers dropping the oldest rows
+  private final PaddedAtomicLong m_head = new PaddedAtomicLong();
+  private final PaddedAtomicLong m_tail = new PaddedAtomicLong();
+  // Reader parked in awaitRows, if any
+  private volatile Thread m_reader;
+
+  // Off-heap arena. Slabs are only registered, retired and recycled under m_slabLock.
+  private final Object m_slabLock = new Object();
+  private volatile Slab[] m_slabs = new Slab[16];
+  private int m_slabCount;
+  private long m_offHeapBytes;
+  private final ArrayDeque<Slab> m_retiredSlabs = new ArrayDeque<>();
+  private final ThreadLocal<Slab> m_currentSlab = new ThreadLocal<>();
+
+  // Cold tier. All rows before m_spilled are in a spill file, or were consumed before being spilled.
+  private volatile long m_spilled;
+  private volatile boolean m_closed;
+  private final File m_spillDir;
+  private final long m_spillFileSize;
+  // Oldest first, segments are appended to the last one. Files are only added and deleted under its lock.
+  private final ArrayDeque<SpillFile> m_spillFiles = new ArrayDeque<>();
+  private final ExecutorService m_spiller;
+  private final Runnable m_spillTask = this::spillReadySegments;
+  // Segment index from the oldest live segment on, written by the spill thread and published through
+  // m_spilled. It is replaced by a trimmed copy when it runs out of room or spill files are deleted.
+  private volatile SegmentIndex m_segments = new SegmentIndex(0, 0, null);
+
+  // Spill thread state
+  private final Deflater m_deflater = new Deflater(Deflater.BEST_SPEED);
+  private final byte[] m_deflateBuffer = new byte[64 * 1024];
+  private final byte[] m_lengthPrefix = new byte[ROW_LENGTH_PREFIX];
+  private byte[] m_spillRow = new byte[1024];
+
+  // Reader state, one decoded segment at a time
+  private final Inflater m_inflater = new Inflater();
+  private MappedByteBuffer m_window;
+  private SpillFile m_windowFile;
+  private long m_windowStart;
+  private byte[] m_compressed = new byte[0];
+  private byte[] m_segmentData = new byte[0];
+  private final int[] m_rowOffsets;
+  private long m_cachedSegment = -1;
+
+  public TieredRowQueue(int hotCapacity, File spillDir) {
+    this(hotCapacity, DEFAULT_SEGMENT_ROWS, spillDir);
+  }
+
+  public TieredRowQueue(int hotCapacity, int segmentRows, File spillDir) {
+    this(hotCapacity, segmentRows, spillDir, Integer.MAX_VALUE, OverflowPolicy.DROP_OLDEST, 0);
+  }
+
+  /**
+   * @param hotCapacity rows kept in memory, rounded up to a multiple of segmentRows
+   * @param segmentRows rows per spilled segment, must be a power of two
+   * @param spillDir directory of the spill file, or null for java.io.tmpdir
+   * @param maxRows rows the queue holds before the overflow policy applies
+   * @param overflowPolicy what to do with rows added to a full queue
+   * @param blockTimeoutMs how long add waits for room under {@link OverflowPolicy#BLOCK}
+   */
+  public TieredRowQueue(int hotCapacity, int segmentRows, File spillDir, int maxRows,
+      OverflowPolicy overflowPolicy, long blockTimeoutMs) {
+    this(hotCapacity, segmentRows, spillDir, maxRows, overflowPolicy, blockTimeoutMs, SPILL_FILE_SIZE);
+  }
+
+  /**
+   * @param spillFileSize bytes written to a spill file before the next one is started
+   */
+  TieredRowQueue(int hotCapacity, int segmentRows, File spillDir, int maxRows,
+      OverflowPolicy overflowPolicy, long blockTimeoutMs, long spillFileSize) {
+    if (hotCapacity <= 0 || segmentRows <= 0 || Integer.bitCount(segmentRows) != 1
+        || hotCapacity > (1 << 28) || maxRows <= 0 || overflowPolicy == null || blockTimeoutMs < 0
+        || spillFileSize <= 0) {
+      throw new IllegalArgumentException();
+    }
+    m_maxRows = maxRows;
+    m_overflowPolicy = overflowPolicy;
+    m_blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMs);
+    m_segmentRows = segmentRows;
+    m_segmentShift = Integer.numberOfTrailingZeros(segmentRows);
+    m_hotCapacity = (hotCapacity + segmentRows - 1) & -segmentRows;
+    // Two extra segments of slots: one being spilled, one being filled
+    int slots = Integer.highestOneBit(m_hotCapacity + 2 * segmentRows - 1) << 1;
+    m_mask = slots - 1;
+    m_index = new AtomicLongArray(slots);
+    m_stamps = new AtomicLongArray(slots);
+    m_arrivals = new AtomicLongArray(slots);
+    m_rowOffsets = new int[segmentRows];
+
+    m_spillDir = spillDir;
+    m_spillFileSize = spillFileSize;
+    SpillFile spillFile;
+    try {
+      spillFile = new SpillFile(spillDir);
+    } catch (IOException e) {
+      throw new CliException("Unable to create spill file for query results", e);
+    }
+    m_spillFiles.add(spillFile);
+    m_spiller = Executors.newSingleThreadExecutor(r -> {
+      Thread thread = new Thread(r, "result-spill-" + spillFile.m_file.getName());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  public List<byte[]> get(int start, int end) {
+    long head = effectiveHead();
+    return get(head, start, Math.min(end, size(head) - 1), null);
+  }
+
+  public byte[] get(int index) {
+    long head = effectiveHead();
+    if (index >= 0 && index < size(head)) {
+      byte[] row = read(head + index);
+      if (row != null) {
+        return row;
+      }
+    }
+    throw new CliException("OutOfBoundaryError");
+  }
+
+  /**
+   * @return position in the whole stream of the oldest row still in the queue
+   */
+  public long getHeadPosition() {
+    return effectiveHead();
+  }
+
+  /**
+   * @return position in the whole stream of the next row to be added
+   */
+  public long getTailPosition() {
+    return m_tail.get();
+  }
+
+  /**
+   * Adds up to maxRows rows, from the given position in the whole stream on, to rows. Reading starts at the
+   * head instead if the row at the position was dropped or consumed. A row that can't be read back is added
+   * as null, so rows stay in step with positions.
+   * @return position of the first row added
+   */
+  public long getFrom(long position, int maxRows, List<byte[]> rows) {
+    long head = effectiveHead();
+    long start = Math.max(position, head);
+    long end = Math.min(start + Math.max(maxRows, 0), head + size(head));
+    for (long seq = start; seq < end; seq++) {
+      rows.add(read(seq));
+    }
+    return start;
+  }
+
+  /**
+   * @return the row at the given position in the whole stream, or null if it isn't in the queue
+   */
+  public byte[] getAt(long position) {
+    long head = effectiveHead();
+    return position >= head && position < head + size(head) ? read(position) : null;
+  }
+
+  /**
+   * Every row is stamped when it is added, so views can tell how long rows took from being captured to
+   * being shown. The stamps are kept with the rows in memory and are lost when a row's slot is reused.
+   * @return when the row at the given position in the whole stream was added, from System.nanoTime, or -1
+   * if that is no longer known
+   */
+  public long getArrivalNanos(long position) {
+    int idx = (int) position & m_mask;
+    if (m_stamps.get(idx) != position + 1) {
+      return -1;
+    }
+    long arrivalNanos = m_arrivals.get(idx);
+    // The slot may have been taken over by a newer row in the meantime
+    return m_stamps.get(idx) == position + 1 ? arrivalNanos : -1;
+  }
+
+  /**
+   * @return false if the row was dropped because the queue is full
+   */
+  public boolean add(byte[] row) {
+    if (row == null) {
+      throw new IllegalArgumentException();
+    }
+    return append(null, row, 1) == 1;
+  }
+
+  /**
+   * Adds the rows in order, claiming their sequences in one step and waking the reader once.
+   * @return number of rows added, the rest were dropped because the queue is full
+   */
+  public int addAll(List<byte[]> rows) {
+    for (byte[] row : rows) {
+      if (row == null) {
+        throw new IllegalArgumentException();
+      }
+    }
+    return append(rows, null, rows.size());
+  }
+
+  /**
+   * Remove all element before 'end', and return elements between 'start' and 'end'
+   */
+  public List<byte[]> consume(int start, int end) {
+    return consume(start, end, null);
+  }
+
+  /**
+   * Same as consume, and sets arrivalNanos[i] to when the i-th row returned was added, see getArrivalNanos.
+   * Rows past the end of arrivalNanos, which may be null, get no stamp.
+   */
+  public List<byte[]> consume(int start, int end, long[] arrivalNanos) {
+    long head = effectiveHead();
+    int upperBound = Math.min(end, size(head) - 1);
+    List<byte[]> rets = get(head, start, upperBound, arrivalNanos);
+    if (upperBound >= 0) {
+      advanceHead(head + upperBound + 1);
+      recordWaitTimes(head, head + upperBound + 1);
+    }
+    return rets;
+  }
+
+  /**
+   * Removes all rows up to and including end, and returns every step-th of them. Rows are picked by their
+   * position in the whole stream, so consecutive calls sample it evenly. The others are dropped unread.
+   */
+  public List<byte[]> consumeSample(int end, int step) {
+    return consumeSample(end, step, null);
+  }
+
+  /**
+   * Same as consumeSample, and sets arrivalNanos[i] to when the i-th row returned was added, see
+   * getArrivalNanos. Rows past the end of arrivalNanos, which may be null, get no stamp.
+   */
+  public List<byte[]> consumeSample(int end, int step, long[] arrivalNanos) {
+    if (step <= 0) {
+      throw new IllegalArgumentException();
+    }
+    long head = effectiveHead();
+    long last = head + Math.min(end, size(head) - 1);
+    List<byte[]> rets = new ArrayList<>();
+    for (long seq = head + Math.floorMod(-head, (long) step); seq <= last; seq += step) {
+      byte[] row = read(seq);
+      if (row != null) {
+        if (arrivalNanos != null && rets.size() < arrivalNanos.length) {
+          arrivalNanos[rets.size()] = getArrivalNanos(seq);
+        }
+        rets.add(row);
+      }
+    }
+    if (last >= head) {
+      advanceHead(last + 1);
+      recordWaitTimes(head, last + 1);
+    }
+    return rets;
+  }
+
+  /**
+   * Removes all rows up to and including end without reading them.
+   * @return number of rows removed
+   */
+  public int discard(int end) {
+    long head = effectiveHead();
+    int upperBound = Math.min(end, size(head) - 1);
+    if (upperBound < 0) {
+      return 0;
+    }
+    advanceHead(head + upperBound + 1);
+    recordWaitTimes(head, head + upperBound + 1);
+    return upperBound + 1;
+  }
+
+  public int getSize() {
+    return size(effectiveHead());
+  }
+
+  /**
+   * Waits until the queue has rows, the timeout expires or the calling thread is interrupted.
+   * Producers wake the waiting reader once per add or addAll.
+   * @return true if the queue has rows
+   */
+  public boolean awaitRows(long timeout, TimeUnit unit) {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    m_reader = Thread.currentThread();
+    try {
+      while (getSize() == 0) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0 || m_closed || Thread.currentThread().isInterrupted()) {
+          return false;
+        }
+        LockSupport.parkNanos(this, remaining);
+      }
+      return true;
+    } finally {
+      m_reader = null;
+    }
+  }
+
+  /**
+   * @return rows offered to the queue so far, kept or dropped
+   */
+  public long getOfferedRows() {
+    // Rows dropped to make room for newer ones were counted in the tail when they were added
+    long tail = m_tail.get();
+    return m_overflowPolicy == OverflowPolicy.DROP_OLDEST ? tail : tail + m_droppedRows.sum();
+  }
+
+  /**
+   * @return how long rows waited between being added and being consumed, in nanoseconds, from a sample
+   * of the rows
+   */
+  public LatencyHistogram getWaitTimes() {
+    return m_waitTimes;
+  }
+
+  /**
+   * @return rows dropped by the overflow policy so far
+   */
+  public long getDroppedRows() {
+    return m_droppedRows.sum();
+  }
+
+  /**
+   * @return total time producers spent waiting for room under {@link OverflowPolicy#BLOCK}
+   */
+  public long getBlockedTimeMs() {
+    return TimeUnit.NANOSECONDS.toMillis(m_blockedNanos.sum());
+  }
+
+  /**
+   * @return bytes of direct memory held by the hot tier
+   */
+  public long getOffHeapBytes() {
+    synchronized (m_slabLock) {
+      return m_offHeapBytes;
+    }
+  }
+
+  public void clear() {
+    advanceHead(m_tail.get());
+  }
+
+  /**
+   * Stops spilling and deletes the spill files. Rows can't be read afterwards, and rows added by producers
+   * still running are dropped.
+   */
+  public void close() {
+    m_closed = true;
+    // The spill thread gives up on the segment it is on as soon as it sees the flag, so the files are
+    // only deleted once it is done with them. Not interrupted, as that would close the file under it.
+    m_spiller.shutdown();
+    boolean interrupted = false;
+    while (true) {
+      try {
+        if (m_spiller.awaitTermination(1, TimeUnit.SECONDS)) {
+          break;
+        }
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    m_window = null;
+    synchronized (m_spillFiles) {
+      m_spillFiles.forEach(SpillFile::delete);
+      m_spillFiles.clear();
+    }
+  }
+
+  private List<byte[]> get(long head, int start, int upperBound, long[] arrivalNanos) {
+    int lowerBound = Math.max(start, 0);
+    List<byte[]> rets = new ArrayList<>(Math.max(upperBound - lowerBound + 1, 0));
+    for (int i = lowerBound; i <= upperBound; i++) {
+      byte[] row = read(head + i);
+      if (row != null) {
+        if (arrivalNanos != null && rets.size() < arrivalNanos.length) {
+          arrivalNanos[rets.size()] = getArrivalNanos(head + i);
+        }
+        rets.add(row);
+      }
+    }
+    return rets;
+  }
+
+  /**
+   * Records the wait times of the sampled rows between from (inclusive) and to, which were just consumed.
+   * Rows too far back to still have their slot are skipped.
+   */
+  private void recordWaitTimes(long from, long to) {
+    long now = System.nanoTime();
+    long interval = 1L << WAIT_SAMPLE_SHIFT;
+    long first = Math.max(from, to - interval * WAIT_SAMPLE_SLOTS);
+    for (long seq = (first + interval - 1) & -interval; seq < to; seq += interval) {
+      int slot = (int) (seq >>> WAIT_SAMPLE_SHIFT) & (WAIT_SAMPLE_SLOTS - 1);
+      if (m_waitSampleSeqs.get(slot) == seq + 1) {
+        long arrivalNanos = m_waitSampleNanos.get(slot);
+        // The slot may have been taken over by a newer row in the meantime
+        if (m_waitSampleSeqs.get(slot) == seq + 1) {
+          m_waitTimes.record(now - arrivalNanos);
+        }
+      }
+    }
+  }
+
+  private int size(long head) {
+    return (int) Math.max(Math.min(m_tail.get() - head, m_maxRows), 0);
+  }
+
+  private long effectiveHead() {
+    return Math.max(m_head.get(), m_tail.get() - m_maxRows);
+  }
+
+  /**
+   * Moves the head forward to target unless it is already past it.
+   * @return number of rows the head moved over
+   */
+  private long advanceHead(long target) {
+    long head = m_head.get();
+    while (head < target) {
+      if (m_head.compareAndSet(head, target)) {
+        return target - head;
+      }
+      head = m_head.get();
+    }
+    return 0;
+  }
+
+  /**
+   * Claims sequences for count rows, taken from rows or, if it's null, the single row, and publishes
+   * them. Under DROP_NEWEST and BLOCK as many rows are claimed at once as the queue has room for;
+   * BLOCK waits for the consumer to make room for the rest until the timeout expires.
+   */
+  private int append(List<byte[]> rows, byte[] row, int count) {
+    if (count == 0) {
+      return 0;
+    }
+    int added = 0;
+    // One stamp for all the rows added together
+    long arrivalNanos = System.nanoTime();
+    if (m_overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+      long seq = m_tail.getAndAdd(count);
+      for (; added < count; added++) {
+        if (!publish(seq + added, rows == null ? row : rows.get(added), arrivalNanos)) {
+          return added;
+        }
+      }
+      m_droppedRows.add(advanceHead(seq + count - m_maxRows));
+    } else {
+      long blockedSince = 0;
+      try {
+        while (added < count) {
+          long tail = m_tail.get();
+          int claimed = (int) Math.min(count - added, m_maxRows - (tail - m_head.get()));
+          if (claimed > 0) {
+            if (m_tail.compareAndSet(tail, tail + claimed)) {
+              for (int i = 0; i < claimed; i++) {
+                if (!publish(tail + i, rows == null ? row : rows.get(added + i), arrivalNanos)) {
+                  return added + i;
+                }
+              }
+              added += claimed;
+            }
+            continue;
+          }
+          if (m_overflowPolicy != OverflowPolicy.BLOCK || m_closed) {
+            break;
+          }
+          long now = System.nanoTime();
+          if (blockedSince == 0) {
+            blockedSince = now;
+          } else if (now - blockedSince >= m_blockTimeoutNanos || Thread.currentThread().isInterrupted()) {
+            break;
+          }
+          LockSupport.parkNanos(100_000L);
+        }
+      } finally {
+        if (blockedSince != 0) {
+          m_blockedNanos.add(System.nanoTime() - blockedSince);
+        }
+      }
+      m_droppedRows.add(count - added);
+    }
+    Thread reader = m_reader;
+    if (reader != null) {
+      LockSupport.unpark(reader);
+    }
+    return added;
+  }
+
+  /**
+   * Writes the row claimed with the given sequence into the hot tier.
+   * @return false if the queue was closed in the meantime
+   */
+  private boolean publish(long seq, byte[] row, long arrivalNanos) {
+    if (m_closed) {
+      return false;
+    }
+    int idx = (int) seq & m_mask;
+
+    // The previous owner of the slot must be published and spilled before it can be reused
+    long prevLap = seq - m_stamps.length();
+    while (m_stamps.get(idx) < prevLap + 1 || m_spilled <= prevLap) {
+      if (m_closed) {
+        return false;
+      }
+      LockSupport.parkNanos(100_000L);
+    }
+    Slab slab = slabFor(ROW_LENGTH_PREFIX + row.length);
+    if (slab == null) {
+      return false;
+    }
+    int offset = slab.m_position;
+    slab.m_writeView.putInt(offset, row.length);
+    slab.m_writeView.position(offset + ROW_LENGTH_PREFIX);
+    slab.m_writeView.put(row);
+    slab.m_position = slab.m_writeView.position();
+    slab.m_lastSeq = seq;
+
+    m_stamps.set(idx, -(seq + 1));
+    m_index.lazySet(idx, ((long) slab.m_id << 32) | offset);
+    m_arrivals.lazySet(idx, arrivalNanos);
+    m_stamps.lazySet(idx, seq + 1);
+
+    if ((seq & ((1 << WAIT_SAMPLE_SHIFT) - 1)) == 0) {
+      int slot = (int) (seq >>> WAIT_SAMPLE_SHIFT) & (WAIT_SAMPLE_SLOTS - 1);
+      m_waitSampleNanos.set(slot, System.nanoTime());
+      m_waitSampleSeqs.set(slot, seq + 1);
+    }
+
+    if (((seq + 1) & (m_segmentRows - 1)) == 0 && seq + 1 >= m_hotCapacity + m_segmentRows) {
+      try {
+        m_spiller.execute(m_spillTask);
+      } catch (RejectedExecutionException e) {
+        // closed
+      }
+    }
+    return true;
+  }
+
+  private byte[] read(long seq) {
+    while (true) {
+      if (seq < m_spilled) {
+        return readSpilled(seq);
+      }
+      ByteBuffer payload = locateHot(seq, false);
+      if (payload != null) {
+        byte[] row = new byte[payload.remaining()];
+        payload.get(row);
+        // Like a seqlock: the slab can only have been recycled under us if the row got spilled
+        if (m_spilled <= seq) {
+          return row;
+        }
+      }
+      // The slot or slab was reused, so the row has been spilled in the meantime
+    }
+  }
+
+  /**
+   * Waits for the row to be published and returns a view of its slab positioned on the payload.
+   * Returns null if the slot was already reused, or to the spill thread once the queue is closed, as
+   * the producer that claimed the row may never publish it. The consumer and the spill thread use
+   * separate views.
+   */
+  private ByteBuffer locateHot(long seq, boolean forSpill) {
+    int idx = (int) seq & m_mask;
+    long published = seq + 1;
+    while (true) {
+      long stamp = m_stamps.get(idx);
+      if (stamp == published) {
+        long entry = m_index.get(idx);
+        if (m_stamps.get(idx) != published) {
+          return null;
+        }
+        Slab slab = m_slabs[(int) (entry >>> 32)];
+        ByteBuffer view = forSpill ? slab.m_spillView : slab.m_readView;
+        int offset = (int) entry;
+        view.limit(view.capacity());
+        int length = view.getInt(offset);
+        if (length < 0 || length > view.capacity() - offset - ROW_LENGTH_PREFIX) {
+          // Recycled slab, caller will notice
+          return null;
+        }
+        view.position(offset + ROW_LENGTH_PREFIX);
+        view.limit(offset + ROW_LENGTH_PREFIX + length);
+        return view;
+      }
+      if (stamp > published || stamp < -published || (forSpill && m_closed)) {
+        return null;
+      }
+      Thread.yield();
+    }
+  }
+
+  // -- off-heap arena ----------------------------------------------------------
+
+  /**
+   * Returns the calling producer's slab, switching to another one if the row doesn't fit.
+   * @return null if the queue was closed, in which case no slab is handed out anymore
+   */
+  private Slab slabFor(int size) {
+    Slab slab = m_currentSlab.get();
+    if (slab != null && slab.m_buffer.capacity() - slab.m_position >= size) {
+      return slab;
+    }
+    synchronized (m_slabLock) {
+      if (m_closed) {
+        return null;
+      }
+      if (slab != null) {
+        m_retiredSlabs.addLast(slab);
+      }
+      slab = null;
+      long spilled = m_spilled;
+      Iterator<Slab> iterator = m_retiredSlabs.iterator();
+      while (iterator.hasNext()) {
+        Slab retired = iterator.next();
+        if (retired.m_lastSeq < spilled && retired.m_buffer.capacity() >= size) {
+          iterator.remove();
+          retired.m_position = 0;
+          slab = retired;
+          break;
+        }
+      }
+      if (slab == null) {
+        slab = new Slab(m_slabCount++, Math.max(SLAB_SIZE, size));
+        if (slab.m_id >= m_slabs.length) {
+          m_slabs = Arrays.copyOf(m_slabs, m_slabs.length * 2);
+        }
+        m_slabs[slab.m_id] = slab;
+        m_offHeapBytes += slab.m_buffer.capacity();
+      }
+    }
+    m_currentSlab.set(slab);
+    return slab;
+  }
+
+  private static final class Slab {
+    final int m_id;
+    final ByteBuffer m_buffer;
+    final ByteBuffer m_writeView;
+    final ByteBuffer m_readView;
+    final ByteBuffer m_spillView;
+    // Owned by the producer thread the slab is handed to
+    int m_position;
+    long m_lastSeq = -1;
+
+    Slab(int id, int size) {
+      m_id = id;
+      m_buffer = ByteBuffer.allocateDirect(size);
+      m_writeView = m_buffer.duplicate();
+      m_readView = m_buffer.duplicate();
+      m_spillView = m_buffer.duplicate();
+    }
+  }
+
+  // -- cold tier ---------------------------------------------------------------
+
+  private void spillReadySegments() {
+    while (!m_closed && m_tail.get() - m_spilled >= m_hotCapacity + m_segmentRows) {
+      long start = m_spilled;
+      long segment = start >> m_segmentShift;
+      SegmentIndex index = m_segments;
+      if (segment - index.m_base >= index.m_offsets.length) {
+        index = trimSegmentIndex(index, segment);
+      }
+      int entry = (int) (segment - index.m_base);
+      index.m_offsets[entry] = -1;
+      if (start + m_segmentRows > effectiveHead()) {
+        try {
+          writeSegment(index, entry, start);
+        } catch (IOException e) {
+          // Closing the queue stops a segment being written
+          if (!m_closed) {
+            LOG.error("Error while spilling query results. Rows are lost.", e);
+          }
+          index.m_offsets[entry] = -1;
+        }
+      }
+      m_spilled = start + m_segmentRows;
+    }
+    if (deleteConsumedSpillFiles()) {
+      trimSegmentIndex(m_segments, (m_spilled >> m_segmentShift) - 1);
+    }
+  }
+
+  private void writeSegment(SegmentIndex index, int entry, long start) throws IOException {
+    SpillFile file = spillFileFor(start);
+    long offset = file.m_size;
+    int rawLength = 0;
+    m_deflater.reset();
+    for (long seq = start; seq < start + m_segmentRows; seq++) {
+      // Rows being spilled can't be overwritten, so the view is always there
+      ByteBuffer payload = locateHot(seq, true);
+      if (payload == null) {
+        throw new ClosedChannelException();
+      }
+      int length = payload.remaining();
+      if (m_spillRow.length < length) {
+        m_spillRow = new byte[Math.max(length, m_spillRow.length * 2)];
+      }
+      payload.get(m_spillRow, 0, length);
+      putInt(m_lengthPrefix, 0, length);
+      deflate(file, m_lengthPrefix, m_lengthPrefix.length);
+      deflate(file, m_spillRow, length);
+      rawLength += ROW_LENGTH_PREFIX + length;
+    }
+    m_deflater.finish();
+    while (!m_deflater.finished()) {
+      drainDeflater(file);
+    }
+    file.m_endSeq = start + m_segmentRows;
+    index.m_lengths[entry] = (int) (file.m_size - offset);
+    index.m_rawLengths[entry] = rawLength;
+    index.m_files[entry] = file;
+    index.m_offsets[entry] = offset;
+  }
+
+  /**
+   * Publishes a copy of the index that starts at the segment of the head and has room for segments up to
+   * and including last, and about as many again. Segments before the head are
+   * dropped with their files.
+   */
+  private SegmentIndex trimSegmentIndex(SegmentIndex index, long last) {
+    long base = Math.max(index.m_base, Math.min(effectiveHead() >> m_segmentShift, last));
+    int live = (int) (last - base + 1);
+    SegmentIndex trimmed = new SegmentIndex(base, Math.max(16, Integer.highestOneBit(Math.max(live, 1)) << 1),
+        index);
+    m_segments = trimmed;
+    return trimmed;
+  }
+
+  /**
+   * Returns the file to append the segment starting at start to. A new file is started once the last one
+   * is full, or once all of its rows were consumed so that it can be deleted.
+   */
+  private SpillFile spillFileFor(long start) throws IOException {
+    SpillFile file;
+    synchronized (m_spillFiles) {
+      file = m_spillFiles.peekLast();
+    }
+    if (file != null && file.m_size < m_spillFileSize && (file.m_size == 0 || file.m_endSeq > effectiveHead())) {
+      return file;
+    }
+    file = new SpillFile(m_spillDir);
+    synchronized (m_spillFiles) {
+      if (m_closed) {
+        file.delete();
+        throw new ClosedChannelException();
+      }
+      m_spillFiles.addLast(file);
+    }
+    return file;
+  }
+
+  /**
+   * Deletes the spill files all of whose rows are behind the head, except the one being appended to.
+   * The reader may still have one of them mapped, which stays readable until it is unmapped.
+   * @return true if a file was deleted
+   */
+  private boolean deleteConsumedSpillFiles() {
+    long head = effectiveHead();
+    boolean deleted = false;
+    synchronized (m_spillFiles) {
+      while (m_spillFiles.size() > 1 && m_spillFiles.peekFirst().m_endSeq <= head) {
+        m_spillFiles.pollFirst().delete();
+        deleted = true;
+      }
+    }
+    return deleted;
+  }
+
+  private void deflate(SpillFile file, byte[] bytes, int length) throws IOException {
+    m_deflater.setInput(bytes, 0, length);
+    while (!m_deflater.needsInput()) {
+      drainDeflater(file);
+    }
+  }
+
+  private void drainDeflater(SpillFile file) throws IOException {
+    int length = m_deflater.deflate(m_deflateBuffer);
+    ByteBuffer buffer = ByteBuffer.wrap(m_deflateBuffer, 0, length);
+    while (buffer.hasRemaining()) {
+      file.m_size += file.m_channel.write(buffer, file.m_size);
+    }
+  }
+
+  /**
+   * @return number of segments the index has room for, for tests
+   */
+  int getSegmentIndexLength() {
+    return m_segments.m_offsets.length;
+  }
+
+  private byte[] readSpilled(long seq) {
+    long segment = seq >> m_segmentShift;
+    if (segment != m_cachedSegment) {
+      // Read after m_spilled, so it holds the segment unless that was dropped for being behind the head
+      SegmentIndex index = m_segments;
+      int entry = (int) (segment - index.m_base);
+      if (segment < index.m_base || entry >= index.m_offsets.length || index.m_offsets[entry] < 0) {
+        return null;
+      }
+      try {
+        loadSegment(index, entry, segment);
+      } catch (IOException | DataFormatException e) {
+        // Unless its file was deleted because the head moved past the row meanwhile
+        if (seq >= effectiveHead() && !m_closed) {
+          LOG.error("Error while reading spilled query results", e);
+        }
+        return null;
+      }
+    }
+    int rowOffset = m_rowOffsets[(int) seq & (m_segmentRows - 1)];
+    int length = getInt(m_segmentData, rowOffset - ROW_LENGTH_PREFIX);
+    return Arrays.copyOfRange(m_segmentData, rowOffset, rowOffset + length);
+  }
+
+  private void loadSegment(SegmentIndex index, int entry, long segment) throws IOException, DataFormatException {
+    SpillFile file = index.m_files[entry];
+    long offset = index.m_offsets[entry];
+    int length = index.m_lengths[entry];
+    int rawLength = index.m_rawLengths[entry];
+
+    if (m_window == null || file != m_windowFile || offset < m_windowStart
+        || offset + length > m_windowStart + m_window.capacity()) {
+      long mapSize = Math.max(length, Math.min(MAPPED_WINDOW_SIZE, file.m_channel.size() - offset));
+      m_window = file.m_channel.map(FileChannel.MapMode.READ_ONLY, offset, mapSize);
+      m_windowFile = file;
+      m_windowStart = offset;
+    }
+    if (m_compressed.length < length) {
+      m_compressed = new byte[length];
+    }
+    ByteBuffer source = m_window.duplicate();
+    source.position((int) (offset - m_windowStart));
+    source.get(m_compressed, 0, length);
+
+    if (m_segmentData.length < rawLength) {
+      m_segmentData = new byte[rawLength];
+    }
+    m_cachedSegment = -1;
+    m_inflater.reset();
+    m_inflater.setInput(m_compressed, 0, length);
+    int inflated = 0;
+    while (inflated < rawLength && !m_inflater.finished()) {
+      inflated += m_inflater.inflate(m_segmentData, inflated, rawLength - inflated);
+    }
+
+    int position = 0;
+    for (int i = 0; i < m_segmentRows; i++) {
+      m_rowOffsets[i] = position + ROW_LENGTH_PREFIX;
+      position += ROW_LENGTH_PREFIX + getInt(m_segmentData, position);
+    }
+    m_cachedSegment = segment;
+  }
+
+  /**
+   * Where the spilled segments from base on are, by segment - base. Offset is -1 for segments that were
+   * never written, and for entries past the last segment spilled.
+   */
+  private static final class SegmentIndex {
+    final long m_base;
+    final SpillFile[] m_files;
+    final long[] m_offsets;
+    final int[] m_lengths;
+    final int[] m_rawLengths;
+
+    /**
+     * @param from index to copy the entries from base on of, or null
+     */
+    SegmentIndex(long base, int length, SegmentIndex from) {
+      m_base = base;
+      m_files = new SpillFile[length];
+      m_offsets = new long[length];
+      m_lengths = new int[length];
+      m_rawLengths = new int[length];
+      Arrays.fill(m_offsets, -1);
+      if (from != null && base - from.m_base < from.m_offsets.length) {
+        int skipped = (int) (base - from.m_base);
+        int copied = Math.min(from.m_offsets.length - skipped, length);
+        System.arraycopy(from.m_files, skipped, m_files, 0, copied);
+        System.arraycopy(from.m_offsets, skipped, m_offsets, 0, copied);
+        System.arraycopy(from.m_lengths, skipped, m_lengths, 0, copied);
+        System.arraycopy(from.m_rawLengths, skipped, m_rawLengths, 0, copied);
+      }
+    }
+  }
+
+  private static final class SpillFile {
+    final File m_file;
+    final FileChannel m_channel;
+    // Written by the spill thread only
+    long m_size;
+    // Sequence after the last row written to the file
+    long m_endSeq;
+
+    SpillFile(File dir) throws IOException {
+      m_file = File.createTempFile("samza-sql-shell-result-", ".seg", dir);
+      m_file.deleteOnExit();
+      m_channel = new RandomAccessFile(m_file, "rw").getChannel();
+    }
+
+    void delete() {
+      try {
+        m_channel.close();
+      } catch (IOException e) {
+        LOG.warn("Error while closing spill file " + m_file, e);
+      }
+      if (!m_file.delete()) {
+        LOG.warn("Unable to delete spill file " + m_file);
+      }
+    }
+  }
+
+  private static void putInt(byte[] bytes, int offset, int value) {
+    bytes[offset] = (byte) (value >>> 24);
+    bytes[offset + 1] = (byte) (value >>> 16);
+    bytes[offset + 2] = (byte) (value >>> 8);
+    bytes[offset + 3] = (byte) value;
+  }
+
+  private static int getInt(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+        | (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+  }
+}
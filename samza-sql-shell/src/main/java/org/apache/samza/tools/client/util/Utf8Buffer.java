@@ -0,0 +1,208 @@
+package org.apache.samza.tools.client.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * Growable UTF-8 byte buffer for output going to the terminal. Text is encoded as it is appended, and
+ * UTF-8 payloads are copied as they are after being validated, so no String is made of them.
+ *
+ * Payloads are made safe to print: control characters, C0 and C1 alike, are written as JSON style \\u00XX escapes
+ * so rows can't move the cursor or change the terminal's state, and malformed sequences become U+FFFD.
+ */
+public class Utf8Buffer implements Appendable {
+    private static final byte[] REPLACEMENT = {(byte) 0xEF, (byte) 0xBF, (byte) 0xBD};
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] m_bytes;
+    private int m_length;
+
+    public Utf8Buffer(int capacity) {
+        m_bytes = new byte[Math.max(capacity, 16)];
+    }
+
+    public void clear() {
+        m_length = 0;
+    }
+
+    public int length() {
+        return m_length;
+    }
+
+    @Override
+    public Utf8Buffer append(CharSequence text) {
+        return append(text, 0, text.length());
+    }
+
+    /**
+     * Appends the text encoded as UTF-8, without escaping anything. Unpaired surrogates become U+FFFD.
+     */
+    @Override
+    public Utf8Buffer append(CharSequence text, int start, int end) {
+        ensureCapacity(m_length + end - start);
+        int i = start;
+        // ASCII fast path
+        while (i < end) {
+            char c = text.charAt(i);
+            if (c >= 0x80)
+                break;
+            m_bytes[m_length++] = (byte) c;
+            i++;
+        }
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            ensureCapacity(m_length + 4);
+            if (c < 0x80) {
+                m_bytes[m_length++] = (byte) c;
+            } else if (c < 0x800) {
+                m_bytes[m_length++] = (byte) (0xC0 | (c >> 6));
+                m_bytes[m_length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                m_bytes[m_length++] = (byte) (0xF0 | (codePoint >> 18));
+                m_bytes[m_length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                m_bytes[m_length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                m_bytes[m_length++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                appendReplacement();
+            } else {
+                m_bytes[m_length++] = (byte) (0xE0 | (c >> 12));
+                m_bytes[m_length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                m_bytes[m_length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public Utf8Buffer append(char c) {
+        if (c < 0x80) {
+            ensureCapacity(m_length + 1);
+            m_bytes[m_length++] = (byte) c;
+            return this;
+        }
+        return append(String.valueOf(c));
+    }
+
+    /**
+     * Appends a UTF-8 payload, escaping control characters and replacing malformed sequences.
+     */
+    public Utf8Buffer appendEscaped(byte[] utf8) {
+        ensureCapacity(m_length + utf8.length);
+        int i = 0;
+        while (i < utf8.length) {
+            // Copy runs of printable ASCII in one go
+            int start = i;
+            while (i < utf8.length && utf8[i] >= 0x20 && utf8[i] < 0x7F) {
+                i++;
+            }
+            if (i > start) {
+                ensureCapacity(m_length + i - start);
+                System.arraycopy(utf8, start, m_bytes, m_length, i - start);
+                m_length += i - start;
+            }
+            if (i == utf8.length)
+                break;
+
+            int b = utf8[i] & 0xFF;
+            if (b < 0x80) {
+                appendControlEscape(b);
+                i++;
+            } else {
+                i = appendSequence(utf8, i);
+            }
+        }
+        return this;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(m_bytes, 0, m_length);
+    }
+
+    @Override
+    public String toString() {
+        return new String(m_bytes, 0, m_length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copies the multi-byte sequence starting at i if it is well-formed, otherwise appends U+FFFD for its
+     * longest well-formed prefix.
+     * @return where the next sequence starts
+     */
+    private int appendSequence(byte[] src, int i) {
+        int b0 = src[i] & 0xFF;
+        int length;
+        // Bounds of the second byte, which rule out overlong forms, surrogates and code points above U+10FFFF
+        int min = 0x80;
+        int max = 0xBF;
+        if (b0 >= 0xC2 && b0 <= 0xDF) {
+            length = 2;
+        } else if (b0 >= 0xE0 && b0 <= 0xEF) {
+            length = 3;
+            if (b0 == 0xE0) {
+                min = 0xA0;
+            } else if (b0 == 0xED) {
+                max = 0x9F;
+            }
+        } else if (b0 >= 0xF0 && b0 <= 0xF4) {
+            length = 4;
+            if (b0 == 0xF0) {
+                min = 0x90;
+            } else if (b0 == 0xF4) {
+                max = 0x8F;
+            }
+        } else {
+            appendReplacement();
+            return i + 1;
+        }
+
+        for (int k = 1; k < length; k++) {
+            if (i + k >= src.length) {
+                appendReplacement();
+                return i + k;
+            }
+            int b = src[i + k] & 0xFF;
+            if (b < min || b > max) {
+                appendReplacement();
+                return i + k;
+            }
+            min = 0x80;
+            max = 0xBF;
+        }
+
+        if (b0 == 0xC2 && (src[i + 1] & 0xFF) < 0xA0) {
+            // C1 control character
+            appendControlEscape(src[i + 1] & 0xFF);
+        } else {
+            ensureCapacity(m_length + length);
+            System.arraycopy(src, i, m_bytes, m_length, length);
+            m_length += length;
+        }
+        return i + length;
+    }
+
+    private void appendControlEscape(int c) {
+        ensureCapacity(m_length + 6);
+        m_bytes[m_length++] = '\\';
+        m_bytes[m_length++] = 'u';
+        m_bytes[m_length++] = '0';
+        m_bytes[m_length++] = '0';
+        m_bytes[m_length++] = HEX_DIGITS[c >> 4];
+        m_bytes[m_length++] = HEX_DIGITS[c & 0xF];
+    }
+
+    private void appendReplacement() {
+        ensureCapacity(m_length + REPLACEMENT.length);
+        System.arraycopy(REPLACEMENT, 0, m_bytes, m_length, REPLACEMENT.length);
+        m_length += REPLACEMENT.length;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > m_bytes.length) {
+            m_bytes = Arrays.copyOf(m_bytes, Math.max(capacity, m_bytes.length * 2));
+        }
+    }
+}
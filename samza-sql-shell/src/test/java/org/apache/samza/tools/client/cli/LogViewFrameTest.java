@@ -0,0 +1,128 @@
+package org.apache.samza.tools.client.cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.samza.tools.client.interfaces.QueryResultRow;
+import org.jline.terminal.impl.DumbTerminal;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class LogViewFrameTest {
+    private final ByteArrayOutputStream m_output = new ByteArrayOutputStream();
+
+    @Test
+    public void testSkippedLineTakesAVisibleLine() throws IOException {
+        LogViewFrame frame = new LogViewFrame(terminal());
+        frame.begin();
+        Assert.assertEquals(3, frame.appendRows(rows(10), 0, 4, 5));
+        frame.write();
+        String[] lines = output().split("\n");
+        Assert.assertEquals(4, lines.length);
+        Assert.assertTrue(lines[0].contains("... 7 rows skipped ..."));
+        Assert.assertEquals("row 7", lines[1]);
+        Assert.assertEquals("row 9", lines[3]);
+    }
+
+    @Test
+    public void testRowsSkippedBeforeLeaveRoomForTheLine() throws IOException {
+        LogViewFrame frame = new LogViewFrame(terminal());
+        frame.begin();
+        Assert.assertEquals(3, frame.appendRows(rows(4), 6, 4, 5));
+        frame.write();
+        String[] lines = output().split("\n");
+        Assert.assertEquals(4, lines.length);
+        Assert.assertTrue(lines[0].contains("... 7 rows skipped ..."));
+        Assert.assertEquals("row 1", lines[1]);
+    }
+
+    @Test
+    public void testRowsOfSeveralLinesSkipOthers() throws IOException {
+        List<QueryResultRow> rows = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            String[] line = {"row " + i + "\nmore"};
+            rows.add(() -> line);
+        }
+        LogViewFrame frame = new LogViewFrame(terminal());
+        frame.begin();
+        Assert.assertEquals(1, frame.appendRows(rows, 0, 4, 5));
+        frame.write();
+        String[] lines = output().split("\n");
+        Assert.assertEquals(3, lines.length);
+        Assert.assertTrue(lines[0].contains("... 2 rows skipped ..."));
+        Assert.assertEquals("row 2", lines[1]);
+    }
+
+    @Test
+    public void testAllRowsFit() throws IOException {
+        LogViewFrame frame = new LogViewFrame(terminal());
+        frame.begin();
+        Assert.assertEquals(4, frame.appendRows(rows(4), 0, 4, 5));
+        frame.write();
+        Assert.assertEquals("row 0\nrow 1\nrow 2\nrow 3\n", output());
+    }
+
+    @Test
+    public void testOnlyRowsDrawnAreFormatted() throws IOException {
+        AtomicInteger formatted = new AtomicInteger();
+        List<QueryResultRow> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            String[] line = {"row " + i};
+            rows.add(() -> {
+                formatted.incrementAndGet();
+                return line;
+            });
+        }
+        LogViewFrame frame = new LogViewFrame(terminal());
+        frame.begin();
+        Assert.assertEquals(3, frame.appendRows(rows, 0, 4, 5));
+        Assert.assertEquals(3, formatted.get());
+    }
+
+    @Test
+    public void testPayloadsAreCopiedWithoutFormatting() throws IOException {
+        List<QueryResultRow> rows = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            byte[] payload = ("{\"name\":\"Gr\u00fcn " + i + "\"}").getBytes(StandardCharsets.UTF_8);
+            rows.add(new QueryResultRow() {
+                @Override
+                public String[] format() {
+                    throw new AssertionError("formatted");
+                }
+
+                @Override
+                public byte[] getUtf8Payload() {
+                    return payload;
+                }
+            });
+        }
+        LogViewFrame frame = new LogViewFrame(terminal());
+        frame.begin();
+        Assert.assertEquals(2, frame.appendRows(rows, 0, 4, 5));
+        frame.write();
+        Assert.assertEquals("{\"name\":\"Gr\u00fcn 0\"}\n{\"name\":\"Gr\u00fcn 1\"}\n", output());
+    }
+
+    private DumbTerminal terminal() throws IOException {
+        return new DumbTerminal("test", "dumb", new ByteArrayInputStream(new byte[0]), m_output,
+                StandardCharsets.UTF_8);
+    }
+
+    private String output() {
+        return new String(m_output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static List<QueryResultRow> rows(int count) {
+        List<QueryResultRow> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String[] line = {"row " + i};
+            rows.add(() -> line);
+        }
+        return rows;
+    }
+}
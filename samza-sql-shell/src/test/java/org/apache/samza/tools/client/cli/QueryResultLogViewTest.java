@@ -0,0 +1,121 @@
+package org.apache.samza.tools.client.cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.samza.tools.client.interfaces.ExecutionContext;
+import org.apache.samza.tools.client.interfaces.QueryResultRow;
+import org.apache.samza.tools.client.interfaces.SqlExecutor;
+import org.jline.terminal.Size;
+import org.jline.terminal.impl.DumbTerminal;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class QueryResultLogViewTest {
+    private final ByteArrayOutputStream m_output = new ByteArrayOutputStream();
+    private final List<String> m_calls = new ArrayList<>();
+    private int m_rowsInBuffer;
+    private QueryResultLogView m_view;
+
+    @Before
+    public void setUp() throws IOException {
+        DumbTerminal terminal = new DumbTerminal("test", "dumb", new ByteArrayInputStream(new byte[0]), m_output,
+                StandardCharsets.UTF_8);
+        // A status bar and 10 lines of rows
+        terminal.setSize(new Size(200, 11));
+        m_view = new QueryResultLogView();
+        m_view.m_terminal = terminal;
+        m_view.m_executor = executor();
+        m_view.m_exeContext = new ExecutionContext();
+        m_view.init(null);
+    }
+
+    @Test
+    public void testLatestModeDrawsNewestRowsThatFit() {
+        m_rowsInBuffer = 25;
+        m_view.display();
+        // Rows before the last 10 aren't read, and the line telling so takes the place of one more
+        Assert.assertEquals("rows 15-24", m_calls.get(0));
+        String output = output();
+        Assert.assertTrue(output.contains("... 16 rows skipped ..."));
+        Assert.assertFalse(output.contains("row 15\n"));
+        Assert.assertTrue(output.contains("row 16\n"));
+        Assert.assertTrue(output.contains("row 24\n"));
+        Assert.assertTrue(output.contains("25 rows in buffer"));
+
+        m_rowsInBuffer = 5;
+        m_view.display();
+        Assert.assertEquals("rows 0-4", m_calls.get(1));
+    }
+
+    @Test
+    public void testSampleModeFollowsInputRate() {
+        m_view.m_exeContext.setRenderMode(ExecutionContext.RenderMode.SAMPLE);
+        m_rowsInBuffer = 100;
+        m_view.display();
+        // A screenful out of the rows of the frame
+        Assert.assertEquals("sample 99 1:10", m_calls.get(0));
+        Assert.assertTrue(output().contains("sampling 1:10"));
+
+        // The rate is smoothed over frames: 0.8 * 100 + 0.2 * 50 = 90 rows per frame
+        m_rowsInBuffer = 50;
+        m_view.display();
+        Assert.assertEquals("sample 49 1:9", m_calls.get(1));
+        // 0.8 * 90 + 0.2 * 5 = 73
+        m_rowsInBuffer = 5;
+        m_view.display();
+        Assert.assertEquals("sample 4 1:8", m_calls.get(2));
+        Assert.assertFalse(output().contains("rows skipped"));
+    }
+
+    @Test
+    public void testNoRowsNoRead() {
+        m_rowsInBuffer = 0;
+        m_view.display();
+        Assert.assertTrue(m_calls.isEmpty());
+        Assert.assertTrue(output().contains("0 rows in buffer"));
+    }
+
+    // Has m_rowsInBuffer rows, and records the rows the view takes. Everything else is empty.
+    private SqlExecutor executor() {
+        return (SqlExecutor) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{SqlExecutor.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getRowCount":
+                            return m_rowsInBuffer;
+                        case "consumeQueryResultRows":
+                            m_calls.add("rows " + args[2] + "-" + args[3]);
+                            return rows((int) args[2], (int) args[3], 1);
+                        case "consumeQueryResultSample":
+                            m_calls.add("sample " + args[2] + " 1:" + args[3]);
+                            return rows((int) args[2] % (int) args[3], (int) args[2], (int) args[3]);
+                        case "getSpooledRowCount":
+                            return -1L;
+                        default:
+                            Class<?> type = method.getReturnType();
+                            return type == long.class ? (Object) 0L : type == int.class ? (Object) 0
+                                    : type == boolean.class ? (Object) false : type == double.class ? (Object) 0.0
+                                    : null;
+                    }
+                });
+    }
+
+    private static List<QueryResultRow> rows(int first, int last, int step) {
+        List<QueryResultRow> rows = new ArrayList<>();
+        for (int i = first; i <= last; i += step) {
+            String[] line = {"row " + i};
+            rows.add(() -> line);
+        }
+        return rows;
+    }
+
+    private String output() {
+        return new String(m_output.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,122 @@
+package org.apache.samza.tools.client.cli;
+
+import java.util.Arrays;
+import org.apache.samza.tools.client.interfaces.ColumnBatch;
+import org.apache.samza.tools.client.interfaces.SqlSchema;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class TableLayoutTest {
+    private static final SqlSchema SCHEMA = new SqlSchema(
+            Arrays.asList("id", "company", "note"),
+            Arrays.asList("INT32", "STRING", "STRING"));
+
+    @Test
+    public void testWidthsOnlyGrow() {
+        TableLayout layout = new TableLayout(SCHEMA);
+        Assert.assertEquals(2, layout.getWidth(0));
+        Assert.assertEquals(7, layout.getWidth(1));
+
+        layout.fit(batch(new String[][]{{"12345", "LinkedIn", null}}));
+        Assert.assertEquals(5, layout.getWidth(0));
+        Assert.assertEquals(8, layout.getWidth(1));
+        Assert.assertEquals(4, layout.getWidth(2));
+
+        layout.fit(batch(new String[][]{{"1", "MS", repeat('x', 100)}}));
+        Assert.assertEquals(5, layout.getWidth(0));
+        Assert.assertEquals(8, layout.getWidth(1));
+        Assert.assertEquals(TableLayout.MAX_COLUMN_WIDTH, layout.getWidth(2));
+    }
+
+    @Test
+    public void testRowsAreAlignedAndClipped() {
+        TableLayout layout = new TableLayout(SCHEMA);
+        ColumnBatch batch = batch(new String[][]{{"1", "LinkedIn", "a\nb"}, {"22", null, "c"}});
+        layout.fit(batch);
+
+        StringBuilder line = new StringBuilder();
+        layout.appendHeader(line, 0, 80);
+        Assert.assertEquals("id | company  | note", line.toString());
+
+        line.setLength(0);
+        layout.appendSeparator(line, 0, 80);
+        Assert.assertEquals("---+----------+-----", line.toString());
+
+        line.setLength(0);
+        layout.appendRow(line, batch, 0, 0, 80);
+        Assert.assertEquals("1  | LinkedIn | a b", line.toString());
+
+        line.setLength(0);
+        layout.appendRow(line, batch, 1, 1, 80);
+        Assert.assertEquals("NULL     | c", line.toString());
+
+        line.setLength(0);
+        layout.appendRow(line, batch, 0, 0, 9);
+        Assert.assertEquals("1  | Link", line.toString());
+
+        Assert.assertEquals(2, layout.getVisibleColumnCount(0, 16));
+        Assert.assertEquals(1, layout.getVisibleColumnCount(2, 1));
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    // String values by row then column
+    private static ColumnBatch batch(String[][] rows) {
+        return new ColumnBatch() {
+            @Override
+            public SqlSchema getSchema() {
+                return SCHEMA;
+            }
+
+            @Override
+            public int getRowCount() {
+                return rows.length;
+            }
+
+            @Override
+            public Column getColumn(int colIdx) {
+                return new Column() {
+                    @Override
+                    public String getTypeName() {
+                        return "STRING";
+                    }
+
+                    @Override
+                    public boolean isNull(int row) {
+                        return rows[row][colIdx] == null;
+                    }
+
+                    @Override
+                    public int getInt(int row) {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    @Override
+                    public long getLong(int row) {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    @Override
+                    public double getDouble(int row) {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    @Override
+                    public boolean getBoolean(int row) {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    @Override
+                    public String getString(int row) {
+                        return rows[row][colIdx];
+                    }
+                };
+            }
+        };
+    }
+}
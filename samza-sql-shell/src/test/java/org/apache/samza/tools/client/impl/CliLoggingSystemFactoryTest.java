@@ -0,0 +1,212 @@
+package org.apache.samza.tools.client.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.samza.config.Config;
+import org.apache.samza.config.JobConfig;
+import org.apache.samza.config.MapConfig;
+import org.apache.samza.system.OutgoingMessageEnvelope;
+import org.apache.samza.system.SystemProducer;
+import org.apache.samza.system.SystemStream;
+import org.apache.samza.tools.client.interfaces.ExecutionContext;
+import org.apache.samza.tools.client.interfaces.OverflowPolicy;
+import org.apache.samza.tools.client.interfaces.QueryResultRow;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class CliLoggingSystemFactoryTest {
+    private static final OutgoingMessageEnvelope ENVELOPE = new OutgoingMessageEnvelope(
+            new SystemStream("log", "outputStream"), "{\"id\":1}".getBytes(StandardCharsets.UTF_8));
+
+    @Test
+    public void testJobWithoutExecutionIdIsNotBuffered() throws Exception {
+        int execId = Integer.MAX_VALUE - 1;
+        SamzaExecutor executor = new SamzaExecutor();
+        SamzaExecutor.createResultBuffers(execId, new MapConfig(), null, null);
+        try {
+            long messageCount = CliLoggingSystemFactory.getMessageCount();
+            Map<String, String> configs = new HashMap<>();
+            Assert.assertEquals(CliLoggingSystemFactory.NO_EXECUTION,
+                    CliLoggingSystemFactory.getExecutionId(new MapConfig(configs)));
+            sendTo(configs);
+            configs.put(JobConfig.PROCESSOR_ID(), "standalone-1");
+            Assert.assertEquals(CliLoggingSystemFactory.NO_EXECUTION,
+                    CliLoggingSystemFactory.getExecutionId(new MapConfig(configs)));
+            sendTo(configs);
+
+            // Counted, but neither buffered on their own nor in the buffer of another execution
+            Assert.assertTrue(CliLoggingSystemFactory.getMessageCount() >= messageCount + 2);
+            Assert.assertEquals(0, executor.getProducedRowCount(CliLoggingSystemFactory.NO_EXECUTION));
+            Assert.assertEquals(0, executor.getRowCount(CliLoggingSystemFactory.NO_EXECUTION));
+            Assert.assertEquals(0, executor.getProducedRowCount(execId));
+        } finally {
+            SamzaExecutor.removeResultBuffers(execId);
+        }
+    }
+
+    @Test
+    public void testExecutionsOnlyGetTheirOwnRows() throws Exception {
+        // Out of the way of the ids SamzaExecutor hands out
+        int[] execIds = {Integer.MAX_VALUE - 1, Integer.MAX_VALUE - 3};
+        int rowCount = 1000;
+        List<SystemProducer> producers = new ArrayList<>();
+        for (int execId : execIds) {
+            Map<String, String> configs = new HashMap<>();
+            configs.put(JobConfig.PROCESSOR_ID(), String.valueOf(execId));
+            configs.put("systems.log." + CliLoggingSystemFactory.CFG_BATCH_SIZE, "8");
+            Config config = new MapConfig(configs);
+            SamzaExecutor.createResultBuffers(execId, config, null, null);
+            producers.add(new CliLoggingSystemFactory().getProducer("log", config, null));
+        }
+        try {
+            producers.forEach(SystemProducer::start);
+            // Both jobs send at once, through their producers and straight to the executor
+            List<Thread> threads = new ArrayList<>();
+            for (int e = 0; e < execIds.length; e++) {
+                int execId = execIds[e];
+                SystemProducer producer = producers.get(e);
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < rowCount; i++) {
+                        OutgoingMessageEnvelope envelope = new OutgoingMessageEnvelope(
+                                new SystemStream("log", "outputStream"),
+                                ("{\"exec\":" + execId + ",\"id\":" + i + "}").getBytes(StandardCharsets.UTF_8));
+                        if (i % 2 == 0) {
+                            producer.send("log.outputStream", envelope);
+                        } else {
+                            SamzaExecutor.saveOutputMessage(execId, envelope);
+                        }
+                    }
+                    producer.flush("log.outputStream");
+                }));
+            }
+            threads.forEach(Thread::start);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            producers.forEach(SystemProducer::stop);
+
+            ExecutionContext context = new ExecutionContext();
+            context.setMessageFormat(ExecutionContext.MessageFormat.COMPACT);
+            SamzaExecutor executor = new SamzaExecutor();
+            for (int execId : execIds) {
+                List<QueryResultRow> rows = executor.consumeQueryResultRows(context, execId, 0, 2 * rowCount);
+                Assert.assertEquals(rowCount, rows.size());
+                Set<String> ids = new HashSet<>();
+                for (QueryResultRow row : rows) {
+                    String json = row.format()[0];
+                    Assert.assertTrue(json, json.startsWith("{\"exec\":" + execId + ","));
+                    Assert.assertTrue(ids.add(json));
+                }
+            }
+        } finally {
+            for (int execId : execIds) {
+                SamzaExecutor.removeResultBuffers(execId);
+            }
+        }
+    }
+
+    @Test
+    public void testBatchesArePublishedInOrder() throws Exception {
+        // Out of the way of the ids SamzaExecutor hands out
+        int execId = Integer.MAX_VALUE - 1;
+        int rowCount = 20000;
+        Map<String, String> configs = new HashMap<>();
+        configs.put(JobConfig.PROCESSOR_ID(), String.valueOf(execId));
+        configs.put("systems.log." + CliLoggingSystemFactory.CFG_BATCH_SIZE, "8");
+        // The timer publishes batches while the sending thread fills and publishes them too
+        configs.put("systems.log." + CliLoggingSystemFactory.CFG_BATCH_LINGER_MS, "1");
+        Config config = new MapConfig(configs);
+        SamzaExecutor.createResultBuffers(execId, config, null, null);
+        try {
+            SystemProducer producer = new CliLoggingSystemFactory().getProducer("log", config, null);
+            producer.start();
+            for (int i = 0; i < rowCount; i++) {
+                producer.send("log.outputStream", new OutgoingMessageEnvelope(new SystemStream("log", "outputStream"),
+                        ("{\"id\":" + i + "}").getBytes(StandardCharsets.UTF_8)));
+            }
+            producer.flush("log.outputStream");
+            producer.stop();
+
+            ExecutionContext context = new ExecutionContext();
+            context.setMessageFormat(ExecutionContext.MessageFormat.COMPACT);
+            List<QueryResultRow> rows = new SamzaExecutor().consumeQueryResultRows(context, execId, 0, rowCount - 1);
+            Assert.assertEquals(rowCount, rows.size());
+            for (int i = 0; i < rowCount; i++) {
+                Assert.assertEquals("{\"id\":" + i + "}", rows.get(i).format()[0]);
+            }
+        } finally {
+            SamzaExecutor.removeResultBuffers(execId);
+        }
+    }
+
+    @Test
+    public void testOverflowPolicyAppliesToCapturedRows() throws Exception {
+        SamzaExecutor executor = new SamzaExecutor();
+        // The buffer keeps 100 rows, so 50 of the 150 sent overflow
+        int execId = Integer.MAX_VALUE - 1;
+        List<QueryResultRow> rows = capture(execId, OverflowPolicy.DROP_NEWEST, 150, () -> {
+            Assert.assertEquals(150, executor.getProducedRowCount(execId));
+            Assert.assertEquals(50, executor.getDroppedRowCount(execId));
+        });
+        Assert.assertEquals(100, rows.size());
+        Assert.assertEquals("{\"id\":0}", rows.get(0).format()[0]);
+        Assert.assertEquals("{\"id\":99}", rows.get(99).format()[0]);
+
+        rows = capture(execId, OverflowPolicy.DROP_OLDEST, 150, () -> {
+            Assert.assertEquals(50, executor.getDroppedRowCount(execId));
+        });
+        Assert.assertEquals(100, rows.size());
+        Assert.assertEquals("{\"id\":50}", rows.get(0).format()[0]);
+        Assert.assertEquals("{\"id\":149}", rows.get(99).format()[0]);
+
+        // Nothing overflows with BLOCK while the buffer has room
+        rows = capture(execId, OverflowPolicy.BLOCK, 100, () -> {
+            Assert.assertEquals(0, executor.getDroppedRowCount(execId));
+            Assert.assertEquals(0, executor.getBlockedTimeMs(execId));
+        });
+        Assert.assertEquals(100, rows.size());
+    }
+
+    // Sends rows through a producer to an execution whose buffer keeps 100 rows, checks, and takes them out
+    private static List<QueryResultRow> capture(int execId, OverflowPolicy overflowPolicy, int rowCount,
+            Runnable check) throws Exception {
+        Map<String, String> configs = new HashMap<>();
+        configs.put(JobConfig.PROCESSOR_ID(), String.valueOf(execId));
+        configs.put("systems.log." + CliLoggingSystemFactory.CFG_BATCH_SIZE, "4");
+        configs.put("systems.log." + CliLoggingSystemFactory.CFG_OVERFLOW_POLICY, overflowPolicy.name());
+        configs.put("systems.log." + CliLoggingSystemFactory.CFG_MAX_BUFFERED_ROWS, "100");
+        Config config = new MapConfig(configs);
+        SamzaExecutor.createResultBuffers(execId, config, null, null);
+        try {
+            SystemProducer producer = new CliLoggingSystemFactory().getProducer("log", config, null);
+            producer.start();
+            for (int i = 0; i < rowCount; i++) {
+                producer.send("log.outputStream", new OutgoingMessageEnvelope(new SystemStream("log", "outputStream"),
+                        ("{\"id\":" + i + "}").getBytes(StandardCharsets.UTF_8)));
+            }
+            producer.flush("log.outputStream");
+            producer.stop();
+            check.run();
+
+            ExecutionContext context = new ExecutionContext();
+            context.setMessageFormat(ExecutionContext.MessageFormat.COMPACT);
+            return new SamzaExecutor().consumeQueryResultRows(context, execId, 0, rowCount);
+        } finally {
+            SamzaExecutor.removeResultBuffers(execId);
+        }
+    }
+
+    private static void sendTo(Map<String, String> configs) {
+        SystemProducer producer = new CliLoggingSystemFactory().getProducer("log", new MapConfig(configs), null);
+        producer.start();
+        producer.send("log.outputStream", ENVELOPE);
+        producer.flush("log.outputStream");
+        producer.stop();
+    }
+}
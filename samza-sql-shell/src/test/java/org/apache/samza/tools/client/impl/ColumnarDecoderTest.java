@@ -0,0 +1,186 @@
+package org.apache.samza.tools.client.impl;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Pattern;
+import org.apache.samza.tools.client.interfaces.ColumnBatch;
+import org.apache.samza.tools.client.interfaces.ExecutionException;
+import org.apache.samza.tools.client.interfaces.OverflowPolicy;
+import org.apache.samza.tools.client.interfaces.QueryResultFilter;
+import org.apache.samza.tools.client.interfaces.QueryResultRanking;
+import org.apache.samza.tools.client.interfaces.SqlSchema;
+import org.apache.samza.tools.client.util.TieredRowQueue;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class ColumnarDecoderTest {
+    private static final SqlSchema SCHEMA = new SqlSchema(
+            Arrays.asList("id", "count", "score", "active", "company", "tags"),
+            Arrays.asList("INT32", "INT64", "DOUBLE", "BOOLEAN", "STRING", "ARRAY(STRING)"));
+
+    private File m_spillDir;
+    private TieredRowQueue m_queue;
+
+    @Before
+    public void setUp() throws Exception {
+        m_spillDir = Files.createTempDirectory("columnar-decoder-test").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        if (m_queue != null) {
+            m_queue.close();
+        }
+        m_spillDir.delete();
+    }
+
+    @Test
+    public void testDecodeTypedColumns() {
+        ColumnBatch batch = new ColumnarDecoder(SCHEMA).decode(Arrays.asList(
+                row("{\"id\":1,\"count\":10000000000,\"score\":1.5,\"active\":true,\"company\":\"LinkedIn\",\"tags\":[\"a\"]}"),
+                row("{\"id\":2,\"count\":2,\"score\":3,\"active\":false,\"company\":\"LinkedIn\",\"unknown\":{\"x\":1}}"),
+                row("{\"id\":null,\"company\":\"Microsoft\"}"),
+                null,
+                row("not json")));
+
+        Assert.assertEquals(5, batch.getRowCount());
+        Assert.assertEquals("INT32", batch.getColumn(0).getTypeName());
+        Assert.assertEquals(2, batch.getColumn(0).getInt(1));
+        Assert.assertTrue(batch.getColumn(0).isNull(2));
+        Assert.assertEquals(10000000000L, batch.getColumn(1).getLong(0));
+        Assert.assertEquals(3.0, batch.getColumn(2).getDouble(1), 0);
+        Assert.assertTrue(batch.getColumn(3).getBoolean(0));
+        Assert.assertFalse(batch.getColumn(3).getBoolean(1));
+        Assert.assertTrue(batch.getColumn(3).isNull(2));
+        Assert.assertEquals("LinkedIn", batch.getColumn(4).getString(1));
+        Assert.assertEquals("Microsoft", batch.getColumn(4).getString(2));
+        Assert.assertEquals("ANY", batch.getColumn(5).getTypeName());
+        Assert.assertEquals("[\"a\"]", batch.getColumn(5).getString(0));
+        Assert.assertNull(batch.getColumn(5).getString(1));
+        // Rows that aren't there or aren't JSON are all nulls
+        for (int colIdx = 0; colIdx < SCHEMA.getFieldCount(); colIdx++) {
+            Assert.assertTrue(batch.getColumn(colIdx).isNull(3));
+            Assert.assertTrue(batch.getColumn(colIdx).isNull(4));
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testStringIsNotANumber() {
+        new ColumnarDecoder(SCHEMA).decode(Collections.singletonList(row("{\"company\":\"LinkedIn\"}")))
+                .getColumn(4).getLong(0);
+    }
+
+    @Test
+    public void testFilterScansNewRowsAndForgetsDroppedOnes() {
+        // The queue keeps the newest 10 rows
+        m_queue = new TieredRowQueue(64, 16, m_spillDir, 10, OverflowPolicy.DROP_OLDEST, 0);
+        ColumnarDecoder decoder = new ColumnarDecoder(SCHEMA, 4);
+        for (int i = 0; i < 10; i++) {
+            m_queue.add(row("{\"id\":" + i + ",\"company\":\"c" + (i % 3) + "\"}"));
+        }
+
+        // Matches in string and numeric columns, in full pieces and in the last one
+        QueryResultFilter filter = decoder.filter(m_queue, Pattern.compile("c1|^9$"));
+        Assert.assertEquals(4, filter.getRowCount());
+        ColumnBatch batch = filter.getRows(0, 100);
+        Assert.assertEquals(4, batch.getRowCount());
+        Assert.assertEquals(1, batch.getColumn(0).getInt(0));
+        Assert.assertEquals(4, batch.getColumn(0).getInt(1));
+        Assert.assertEquals(7, batch.getColumn(0).getInt(2));
+        Assert.assertEquals(9, batch.getColumn(0).getInt(3));
+        Assert.assertTrue(batch.getColumn(3).isNull(3));
+
+        // 10 to 15 arrive, which drops rows 0 to 5
+        for (int i = 10; i < 16; i++) {
+            m_queue.add(row("{\"id\":" + i + ",\"company\":\"c" + (i % 3) + "\"}"));
+        }
+        Assert.assertEquals(4, filter.getRowCount());
+        Assert.assertEquals(4, filter.update());
+        batch = filter.getRows(0, 100);
+        Assert.assertEquals(4, batch.getRowCount());
+        Assert.assertEquals(7, batch.getColumn(0).getInt(0));
+        Assert.assertEquals(9, batch.getColumn(0).getInt(1));
+        Assert.assertEquals(10, batch.getColumn(0).getInt(2));
+        Assert.assertEquals("c1", batch.getColumn(4).getString(3));
+        Assert.assertEquals(13, batch.getColumn(0).getInt(3));
+
+        // Consumed rows are gone from the filter as well
+        m_queue.consume(0, 2);
+        batch = filter.getRows(0, 100);
+        Assert.assertEquals(3, batch.getRowCount());
+        Assert.assertEquals(9, batch.getColumn(0).getInt(0));
+    }
+
+    @Test
+    public void testFilterScansSpilledRows() {
+        m_queue = new TieredRowQueue(64, 16, m_spillDir);
+        for (int i = 0; i < 10000; i++) {
+            m_queue.add(row("{\"id\":" + i + ",\"company\":\"c" + (i % 100) + "\"}"));
+        }
+
+        QueryResultFilter filter = new ColumnarDecoder(SCHEMA, 16).filter(m_queue, Pattern.compile("^c42$"));
+        Assert.assertEquals(100, filter.getRowCount());
+        ColumnBatch batch = filter.getRows(0, 99);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(i * 100 + 42, batch.getColumn(0).getInt(i));
+        }
+    }
+
+    @Test
+    public void testRankingKeepsBestRowsSeen() {
+        m_queue = new TieredRowQueue(64, 16, m_spillDir, 8, OverflowPolicy.DROP_OLDEST, 0);
+        ColumnarDecoder decoder = new ColumnarDecoder(SCHEMA, 4);
+        for (String json : Arrays.asList("{\"id\":0,\"score\":-2.5}", "{\"id\":1,\"score\":7}", "{\"id\":2}",
+                "{\"id\":3,\"score\":-0.5}", "{\"id\":4,\"score\":3}")) {
+            m_queue.add(row(json));
+        }
+
+        QueryResultRanking largest = decoder.rank(m_queue, 2, 3, false);
+        QueryResultRanking smallest = decoder.rank(m_queue, 2, 2, true);
+        Assert.assertEquals(4, largest.getRankedRowCount());
+        assertIds(largest.getRows(0, 10), 1, 4, 3);
+        assertIds(smallest.getRows(0, 10), 0, 3);
+
+        // Rows are ranked when the ranking is read, and stay ranked once the queue drops them
+        for (int i = 5; i < 12; i++) {
+            m_queue.add(row("{\"id\":" + i + ",\"score\":" + (i == 9 ? 5 : 0) + "}"));
+            largest.getRowCount();
+            smallest.getRowCount();
+        }
+        for (int i = 12; i < 20; i++) {
+            m_queue.add(row("{\"id\":" + i + ",\"score\":0}"));
+        }
+        Assert.assertEquals(19, largest.getRankedRowCount());
+        assertIds(largest.getRows(0, 10), 1, 9, 4);
+        assertIds(largest.getRows(1, 1), 9);
+        assertIds(largest.getRows(5, 10));
+        assertIds(smallest.getRows(0, 10), 0, 3);
+
+        smallest.close();
+        m_queue.add(row("{\"id\":20,\"score\":-10}"));
+        assertIds(smallest.getRows(0, 10), 0, 3);
+        Assert.assertEquals(3, largest.getRowCount());
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void testStringsAreNotRanked() {
+        m_queue = new TieredRowQueue(64, 16, m_spillDir);
+        new ColumnarDecoder(SCHEMA).rank(m_queue, 4, 10, false);
+    }
+
+    private static void assertIds(ColumnBatch batch, int... ids) {
+        Assert.assertEquals(ids.length, batch.getRowCount());
+        for (int i = 0; i < ids.length; i++) {
+            Assert.assertEquals(ids[i], batch.getColumn(0).getInt(i));
+        }
+    }
+
+    private static byte[] row(String json) {
+        return json.getBytes();
+    }
+}
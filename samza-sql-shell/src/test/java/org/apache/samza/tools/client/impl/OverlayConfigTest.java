@@ -0,0 +1,52 @@
+package org.apache.samza.tools.client.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.samza.config.Config;
+import org.apache.samza.config.MapConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class OverlayConfigTest {
+
+    @Test
+    public void testOverlayReplacesAndAddsEntries() {
+        Map<String, String> base = new HashMap<>();
+        base.put("job.name", "sql-job");
+        base.put("systems.kafka.samza.factory", "KafkaSystemFactory");
+        Map<String, String> overlay = new HashMap<>();
+        overlay.put("job.name", "sql-job-7");
+        overlay.put("processor.id", "7");
+        Config config = new OverlayConfig(new MapConfig(base), overlay);
+
+        Map<String, String> expected = new HashMap<>(base);
+        expected.putAll(overlay);
+        Assert.assertEquals(expected, new HashMap<>(config));
+        Assert.assertEquals(expected.size(), config.size());
+        Assert.assertEquals("sql-job-7", config.get("job.name"));
+        Assert.assertEquals("KafkaSystemFactory", config.get("systems.kafka.samza.factory"));
+        Assert.assertNull(config.get("job.id"));
+        Assert.assertTrue(config.containsKey("processor.id"));
+        Assert.assertTrue(config.containsValue("sql-job-7"));
+        Assert.assertFalse(config.containsValue("sql-job"));
+        // Equal to any map of the same entries. MapConfig only equals other MapConfigs, so not the other way around.
+        Assert.assertEquals(config, new MapConfig(expected));
+        Assert.assertEquals(expected.hashCode(), config.hashCode());
+    }
+
+    @Test
+    public void testSubsetCoversBothConfigs() {
+        Map<String, String> base = new HashMap<>();
+        base.put("systems.kafka.samza.factory", "KafkaSystemFactory");
+        base.put("systems.log.samza.factory", "CliLoggingSystemFactory");
+        Map<String, String> overlay = new HashMap<>();
+        overlay.put("systems.log.overflow.policy", "DROP_OLDEST");
+        Config config = new OverlayConfig(new MapConfig(base), overlay);
+
+        Config subset = config.subset("systems.log.");
+        Assert.assertEquals(2, subset.size());
+        Assert.assertEquals("CliLoggingSystemFactory", subset.get("samza.factory"));
+        Assert.assertEquals("DROP_OLDEST", subset.get("overflow.policy"));
+    }
+}
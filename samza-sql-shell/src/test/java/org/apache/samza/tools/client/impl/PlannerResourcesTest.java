@@ -0,0 +1,125 @@
+package org.apache.samza.tools.client.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.samza.config.Config;
+import org.apache.samza.sql.runner.SamzaSqlApplicationConfig;
+import org.apache.samza.sql.testutil.JsonUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class PlannerResourcesTest {
+    private static final String SOURCE = "kafka.Profiles";
+    private static final String STATEMENT = "insert into log.outputStream select * from " + SOURCE;
+    private static final String SCHEMA = "{\"type\":\"record\",\"name\":\"Profile\",\"namespace\":\"test\","
+            + "\"fields\":[{\"name\":\"Name\",\"type\":\"string\"},{\"name\":\"Company\",\"type\":\"string\"}%s]}";
+
+    private File m_schemaDir;
+    private Config m_config;
+    private PlannerResources m_resources = new PlannerResources();
+
+    @Before
+    public void setUp() throws IOException {
+        m_schemaDir = Files.createTempDirectory("schemas").toFile();
+        writeSchema("Profiles", "");
+        Map<String, String> configs = new HashMap<>();
+        configs.put(String.format(SamzaSqlApplicationConfig.CFG_FMT_REL_SCHEMA_PROVIDER_DOMAIN, "config")
+                + FileSystemAvroRelSchemaProviderFactory.CFG_SCHEMA_DIR, m_schemaDir.getPath());
+        configs.put(SamzaSqlApplicationConfig.CFG_SQL_STMTS_JSON,
+                JsonUtil.toJson(Collections.singletonList(STATEMENT)));
+        m_config = new OverlayConfig(SamzaExecutor.createBaseConfig(), configs);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = m_schemaDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        m_schemaDir.delete();
+    }
+
+    @Test
+    public void testPlanIsCachedByNormalizedStatement() {
+        QueryPlan planned = m_resources.plan(STATEMENT, m_config);
+        Assert.assertFalse(planned.isCached());
+        Assert.assertTrue(planned.getPlanNanos() > 0);
+
+        QueryPlan cached = m_resources.plan("  " + STATEMENT.replace(" from ", "\n  from  ") + " ", m_config);
+        Assert.assertTrue(cached.isCached());
+        Assert.assertSame(planned.getRoot(), cached.getRoot());
+        Assert.assertEquals(0, cached.getParseNanos());
+        Assert.assertEquals(0, cached.getPlanNanos());
+
+        // Asked for a fresh plan, as EXPLAIN does
+        Assert.assertFalse(m_resources.replan(STATEMENT, m_config).isCached());
+    }
+
+    @Test
+    public void testSchemaChangeMissesCache() throws IOException {
+        Assert.assertEquals(2, m_resources.plan(STATEMENT, m_config).getRoot().validatedRowType.getFieldCount());
+
+        writeSchema("Profiles", ",{\"name\":\"Title\",\"type\":\"string\"}");
+        QueryPlan replanned = m_resources.plan(STATEMENT, m_config);
+        Assert.assertFalse(replanned.isCached());
+        Assert.assertEquals(3, replanned.getRoot().validatedRowType.getFieldCount());
+        Assert.assertTrue(m_resources.plan(STATEMENT, m_config).isCached());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedPlanIsEvicted() {
+        for (int i = 0; i < PlannerResources.PLAN_CACHE_SIZE; i++) {
+            m_resources.plan(statement(i), m_config);
+        }
+        // Used again, so statement 1 is the least recently used one when the cache overflows
+        Assert.assertTrue(m_resources.plan(statement(0), m_config).isCached());
+        m_resources.plan(statement(PlannerResources.PLAN_CACHE_SIZE), m_config);
+
+        Assert.assertTrue(m_resources.plan(statement(0), m_config).isCached());
+        Assert.assertTrue(m_resources.plan(statement(2), m_config).isCached());
+        Assert.assertFalse(m_resources.plan(statement(1), m_config).isCached());
+    }
+
+    @Test
+    public void testSourceConfigsAndSchemaProvidersAreShared() {
+        Assert.assertSame(m_resources.getIOResolver(m_config), m_resources.getIOResolver(m_config));
+        Assert.assertSame(m_resources.getSourceConfig(SOURCE, m_config), m_resources.getSourceConfig(SOURCE, m_config));
+        Assert.assertSame(m_resources.getSchemaProvider(SOURCE, m_config),
+                m_resources.getSchemaProvider(SOURCE, m_config));
+        // A new executor gets resources of its own
+        Assert.assertNotSame(m_resources.getSchemaProvider(SOURCE, m_config),
+                new PlannerResources().getSchemaProvider(SOURCE, m_config));
+    }
+
+    @Test
+    public void testWarmUpDoesNotKeepItsPlan() throws IOException {
+        // Without a schema of its source, warming up stops at reading it
+        m_resources.warmUp(m_config);
+        writeSchema("warmup", "");
+        m_resources.warmUp(m_config);
+
+        // Planned for real now, and only then cached
+        Assert.assertFalse(m_resources.plan(PlannerResources.WARM_UP_STATEMENT, m_config).isCached());
+        Assert.assertTrue(m_resources.plan(PlannerResources.WARM_UP_STATEMENT, m_config).isCached());
+        Assert.assertFalse(m_resources.plan(STATEMENT, m_config).isCached());
+    }
+
+    private static String statement(int i) {
+        return "insert into log.outputStream select Name from " + SOURCE + " where Company = 'c" + i + "'";
+    }
+
+    private void writeSchema(String stream, String extraFields) throws IOException {
+        Files.write(new File(m_schemaDir, stream + ".avsc").toPath(),
+                String.format(SCHEMA, extraFields).getBytes(StandardCharsets.UTF_8));
+    }
+}
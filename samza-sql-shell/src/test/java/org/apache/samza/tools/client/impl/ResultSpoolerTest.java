@@ -0,0 +1,149 @@
+package org.apache.samza.tools.client.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.samza.tools.client.interfaces.ExecutionContext;
+import org.apache.samza.tools.client.interfaces.SqlSchema;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class ResultSpoolerTest {
+    private static final SqlSchema SCHEMA = new SqlSchema(
+            Arrays.asList("id", "company", "tags"),
+            Arrays.asList("INT32", "STRING", "ARRAY(STRING)"));
+
+    private File m_dir;
+
+    @Before
+    public void setUp() throws IOException {
+        m_dir = Files.createTempDirectory("spool").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = m_dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        m_dir.delete();
+    }
+
+    @Test
+    public void testJsonLinesKeepsEveryRow() throws IOException {
+        File file = new File(m_dir, "out.jsonl");
+        // A small queue makes the producer wait for the writer instead of dropping rows
+        ResultSpooler spooler = new ResultSpooler(file, ExecutionContext.SpoolFormat.JSONL, false, SCHEMA, 16);
+        List<byte[]> rows = new ArrayList<>();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            String row = "{\"id\":" + i + "}";
+            rows.add(row.getBytes(StandardCharsets.UTF_8));
+            expected.append(row).append('\n');
+        }
+        spooler.addAll(rows.subList(0, 5000));
+        spooler.addAll(rows.subList(5000, rows.size()));
+        spooler.close();
+        // Ignored once closed
+        spooler.addAll(rows);
+
+        Assert.assertNull(spooler.getError());
+        Assert.assertEquals(10000, spooler.getRowsWritten());
+        Assert.assertEquals(expected.toString(), new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testCompressedCsv() throws IOException {
+        File file = new File(m_dir, "out.csv.gz");
+        ResultSpooler spooler = new ResultSpooler(file, ExecutionContext.SpoolFormat.CSV, true, SCHEMA);
+        spooler.addAll(Arrays.asList(
+                row("{\"id\":1,\"company\":\"LinkedIn\",\"tags\":[\"a\",\"b\"]}"),
+                row("{\"company\":\"Say \\\"hi\\\",\\nbye\",\"id\":null,\"unknown\":{\"x\":1}}"),
+                row("not json")));
+        spooler.close();
+
+        Assert.assertNull(spooler.getError());
+        Assert.assertEquals(3, spooler.getRowsWritten());
+        Assert.assertEquals("id,company,tags\n"
+                + "1,LinkedIn,\"[\"\"a\"\",\"\"b\"\"]\"\n"
+                + ",\"Say \"\"hi\"\",\nbye\",\n"
+                + ",,\n", gunzip(file));
+    }
+
+    @Test
+    public void testAvroRoundTrip() throws IOException {
+        File file = new File(m_dir, "out.avro");
+        ResultSpooler spooler = new ResultSpooler(file, ExecutionContext.SpoolFormat.AVRO, true, SCHEMA);
+        spooler.addAll(Arrays.asList(
+                row("{\"id\":1,\"company\":\"LinkedIn\",\"tags\":[\"a\",\"b\"]}"),
+                row("{\"id\":null,\"company\":null}"),
+                // Neither fits an INT32 column
+                row("{\"id\":3000000000,\"company\":\"Microsoft\"}"),
+                row("{\"id\":\"notanint\",\"company\":\"Microsoft\"}")));
+        spooler.close();
+
+        Assert.assertNull(spooler.getError());
+        Assert.assertEquals(4, spooler.getRowsWritten());
+        Assert.assertEquals(2, spooler.getCoercedRowCount());
+
+        List<GenericRecord> records = new ArrayList<>();
+        try (DataFileReader<GenericRecord> reader =
+                new DataFileReader<>(file, new GenericDatumReader<GenericRecord>())) {
+            while (reader.hasNext()) {
+                records.add(reader.next());
+            }
+        }
+        Assert.assertEquals(4, records.size());
+        Assert.assertEquals(1, records.get(0).get("id"));
+        Assert.assertEquals("LinkedIn", records.get(0).get("company").toString());
+        Assert.assertEquals("[\"a\",\"b\"]", records.get(0).get("tags").toString());
+        Assert.assertNull(records.get(1).get("id"));
+        Assert.assertNull(records.get(1).get("company"));
+        Assert.assertNull(records.get(2).get("id"));
+        Assert.assertEquals("Microsoft", records.get(2).get("company").toString());
+        Assert.assertNull(records.get(3).get("id"));
+    }
+
+    @Test
+    public void testUnwritableFile() {
+        try {
+            new ResultSpooler(new File(m_dir, "missing/out.jsonl"), ExecutionContext.SpoolFormat.JSONL, false,
+                    SCHEMA);
+            Assert.fail();
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    private static byte[] row(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String gunzip(File file) throws IOException {
+        try (InputStream in = new GZIPInputStream(new FileInputStream(file))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                out.write(buffer, 0, count);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.apache.samza.tools.client.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.samza.tools.client.interfaces.ColumnStatistics;
+import org.apache.samza.tools.client.interfaces.SqlSchema;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class ResultStatisticsTest {
+    private static final SqlSchema SCHEMA = new SqlSchema(
+            Arrays.asList("memberId", "company", "tags"),
+            Arrays.asList("INT64", "STRING", "ARRAY(STRING)"));
+
+    @Test
+    public void testStatisticsCoverRowsOfAllThreads() throws InterruptedException {
+        ResultStatistics statistics = new ResultStatistics(SCHEMA);
+        ColumnarDecoder decoder = new ColumnarDecoder(SCHEMA);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int first = t * 2500;
+            threads[t] = new Thread(() -> {
+                List<byte[]> rows = new ArrayList<>();
+                for (int i = first; i < first + 2500; i++) {
+                    String company = i % 4 == 0 ? null : i % 2 == 0 ? "\"LinkedIn\"" : "\"c" + i + "\"";
+                    rows.add(row("{\"memberId\":" + (i % 1000) + ",\"company\":" + company + ",\"tags\":[\"x\"]}"));
+                    if (rows.size() == 10) {
+                        statistics.addAll(decoder.decode(rows));
+                        rows.clear();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        List<ColumnStatistics> columns = statistics.getColumnStatistics();
+        ColumnStatistics memberId = columns.get(0);
+        Assert.assertEquals(10000, memberId.getCount());
+        Assert.assertEquals(1000, memberId.getDistinctCount(), 30);
+        Assert.assertEquals(0, memberId.getMin(), 0);
+        Assert.assertEquals(999, memberId.getMax(), 0);
+        Assert.assertEquals(500, memberId.getQuantiles()[0], 10);
+        Assert.assertEquals(990, memberId.getQuantiles()[2], 10);
+
+        ColumnStatistics company = columns.get(1);
+        Assert.assertEquals(7500, company.getCount());
+        Assert.assertEquals(2500, company.getNullCount());
+        Assert.assertEquals(5001, company.getDistinctCount(), 150);
+        Assert.assertEquals("LinkedIn", company.getFrequentValues().get(0).getValue());
+        Assert.assertTrue(Double.isNaN(company.getQuantiles()[0]));
+
+        ColumnStatistics tags = columns.get(2);
+        Assert.assertEquals(10000, tags.getCount());
+        Assert.assertTrue(tags.getFrequentValues().isEmpty());
+    }
+
+    private static byte[] row(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -1,17 +1,295 @@
 package org.apache.samza.tools.client.impl;
 
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import org.apache.samza.config.MapConfig;
+import org.apache.samza.sql.runner.SamzaSqlApplicationConfig;
+import org.apache.samza.tools.client.interfaces.ColumnBatch;
+import org.apache.samza.tools.client.interfaces.ColumnStatistics;
+import org.apache.samza.tools.client.interfaces.ExecutionContext;
+import org.apache.samza.tools.client.interfaces.ExecutionHandle;
+import org.apache.samza.tools.client.interfaces.NonQueryResult;
+import org.apache.samza.tools.client.interfaces.QueryExplanation;
+import org.apache.samza.tools.client.interfaces.QueryLatency;
 import org.apache.samza.tools.client.interfaces.QueryResult;
 import org.apache.samza.tools.client.interfaces.SqlSchema;
 import org.junit.Assert;
 import org.junit.Ignore;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 
 public class SamzaExecutorTest {
+    private static final SqlSchema SCHEMA = new SqlSchema(Arrays.asList("id", "company"),
+            Arrays.asList("INT32", "STRING"));
+    private static final String PROFILE_SCHEMA = "{\"type\":\"record\",\"name\":\"Profile\",\"namespace\":\"test\","
+            + "\"fields\":[{\"name\":\"Name\",\"type\":\"string\"},{\"name\":\"Company\",\"type\":\"string\"}]}";
+    // Out of the way of the ids the executor hands out
+    private static final int BUFFERED_EXEC_ID = Integer.MAX_VALUE - 2;
+
+    @Rule
+    public TemporaryFolder m_tempFolder = new TemporaryFolder();
+
     private SamzaExecutor m_executor = new SamzaExecutor();
 
+    @Test
+    public void testTypedRowsAreDecodedFromTheRowBuffer() throws Exception {
+        IntFunction<ColumnBatch> columns = execId -> m_executor.retrieveQueryResultColumns(null, execId, 0, 0);
+        for (ExecutionContext.ResultView resultView : Arrays.asList(ExecutionContext.ResultView.LOG,
+                ExecutionContext.ResultView.TABLE)) {
+            ColumnBatch batch = captureRow(resultView, columns);
+            Assert.assertEquals(1, batch.getRowCount());
+            Assert.assertEquals(1, batch.getColumn(0).getInt(0));
+            Assert.assertEquals("LinkedIn", batch.getColumn(1).getString(0));
+        }
+        // Reading them leaves the rows where they are
+        Assert.assertEquals(Integer.valueOf(1), captureRow(ExecutionContext.ResultView.TABLE, execId -> {
+            m_executor.retrieveQueryResultColumns(null, execId, 0, 0);
+            return m_executor.getRowCount(execId);
+        }));
+    }
+
+    @Test
+    public void testConsumedTypedRowsLeaveTheRowBuffer() throws Exception {
+        Assert.assertEquals(Integer.valueOf(0), captureRow(ExecutionContext.ResultView.LOG, execId -> {
+            ColumnBatch batch = m_executor.consumeQueryResultColumns(null, execId, 0, 0);
+            Assert.assertEquals(1, batch.getRowCount());
+            Assert.assertEquals(1, batch.getColumn(0).getInt(0));
+            Assert.assertEquals("LinkedIn", batch.getColumn(1).getString(0));
+            return m_executor.getRowCount(execId);
+        }));
+        Assert.assertNull(m_executor.consumeQueryResultColumns(null, 42, 0, 0));
+    }
+
+    @Test
+    public void testOnlyStatsViewKeepsStatistics() throws Exception {
+        Assert.assertNull(captureRow(ExecutionContext.ResultView.LOG, m_executor::getColumnStatistics));
+        Assert.assertNull(captureRow(ExecutionContext.ResultView.TABLE, m_executor::getColumnStatistics));
+        List<ColumnStatistics> statistics = captureRow(ExecutionContext.ResultView.STATS,
+                m_executor::getColumnStatistics);
+        Assert.assertEquals(1, statistics.get(0).getCount());
+        Assert.assertEquals("LinkedIn", statistics.get(1).getFrequentValues().get(0).getValue());
+    }
+
+    @Test
+    public void testStatsViewDoesNotBufferRows() throws Exception {
+        Assert.assertEquals(Integer.valueOf(0), captureRow(ExecutionContext.ResultView.STATS,
+                m_executor::getRowCount));
+        Assert.assertNull(captureRow(ExecutionContext.ResultView.STATS,
+                execId -> m_executor.retrieveQueryResultColumns(null, execId, 0, 0)));
+        QueryLatency latency = captureRow(ExecutionContext.ResultView.STATS, m_executor::getQueryLatency);
+        Assert.assertEquals(-1, latency.getBufferP50Ms(), 0);
+    }
+
+    @Test
+    public void testOnlyRunningQueriesAreSpooled() {
+        ExecutionContext context = new ExecutionContext();
+        context.setSpool(new File("out.jsonl"), ExecutionContext.SpoolFormat.JSONL, false);
+        Assert.assertFalse(m_executor.spoolQueryResult(context, 42));
+        Assert.assertEquals("Execution 42 is not a running query", m_executor.getErrorMsg());
+        Assert.assertEquals(0, m_executor.getSpoolCoercedRowCount(42));
+    }
+
+    @Test
+    public void testRowsWakeWaitingReader() throws Exception {
+        SamzaExecutor.createResultBuffers(BUFFERED_EXEC_ID, new MapConfig(), SCHEMA, new ExecutionContext());
+        try {
+            Assert.assertFalse(m_executor.awaitRows(BUFFERED_EXEC_ID, 10));
+            Assert.assertFalse(m_executor.awaitRows(42, 10));
+            Thread producer = new Thread(() -> {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                SamzaExecutor.saveOutputMessages(BUFFERED_EXEC_ID,
+                        Collections.singletonList("{\"id\":1}".getBytes(StandardCharsets.UTF_8)));
+            });
+            producer.start();
+            long startNanos = System.nanoTime();
+            // Woken by the row rather than waiting out the timeout
+            Assert.assertTrue(m_executor.awaitRows(BUFFERED_EXEC_ID, 30000));
+            Assert.assertTrue(System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(10));
+            Assert.assertEquals(1, m_executor.getRowCount(BUFFERED_EXEC_ID));
+            // Rows still there don't make the reader wait
+            Assert.assertTrue(m_executor.awaitRows(BUFFERED_EXEC_ID, 30000));
+            producer.join();
+        } finally {
+            SamzaExecutor.removeResultBuffers(BUFFERED_EXEC_ID);
+        }
+    }
+
+    @Test
+    public void testConsumedRowsKeepTheirCaptureTime() throws Exception {
+        long before = System.nanoTime();
+        long captureNanos = captureRow(ExecutionContext.ResultView.LOG,
+                execId -> m_executor.consumeQueryResultRows(new ExecutionContext(), execId, 0, 0).get(0)
+                        .getCaptureNanos());
+        Assert.assertTrue(captureNanos >= before && captureNanos <= System.nanoTime());
+    }
+
+    @Test
+    public void testRowsWithoutTimestampHaveNoSourceLatency() throws Exception {
+        Assert.assertTrue(captureRow(ExecutionContext.ResultView.LOG, execId -> {
+            Assert.assertFalse(m_executor.getQueryLatency(execId).isSourceTimestampMissing());
+            SamzaExecutor.recordMissingTimestamp(execId);
+            return m_executor.getQueryLatency(execId).isSourceTimestampMissing();
+        }));
+        // Some rows with a timestamp are enough for a source latency
+        QueryLatency latency = captureRow(ExecutionContext.ResultView.LOG, execId -> {
+            SamzaExecutor.recordMissingTimestamp(execId);
+            SamzaExecutor.recordSourceLatency(execId, TimeUnit.MILLISECONDS.toNanos(5));
+            return m_executor.getQueryLatency(execId);
+        });
+        Assert.assertFalse(latency.isSourceTimestampMissing());
+        Assert.assertEquals(5, latency.getSourceP50Ms(), 1);
+    }
+
+    @Test
+    public void testExplainQuery() throws IOException {
+        File schemaDir = m_tempFolder.newFolder("schemas");
+        Files.write(new File(schemaDir, "Profiles.avsc").toPath(), PROFILE_SCHEMA.getBytes(StandardCharsets.UTF_8));
+        SamzaExecutor executor = new SamzaExecutor(new OverlayConfig(SamzaExecutor.createBaseConfig(),
+                Collections.singletonMap(String.format(SamzaSqlApplicationConfig.CFG_FMT_REL_SCHEMA_PROVIDER_DOMAIN,
+                        "config") + FileSystemAvroRelSchemaProviderFactory.CFG_SCHEMA_DIR, schemaDir.getPath())));
+
+        QueryExplanation explanation = executor.explainQuery(null, "select Name from kafka.Profiles");
+        Assert.assertEquals("", executor.getErrorMsg());
+        Assert.assertEquals(1, explanation.getResultSchema().getFieldCount());
+        Assert.assertEquals("Name", explanation.getResultSchema().getFieldName(0));
+        Assert.assertEquals(1, explanation.getSources().size());
+        Assert.assertTrue(explanation.getSources().get(0).startsWith("kafka.Profiles: stream Profiles"));
+        Assert.assertTrue(explanation.getSink().startsWith("log.outputStream: stream outputStream"));
+        Assert.assertTrue(explanation.getPlan().contains("TableScan"));
+        Assert.assertTrue(explanation.getPlan().contains("rows: RecordType("));
+        // Planned again rather than taken from the cache, so it's timed
+        Assert.assertFalse(explanation.getTimings().isPlanCached());
+        Assert.assertTrue(explanation.getTimings().getPlanMs() > 0);
+    }
+
+    @Test
+    public void testExplainBadStatement() {
+        Assert.assertNull(m_executor.explainQuery(null, "select from where"));
+        Assert.assertFalse(m_executor.getErrorMsg().isEmpty());
+        // No schema to plan it with
+        Assert.assertNull(m_executor.explainQuery(null, "select * from kafka.NoSuchStream" + System.nanoTime()));
+        Assert.assertFalse(m_executor.getErrorMsg().isEmpty());
+    }
+
+    @Test
+    public void testTimeToFirstRowIsFromStart() throws InterruptedException {
+        ExecutionTiming timing = new ExecutionTiming();
+        Assert.assertEquals(-1, timing.getTimeToFirstRowNanos());
+        Thread.sleep(20);
+        timing.recordRowsArrived();
+        long timeToFirstRow = timing.getTimeToFirstRowNanos();
+        Assert.assertTrue(timeToFirstRow >= TimeUnit.MILLISECONDS.toNanos(20));
+
+        // Later rows don't move it
+        Thread.sleep(5);
+        timing.recordRowsArrived();
+        Assert.assertEquals(timeToFirstRow, timing.getTimeToFirstRowNanos());
+    }
+
+    @Test
+    public void testFailedAsyncStartCompletes() throws Exception {
+        ExecutionHandle<QueryResult> handle = m_executor.executeQueryAsync(null, "select from where");
+        QueryResult result = handle.getResult().get(30, TimeUnit.SECONDS);
+        Assert.assertFalse(result.succeeded());
+        Assert.assertEquals(handle.getExecutionId(), result.getExecutionId());
+        Assert.assertEquals(ExecutionHandle.State.FINISHED, handle.getState());
+        Assert.assertNotNull(handle.getError());
+        // Its buffers are gone
+        Assert.assertNull(m_executor.getPhaseTimings(handle.getExecutionId()));
+        Assert.assertEquals(0, m_executor.getRowCount(handle.getExecutionId()));
+    }
+
+    @Test
+    public void testAsyncStartFailingWithErrorCompletes() throws Exception {
+        SamzaExecutor.SamzaExecutionHandle<QueryResult> handle =
+                new SamzaExecutor.SamzaExecutionHandle<>(BUFFERED_EXEC_ID, ExecutionHandle.State.PLANNING);
+        SamzaExecutor.createResultBuffers(BUFFERED_EXEC_ID, new MapConfig(), SCHEMA, new ExecutionContext());
+        m_executor.startInBackground(handle, () -> {
+            throw new OutOfMemoryError("test");
+        }, new QueryResult(BUFFERED_EXEC_ID, null, false));
+
+        Assert.assertFalse(handle.getResult().get(30, TimeUnit.SECONDS).succeeded());
+        Assert.assertEquals(ExecutionHandle.State.FINISHED, handle.getState());
+        Assert.assertTrue(handle.getError().contains("OutOfMemoryError"));
+        Assert.assertEquals(0, m_executor.getRowCount(BUFFERED_EXEC_ID));
+    }
+
+    @Test
+    public void testRunnerClassesLoad() {
+        Assert.assertEquals(SamzaExecutor.RUNNER_CLASSES.size(), SamzaExecutor.loadRunnerClasses());
+    }
+
+    @Test
+    public void testAsyncStartAfterStopCompletes() throws Exception {
+        SamzaExecutor executor = new SamzaExecutor();
+        executor.stop(null);
+        ExecutionHandle<QueryResult> query =
+                executor.executeQueryAsync(null, "select * from kafka.ProfileChangeStream");
+        Assert.assertFalse(query.getResult().get(30, TimeUnit.SECONDS).succeeded());
+        Assert.assertEquals(ExecutionHandle.State.FINISHED, query.getState());
+        Assert.assertNotNull(query.getError());
+
+        ExecutionHandle<NonQueryResult> nonQuery = executor.executeNonQueryAsync(null,
+                Collections.singletonList("insert into log.console select * from kafka.ProfileChangeStream"));
+        Assert.assertFalse(nonQuery.getResult().get(30, TimeUnit.SECONDS).succeeded());
+        Assert.assertEquals(ExecutionHandle.State.FINISHED, nonQuery.getState());
+        Assert.assertNull(executor.getPhaseTimings(nonQuery.getExecutionId()));
+    }
+
+    @Test
+    public void testStopExecutionStopsStartInFlight() throws Exception {
+        SamzaExecutor.SamzaExecutionHandle<NonQueryResult> handle =
+                new SamzaExecutor.SamzaExecutionHandle<>(BUFFERED_EXEC_ID, ExecutionHandle.State.STARTING);
+        CountDownLatch stopped = new CountDownLatch(1);
+        m_executor.startInBackground(handle, () -> {
+            try {
+                stopped.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            // Where a start checks before it runs its job
+            m_executor.ensureNotStopped(BUFFERED_EXEC_ID);
+            return new NonQueryResult(BUFFERED_EXEC_ID, true);
+        }, new NonQueryResult(BUFFERED_EXEC_ID, false));
+
+        Assert.assertTrue(m_executor.stopExecution(null, BUFFERED_EXEC_ID));
+        stopped.countDown();
+        Assert.assertFalse(handle.getResult().get(30, TimeUnit.SECONDS).succeeded());
+        Assert.assertEquals(ExecutionHandle.State.FINISHED, handle.getState());
+        Assert.assertTrue(handle.getError().contains("stopped while it was starting"));
+        Assert.assertFalse(m_executor.stopExecution(null, BUFFERED_EXEC_ID + 1));
+    }
+
+    // Reads what the executor has of a row captured for a query shown in the given view
+    private <T> T captureRow(ExecutionContext.ResultView resultView, IntFunction<T> read) throws Exception {
+        ExecutionContext context = new ExecutionContext();
+        context.setResultView(resultView);
+        SamzaExecutor.createResultBuffers(BUFFERED_EXEC_ID, new MapConfig(), SCHEMA, context);
+        try {
+            SamzaExecutor.saveOutputMessages(BUFFERED_EXEC_ID,
+                    Collections.singletonList("{\"id\":1,\"company\":\"LinkedIn\"}".getBytes()));
+            Assert.assertEquals(1, m_executor.getProducedRowCount(BUFFERED_EXEC_ID));
+            return read.apply(BUFFERED_EXEC_ID);
+        } finally {
+            SamzaExecutor.removeResultBuffers(BUFFERED_EXEC_ID);
+        }
+    }
+
     /**
      * Need a local Kafka cluster
      */
@@ -40,7 +318,7 @@ public class SamzaExecutorTest {
           e.printStackTrace();
         }
 
-        List<String[]> data = m_executor.retrieveQueryResult(null, 1, 2);
+        List<String[]> data = m_executor.retrieveQueryResult(null, queryResult.getExecutionId(), 1, 2);
         Assert.assertEquals(2, data.size());
 
         m_executor.stop(null);
@@ -0,0 +1,18 @@
+package org.apache.samza.tools.client.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class CliUtilTest {
+
+  @Test
+  public void testNormalizeSqlKeepsQuotedWhitespace() {
+    Assert.assertEquals("select * from kafka.ProfileChangeStream where Name = 'Mike  Jr'",
+        CliUtil.normalizeSql("  select *\n  from\tkafka.ProfileChangeStream\n where  Name = 'Mike  Jr' ;; "));
+    Assert.assertEquals("select 'it''s  here' from t",
+        CliUtil.normalizeSql("select   'it''s  here'   from t"));
+    Assert.assertEquals("select \"a  b\" from t", CliUtil.normalizeSql("select \"a  b\"\n\nfrom t"));
+    Assert.assertEquals("", CliUtil.normalizeSql(" ; "));
+  }
+}
@@ -0,0 +1,39 @@
+package org.apache.samza.tools.client.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class HyperLogLogTest {
+  @Test
+  public void testEstimatesAreWithinFewPercent() {
+    HyperLogLog few = new HyperLogLog(12);
+    Assert.assertEquals(0, few.estimate());
+    for (int i = 0; i < 3; i++) {
+      few.add(HyperLogLog.hash("a"));
+      few.add(HyperLogLog.hash("b"));
+    }
+    Assert.assertEquals(2, few.estimate());
+
+    HyperLogLog odd = new HyperLogLog(12);
+    HyperLogLog even = new HyperLogLog(12);
+    for (long i = 0; i < 1_000_000; i++) {
+      (i % 2 == 0 ? even : odd).add(HyperLogLog.hash(i));
+      // Repeated values don't count
+      odd.add(HyperLogLog.hash(1L));
+    }
+    assertWithin(500_000, odd.estimate(), 0.05);
+    odd.merge(even);
+    assertWithin(1_000_000, odd.estimate(), 0.05);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPrecisionsMustMatchToMerge() {
+    new HyperLogLog(12).merge(new HyperLogLog(10));
+  }
+
+  private static void assertWithin(long expected, long actual, double error) {
+    Assert.assertTrue("Expected about " + expected + " but was " + actual,
+        Math.abs(actual - expected) <= expected * error);
+  }
+}
@@ -0,0 +1,48 @@
+package org.apache.samza.tools.client.util;
+
+import java.nio.charset.StandardCharsets;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class JsonPrettyFormatterTest {
+  private static final String RECORD = "{\"id\":1,\"name\":\"Gr\u00fc\u00df \\\"Gott\\\"\",\"score\":-2.5E3,\"big\":123456789012345678901234567890,"
+      + "\"active\":true,\"manager\":null,\"tags\":[\"a\",\"b\"],\"address\":{\"zip\":94043,\"lines\":[]},\"empty\":{}}";
+
+  @Test
+  public void testMatchesDefaultPrettyPrinter() throws Exception {
+    ObjectMapper mapper = new ObjectMapper();
+    String expected = mapper.writerWithDefaultPrettyPrinter()
+        .writeValueAsString(mapper.readValue(RECORD, Object.class));
+    JsonPrettyFormatter formatter = new JsonPrettyFormatter(32, 1000, 4096);
+    Assert.assertEquals(expected, formatter.format(RECORD.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void testTruncatesDepthElementsAndStrings() {
+    JsonPrettyFormatter formatter = new JsonPrettyFormatter(1, 2, 3);
+    String formatted = formatter.format(RECORD.getBytes(StandardCharsets.UTF_8));
+    Assert.assertEquals("{\n  \"id\" : 1,\n  \"name\" : \"Gr\u00fc...\",\n  \"...\" : \"7 more fields\"\n}", formatted);
+
+    formatted = formatter.format("[[1],{\"a\":1},3,4,5]".getBytes(StandardCharsets.UTF_8));
+    Assert.assertEquals("[ [...], {...}, \"... 3 more\" ]", formatted);
+  }
+
+  @Test
+  public void testTruncationKeepsSurrogatePairs() {
+    JsonPrettyFormatter formatter = new JsonPrettyFormatter(1, 2, 3);
+    // U+1F600 is a surrogate pair, which the third and fourth chars would split
+    String formatted = formatter.format("\"ab\ud83d\ude00cd\"".getBytes(StandardCharsets.UTF_8));
+    Assert.assertEquals("\"ab...\"", formatted);
+    formatted = formatter.format("\"a\ud83d\ude00cd\"".getBytes(StandardCharsets.UTF_8));
+    Assert.assertEquals("\"a\ud83d\ude00...\"", formatted);
+  }
+
+  @Test
+  public void testInvalidJsonIsReturnedAsIs() {
+    JsonPrettyFormatter formatter = new JsonPrettyFormatter(32, 1000, 4096);
+    Assert.assertEquals("{\"id\":", formatter.format("{\"id\":".getBytes(StandardCharsets.UTF_8)));
+    Assert.assertEquals("not json", formatter.format("not json".getBytes(StandardCharsets.UTF_8)));
+  }
+}
@@ -0,0 +1,62 @@
+package org.apache.samza.tools.client.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class LatencyHistogramTest {
+  @Test
+  public void testPercentilesAreWithinBucketPrecision() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    Assert.assertEquals(-1, histogram.getPercentile(50));
+    for (long i = 1; i <= 100000; i++) {
+      histogram.record(i * 1000);
+    }
+    Assert.assertEquals(100000, histogram.getCount());
+    assertWithin(50_000_000, histogram.getPercentile(50));
+    assertWithin(99_000_000, histogram.getPercentile(99));
+    assertWithin(100_000_000, histogram.getPercentile(100));
+    assertWithin(1000, histogram.getPercentile(0));
+
+    histogram.clear();
+    histogram.record(-5);
+    histogram.record(7);
+    Assert.assertEquals(0, histogram.getPercentile(50));
+    Assert.assertEquals(7, histogram.getPercentile(100));
+  }
+
+  @Test
+  public void testBucketsCoverAllValues() {
+    for (long value : new long[]{0, 1, 15, 16, 17, 31, 32, 1000, 123456789, Long.MAX_VALUE}) {
+      long highest = LatencyHistogram.highestValueOf(LatencyHistogram.bucketOf(value));
+      Assert.assertTrue(highest >= value);
+      Assert.assertTrue(highest - value <= value / 16);
+    }
+  }
+
+  @Test
+  public void testConcurrentRecording() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      Thread thread = new Thread(() -> {
+        for (int i = 0; i < 100000; i++) {
+          histogram.record(i);
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    Assert.assertEquals(400000, histogram.getCount());
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    Assert.assertTrue(actual + " is not within 1/16 of " + expected,
+        actual >= expected && actual - expected <= expected / 16);
+  }
+}
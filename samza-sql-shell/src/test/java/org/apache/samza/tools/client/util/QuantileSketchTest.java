@@ -0,0 +1,48 @@
+package org.apache.samza.tools.client.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class QuantileSketchTest {
+  @Test
+  public void testQuantilesAreWithinAccuracy() {
+    QuantileSketch positive = new QuantileSketch(0.01);
+    QuantileSketch negative = new QuantileSketch(0.01);
+    Assert.assertTrue(Double.isNaN(positive.getQuantile(0.5)));
+    for (int i = 1; i <= 100000; i++) {
+      positive.add(i * 0.5);
+      negative.add(-i);
+    }
+    negative.add(Double.NaN);
+    assertWithin(25000, positive.getQuantile(0.5));
+    assertWithin(49500, positive.getQuantile(0.99));
+    Assert.assertEquals(0.5, positive.getQuantile(0), 0);
+    Assert.assertEquals(50000, positive.getQuantile(1), 0);
+    assertWithin(-99000, negative.getQuantile(0.01));
+    Assert.assertEquals(100000, negative.getCount());
+
+    // Half the values are below 0 now
+    positive.merge(negative);
+    Assert.assertEquals(-100000, positive.getMin(), 0);
+    Assert.assertEquals(200000, positive.getCount());
+    assertWithin(-50000, positive.getQuantile(0.25));
+    assertWithin(25000, positive.getQuantile(0.75));
+  }
+
+  @Test
+  public void testWideRangesCollapseSmallestValues() {
+    QuantileSketch sketch = new QuantileSketch(0.01);
+    sketch.add(0);
+    for (int exponent = -200; exponent <= 200; exponent++) {
+      sketch.add(Math.pow(10, exponent));
+    }
+    Assert.assertEquals(0, sketch.getQuantile(0), 0);
+    assertWithin(1e200, sketch.getQuantile(1));
+    assertWithin(1e190, sketch.getQuantile(391.0 / 401));
+  }
+
+  private static void assertWithin(double expected, double actual) {
+    Assert.assertEquals(expected, actual, Math.abs(expected) * 0.01);
+  }
+}
@@ -0,0 +1,30 @@
+package org.apache.samza.tools.client.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class RateWindowTest {
+  private static final long MS = 1_000_000L;
+
+  @Test
+  public void testRateOverSlidingWindow() {
+    RateWindow window = new RateWindow(1000);
+    Assert.assertEquals(0, window.getRatePerSecond(), 0);
+    // 100 rows per 10 ms for 2 seconds
+    for (int i = 0; i <= 200; i++) {
+      window.add(i * 10 * MS, i * 100L);
+    }
+    Assert.assertEquals(10000, window.getRatePerSecond(), 1);
+
+    // The counter stops; the window only sees the stop once the old readings leave it
+    for (int i = 201; i <= 250; i++) {
+      window.add(i * 10 * MS, 20000);
+    }
+    Assert.assertEquals(5000, window.getRatePerSecond(), 500);
+    for (int i = 251; i <= 400; i++) {
+      window.add(i * 10 * MS, 20000);
+    }
+    Assert.assertEquals(0, window.getRatePerSecond(), 0);
+  }
+}
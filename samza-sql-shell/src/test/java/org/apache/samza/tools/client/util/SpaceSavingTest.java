@@ -0,0 +1,53 @@
+package org.apache.samza.tools.client.util;
+
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class SpaceSavingTest {
+  @Test
+  public void testFrequentValuesAreCountedAmongRareOnes() {
+    SpaceSaving first = new SpaceSaving(16);
+    SpaceSaving second = new SpaceSaving(16);
+    for (int i = 0; i < 10000; i++) {
+      SpaceSaving sketch = i < 5000 ? first : second;
+      // a is a fifth of the values, b a tenth, and the rest all differ
+      sketch.add(i % 5 == 0 ? "a" : i % 10 == 1 ? "b" : "rare" + i);
+    }
+
+    List<SpaceSaving.Counter> top = first.getTop(2);
+    Assert.assertEquals("a", top.get(0).getValue());
+    Assert.assertEquals("b", top.get(1).getValue());
+    assertCountCovers(1000, top.get(0));
+    assertCountCovers(500, top.get(1));
+
+    first.merge(second);
+    top = first.getTop(3);
+    Assert.assertEquals(3, top.size());
+    Assert.assertEquals("a", top.get(0).getValue());
+    Assert.assertEquals("b", top.get(1).getValue());
+    assertCountCovers(2000, top.get(0));
+    assertCountCovers(1000, top.get(1));
+  }
+
+  @Test
+  public void testCountsAreExactBelowCapacity() {
+    SpaceSaving sketch = new SpaceSaving(4);
+    sketch.add("x");
+    sketch.add("y");
+    sketch.add("x");
+    List<SpaceSaving.Counter> top = sketch.getTop(10);
+    Assert.assertEquals(2, top.size());
+    Assert.assertEquals("x", top.get(0).getValue());
+    Assert.assertEquals(2, top.get(0).getCount());
+    Assert.assertEquals(0, top.get(0).getError());
+    Assert.assertEquals(1, top.get(1).getCount());
+  }
+
+  // Counts are over by at most their error
+  private static void assertCountCovers(long exact, SpaceSaving.Counter counter) {
+    Assert.assertTrue(counter.getCount() >= exact);
+    Assert.assertTrue(counter.getCount() - counter.getError() <= exact);
+  }
+}
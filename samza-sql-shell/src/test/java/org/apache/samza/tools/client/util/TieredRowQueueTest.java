@@ -0,0 +1,510 @@
+package org.apache.samza.tools.client.util;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.apache.samza.tools.client.interfaces.OverflowPolicy;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class TieredRowQueueTest {
+  private File m_spillDir;
+  private TieredRowQueue m_queue;
+
+  @Before
+  public void setUp() throws Exception {
+    m_spillDir = Files.createTempDirectory("tiered-row-queue-test").toFile();
+    m_queue = new TieredRowQueue(64, 16, m_spillDir);
+  }
+
+  @After
+  public void tearDown() {
+    m_queue.close();
+    m_spillDir.delete();
+  }
+
+  @Test
+  public void testPageBackThroughSpilledRows() {
+    for (int i = 0; i < 10000; i++) {
+      m_queue.add(row(i));
+    }
+    Assert.assertEquals(10000, m_queue.getSize());
+
+    List<byte[]> rets = m_queue.get(-1, 20000);
+    Assert.assertEquals(10000, rets.size());
+    for (int i = 0; i < 10000; i++) {
+      Assert.assertEquals("row-" + i, new String(rets.get(i)));
+    }
+    // Jump around the cold and hot tiers
+    Assert.assertEquals("row-9999", new String(m_queue.get(9999)));
+    Assert.assertEquals("row-17", new String(m_queue.get(17)));
+    Assert.assertEquals("row-5000", new String(m_queue.get(5000)));
+  }
+
+  @Test
+  public void testConsume() {
+    for (int i = 0; i < 1000; i++) {
+      m_queue.add(row(i));
+    }
+    List<byte[]> rets = m_queue.consume(0, 499);
+    Assert.assertEquals(500, rets.size());
+    Assert.assertEquals("row-499", new String(rets.get(499)));
+    Assert.assertEquals(500, m_queue.getSize());
+    Assert.assertEquals("row-500", new String(m_queue.get(0)));
+
+    m_queue.clear();
+    Assert.assertEquals(0, m_queue.getSize());
+    m_queue.add(row(1000));
+    Assert.assertEquals("row-1000", new String(m_queue.get(0)));
+  }
+
+  @Test
+  public void testDiscard() {
+    for (int i = 0; i < 1000; i++) {
+      m_queue.add(row(i));
+    }
+    Assert.assertEquals(0, m_queue.discard(-1));
+    Assert.assertEquals(500, m_queue.discard(499));
+    Assert.assertEquals(500, m_queue.getSize());
+    Assert.assertEquals("row-500", new String(m_queue.get(0)));
+    Assert.assertEquals(500, m_queue.discard(Integer.MAX_VALUE));
+    Assert.assertEquals(0, m_queue.getSize());
+    Assert.assertEquals(0, m_queue.discard(0));
+  }
+
+  @Test
+  public void testConsumeSampleIsEvenAcrossCalls() {
+    for (int i = 0; i < 1000; i++) {
+      m_queue.add(row(i));
+    }
+    List<byte[]> rets = m_queue.consumeSample(14, 10);
+    Assert.assertEquals(2, rets.size());
+    Assert.assertEquals("row-0", new String(rets.get(0)));
+    Assert.assertEquals("row-10", new String(rets.get(1)));
+    Assert.assertEquals(985, m_queue.getSize());
+
+    // Picks up where the last call left off
+    rets = m_queue.consumeSample(84, 10);
+    Assert.assertEquals(8, rets.size());
+    Assert.assertEquals("row-20", new String(rets.get(0)));
+    Assert.assertEquals("row-90", new String(rets.get(7)));
+    Assert.assertEquals(900, m_queue.getSize());
+    Assert.assertEquals(1000, m_queue.getOfferedRows());
+  }
+
+  @Test
+  public void testRowsAreStampedWhenAdded() {
+    long before = System.nanoTime();
+    for (int i = 0; i < 1000; i++) {
+      m_queue.add(row(i));
+    }
+    long after = System.nanoTime();
+    // Rows whose slot was reused since lost their stamp
+    Assert.assertEquals(-1, m_queue.getArrivalNanos(0));
+
+    long[] arrivalNanos = new long[3];
+    List<byte[]> rets = m_queue.consume(996, 999, arrivalNanos);
+    Assert.assertEquals(4, rets.size());
+    for (long nanos : arrivalNanos) {
+      Assert.assertTrue(nanos >= before && nanos <= after);
+    }
+    Assert.assertEquals(arrivalNanos[2], m_queue.getArrivalNanos(998));
+
+    m_queue.addAll(Arrays.asList(row(1000), row(1001), row(1002)));
+    arrivalNanos = new long[2];
+    rets = m_queue.consumeSample(2, 2, arrivalNanos);
+    Assert.assertEquals("row-1002", new String(rets.get(1)));
+    // Rows added together share their stamp
+    Assert.assertEquals(arrivalNanos[0], arrivalNanos[1]);
+    Assert.assertTrue(arrivalNanos[0] >= after);
+  }
+
+  @Test(expected = CliException.class)
+  public void testGetOutOfBoundary() {
+    m_queue.add(row(0));
+    m_queue.get(1);
+  }
+
+  @Test
+  public void testConcurrentProducersAreLossless() throws Exception {
+    final int producers = 4;
+    final int rowsPerProducer = 20000;
+    List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < producers; p++) {
+      final long producerId = p;
+      Thread thread = new Thread(() -> {
+        for (long i = 0; i < rowsPerProducer; i++) {
+          m_queue.add(ByteBuffer.allocate(8).putLong((producerId << 32) | i).array());
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Assert.assertEquals(producers * rowsPerProducer, m_queue.getSize());
+    Set<Long> seen = new HashSet<>();
+    long[] lastSeq = new long[producers];
+    for (int p = 0; p < producers; p++) {
+      lastSeq[p] = -1;
+    }
+    for (byte[] row : m_queue.get(0, producers * rowsPerProducer - 1)) {
+      long value = ByteBuffer.wrap(row).getLong();
+      Assert.assertTrue(seen.add(value));
+      int producerId = (int) (value >>> 32);
+      Assert.assertTrue(lastSeq[producerId] < (value & 0xFFFFFFFFL));
+      lastSeq[producerId] = value & 0xFFFFFFFFL;
+    }
+    Assert.assertEquals(producers * rowsPerProducer, seen.size());
+  }
+
+  @Test
+  public void testConcurrentProducersAndReader() throws Exception {
+    final int producers = 4;
+    final int rowsPerProducer = 20000;
+    List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < producers; p++) {
+      final long producerId = p;
+      Thread thread = new Thread(() -> {
+        // Single rows and batches, which claim their sequences in one step
+        for (long i = 0; i < rowsPerProducer; ) {
+          if (i % 3 == 0) {
+            m_queue.add(ByteBuffer.allocate(8).putLong((producerId << 32) | i++).array());
+          } else {
+            List<byte[]> batch = new ArrayList<>();
+            for (int j = 0; j < 7 && i < rowsPerProducer; j++) {
+              batch.add(ByteBuffer.allocate(8).putLong((producerId << 32) | i++).array());
+            }
+            m_queue.addAll(batch);
+          }
+        }
+      });
+      threads.add(thread);
+    }
+    threads.forEach(Thread::start);
+
+    // Reads while the producers add, both rows left in the queue and rows taken out of it
+    Set<Long> seen = new HashSet<>();
+    long[] lastSeq = new long[producers];
+    Arrays.fill(lastSeq, -1);
+    long consumedPosition = 0;
+    while (seen.size() < producers * rowsPerProducer) {
+      m_queue.awaitRows(10, TimeUnit.MILLISECONDS);
+      List<byte[]> retrieved = new ArrayList<>();
+      Assert.assertEquals(consumedPosition, m_queue.getFrom(consumedPosition, 100, retrieved));
+      List<byte[]> peeked = m_queue.get(0, retrieved.size() - 1);
+      Assert.assertEquals(retrieved.size(), peeked.size());
+      List<byte[]> consumed = m_queue.consume(0, 49);
+      for (int i = 0; i < consumed.size(); i++) {
+        byte[] row = consumed.get(i);
+        if (i < retrieved.size()) {
+          Assert.assertArrayEquals(row, retrieved.get(i));
+          Assert.assertArrayEquals(row, peeked.get(i));
+        }
+        long value = ByteBuffer.wrap(row).getLong();
+        Assert.assertTrue(seen.add(value));
+        int producerId = (int) (value >>> 32);
+        Assert.assertEquals(lastSeq[producerId] + 1, value & 0xFFFFFFFFL);
+        lastSeq[producerId] = value & 0xFFFFFFFFL;
+      }
+      consumedPosition += consumed.size();
+      Assert.assertEquals(consumedPosition, m_queue.getHeadPosition());
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    Assert.assertEquals(0, m_queue.getSize());
+    Assert.assertEquals(producers * rowsPerProducer, m_queue.getTailPosition());
+  }
+
+  @Test
+  public void testRowsLargerThanSlab() {
+    byte[] large = new byte[3 * 1024 * 1024];
+    for (int i = 0; i < large.length; i++) {
+      large[i] = (byte) i;
+    }
+    m_queue.add(row(0));
+    m_queue.add(large);
+    m_queue.add(row(2));
+    Assert.assertEquals("row-0", new String(m_queue.get(0)));
+    Assert.assertArrayEquals(large, m_queue.get(1));
+    Assert.assertEquals("row-2", new String(m_queue.get(2)));
+  }
+
+  @Test
+  public void testSlabsAreRecycledOnceSpilled() throws Exception {
+    byte[] payload = new byte[1000];
+    for (int i = 0; i < 100000; i++) {
+      m_queue.add(payload);
+    }
+    // 100MB went through the queue, but only the hot window needs to stay off heap
+    Assert.assertTrue(m_queue.getOffHeapBytes() <= 4 * 1024 * 1024);
+    Assert.assertEquals(100000, m_queue.getSize());
+    Assert.assertArrayEquals(payload, m_queue.get(12345));
+  }
+
+  @Test
+  public void testDropOldest() {
+    TieredRowQueue queue = new TieredRowQueue(64, 16, m_spillDir, 100, OverflowPolicy.DROP_OLDEST, 0);
+    try {
+      for (int i = 0; i < 1000; i++) {
+        Assert.assertTrue(queue.add(row(i)));
+      }
+      Assert.assertEquals(100, queue.getSize());
+      Assert.assertEquals(900, queue.getDroppedRows());
+      Assert.assertEquals(1000, queue.getOfferedRows());
+      Assert.assertEquals("row-900", new String(queue.get(0)));
+      Assert.assertEquals("row-999", new String(queue.get(99)));
+    } finally {
+      queue.close();
+    }
+  }
+
+  @Test
+  public void testDropNewest() {
+    TieredRowQueue queue = new TieredRowQueue(64, 16, m_spillDir, 100, OverflowPolicy.DROP_NEWEST, 0);
+    try {
+      for (int i = 0; i < 1000; i++) {
+        Assert.assertEquals(i < 100, queue.add(row(i)));
+      }
+      Assert.assertEquals(100, queue.getSize());
+      Assert.assertEquals(900, queue.getDroppedRows());
+      Assert.assertEquals(1000, queue.getOfferedRows());
+      Assert.assertEquals("row-0", new String(queue.get(0)));
+
+      // Consuming makes room again
+      queue.consume(0, 49);
+      Assert.assertTrue(queue.add(row(1000)));
+      Assert.assertEquals("row-1000", new String(queue.get(50)));
+    } finally {
+      queue.close();
+    }
+  }
+
+  @Test
+  public void testBlockIsLosslessWithSlowConsumer() throws Exception {
+    TieredRowQueue queue = new TieredRowQueue(64, 16, m_spillDir, 100, OverflowPolicy.BLOCK, 60000);
+    try {
+      Thread producer = new Thread(() -> {
+        for (int i = 0; i < 5000; i++) {
+          queue.add(row(i));
+        }
+      });
+      producer.start();
+
+      List<byte[]> consumed = new ArrayList<>();
+      while (consumed.size() < 5000) {
+        Assert.assertTrue(queue.getSize() <= 100);
+        consumed.addAll(queue.consume(0, 9));
+        Thread.yield();
+      }
+      producer.join();
+      for (int i = 0; i < 5000; i++) {
+        Assert.assertEquals("row-" + i, new String(consumed.get(i)));
+      }
+      Assert.assertEquals(0, queue.getDroppedRows());
+    } finally {
+      queue.close();
+    }
+  }
+
+  @Test
+  public void testBlockTimesOut() {
+    TieredRowQueue queue = new TieredRowQueue(64, 16, m_spillDir, 10, OverflowPolicy.BLOCK, 50);
+    try {
+      for (int i = 0; i < 10; i++) {
+        Assert.assertTrue(queue.add(row(i)));
+      }
+      Assert.assertFalse(queue.add(row(10)));
+      Assert.assertEquals(1, queue.getDroppedRows());
+      Assert.assertTrue(queue.getBlockedTimeMs() >= 50);
+      Assert.assertEquals("row-9", new String(queue.get(9)));
+    } finally {
+      queue.close();
+    }
+  }
+
+  @Test
+  public void testAddAll() {
+    List<byte[]> batch = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      batch.add(row(i));
+    }
+    Assert.assertEquals(1000, m_queue.addAll(batch));
+    Assert.assertEquals(1000, m_queue.addAll(batch));
+    Assert.assertEquals(2000, m_queue.getSize());
+    Assert.assertEquals("row-0", new String(m_queue.get(0)));
+    Assert.assertEquals("row-999", new String(m_queue.get(1999)));
+  }
+
+  @Test
+  public void testAddAllDropsNewestThatDontFit() {
+    TieredRowQueue queue = new TieredRowQueue(64, 16, m_spillDir, 100, OverflowPolicy.DROP_NEWEST, 0);
+    try {
+      List<byte[]> batch = new ArrayList<>();
+      for (int i = 0; i < 70; i++) {
+        batch.add(row(i));
+      }
+      Assert.assertEquals(70, queue.addAll(batch));
+      Assert.assertEquals(30, queue.addAll(batch));
+      Assert.assertEquals(40, queue.getDroppedRows());
+      Assert.assertEquals("row-29", new String(queue.get(99)));
+    } finally {
+      queue.close();
+    }
+  }
+
+  @Test
+  public void testAwaitRowsIsWokenByProducer() throws Exception {
+    Assert.assertFalse(m_queue.awaitRows(10, TimeUnit.MILLISECONDS));
+
+    Thread producer = new Thread(() -> {
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        return;
+      }
+      m_queue.add(row(0));
+    });
+    long start = System.nanoTime();
+    producer.start();
+    Assert.assertTrue(m_queue.awaitRows(60, TimeUnit.SECONDS));
+    Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(30));
+    producer.join();
+  }
+
+  @Test
+  public void testCloseDeletesSpillFile() {
+    for (int i = 0; i < 1000; i++) {
+      m_queue.add(row(i));
+    }
+    Assert.assertEquals(1, m_spillDir.listFiles().length);
+    m_queue.close();
+    Assert.assertEquals(0, m_spillDir.listFiles().length);
+  }
+
+  @Test
+  public void testPageBackAcrossSpillFiles() {
+    TieredRowQueue queue = new TieredRowQueue(64, 16, m_spillDir, Integer.MAX_VALUE, OverflowPolicy.DROP_OLDEST, 0,
+        4096);
+    try {
+      for (int i = 0; i < 10000; i++) {
+        queue.add(row(i));
+      }
+      List<byte[]> rets = queue.get(0, 9999);
+      Assert.assertEquals(10000, rets.size());
+      for (int i = 0; i < 10000; i++) {
+        Assert.assertEquals("row-" + i, new String(rets.get(i)));
+      }
+      // Besides the one of m_queue
+      Assert.assertTrue(m_spillDir.listFiles().length > 2);
+    } finally {
+      queue.close();
+    }
+    Assert.assertEquals(1, m_spillDir.listFiles().length);
+  }
+
+  @Test
+  public void testConsumedSpillFilesAreDeleted() throws Exception {
+    // Rows beyond the first 1000 push the head forward, so all but the newest spilled rows are dead
+    TieredRowQueue queue = new TieredRowQueue(64, 16, m_spillDir, 1000, OverflowPolicy.DROP_OLDEST, 0, 4096);
+    try {
+      for (int i = 0; i < 100000; i++) {
+        queue.add(row(i));
+      }
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+      while (spilledBytes() > 64 * 1024 && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      Assert.assertTrue(spilledBytes() <= 64 * 1024);
+      Assert.assertEquals("row-99000", new String(queue.get(0)));
+      Assert.assertEquals("row-99999", new String(queue.get(999)));
+
+      // Consumed rows free their files as well
+      queue.consume(0, 999);
+      for (int i = 0; i < 200; i++) {
+        queue.add(row(i));
+      }
+      Assert.assertEquals("row-0", new String(queue.get(0)));
+    } finally {
+      queue.close();
+    }
+  }
+
+  @Test
+  public void testSegmentIndexOnlyCoversLiveSegments() throws Exception {
+    TieredRowQueue queue = new TieredRowQueue(64, 16, m_spillDir, 1000, OverflowPolicy.DROP_OLDEST, 0, 4096);
+    try {
+      for (int i = 0; i < 100000; i++) {
+        queue.add(row(i));
+      }
+      // 6250 segments were spilled, about 60 of them are still behind the head
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+      while (queue.getSegmentIndexLength() > 256 && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      Assert.assertTrue(queue.getSegmentIndexLength() <= 256);
+      List<byte[]> rets = queue.get(0, 999);
+      Assert.assertEquals(1000, rets.size());
+      for (int i = 0; i < 1000; i++) {
+        Assert.assertEquals("row-" + (99000 + i), new String(rets.get(i)));
+      }
+    } finally {
+      queue.close();
+    }
+  }
+
+  @Test
+  public void testCloseWhileProducing() throws Exception {
+    List<Throwable> errors = new ArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < 4; p++) {
+      Thread thread = new Thread(() -> {
+        try {
+          // Rows bigger than a slab make every add ask for a new slab
+          byte[] large = new byte[2 * 1024 * 1024];
+          for (int i = 0; i < 1000; i++) {
+            m_queue.add(i % 10 == 0 ? large : row(i));
+          }
+        } catch (Throwable t) {
+          synchronized (errors) {
+            errors.add(t);
+          }
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    Thread.sleep(5);
+    m_queue.close();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    Assert.assertEquals(new ArrayList<Throwable>(), errors);
+    Assert.assertFalse(m_queue.add(row(0)));
+    Assert.assertEquals(0, m_spillDir.listFiles().length);
+  }
+
+  private long spilledBytes() {
+    long bytes = 0;
+    for (File file : m_spillDir.listFiles()) {
+      bytes += file.length();
+    }
+    return bytes;
+  }
+
+  private static byte[] row(int i) {
+    return ("row-" + i).getBytes();
+  }
+}
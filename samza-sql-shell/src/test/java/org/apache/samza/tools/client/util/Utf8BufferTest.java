@@ -0,0 +1,45 @@
+package org.apache.samza.tools.client.util;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class Utf8BufferTest {
+  @Test
+  public void testAppendEncodesText() {
+    String text = "ascii \u00e9 \u20ac \ud83d\ude00 \n";
+    Utf8Buffer buffer = new Utf8Buffer(1);
+    buffer.append(text).append('!').append('\u00e9');
+    Assert.assertEquals(text + "!\u00e9", buffer.toString());
+    Assert.assertEquals((text + "!\u00e9").getBytes(StandardCharsets.UTF_8).length, buffer.length());
+
+    buffer.clear();
+    buffer.append("a\ud83db");
+    Assert.assertEquals("a\ufffdb", buffer.toString());
+  }
+
+  @Test
+  public void testAppendEscapedCopiesValidUtf8() {
+    String text = "{\"name\":\"Gr\u00fc\u00df \u20ac \ud83d\ude00\"}";
+    Utf8Buffer buffer = new Utf8Buffer(16);
+    buffer.appendEscaped(text.getBytes(StandardCharsets.UTF_8));
+    Assert.assertEquals(text, buffer.toString());
+  }
+
+  @Test
+  public void testAppendEscapedEscapesControlCharacters() {
+    Utf8Buffer buffer = new Utf8Buffer(16);
+    buffer.appendEscaped("a\u001b[2Jb\nc\u007f\u009bd".getBytes(StandardCharsets.UTF_8));
+    Assert.assertEquals("a\\u001b[2Jb\\u000ac\\u007f\\u009bd", buffer.toString());
+  }
+
+  @Test
+  public void testAppendEscapedReplacesMalformedSequences() {
+    Utf8Buffer buffer = new Utf8Buffer(16);
+    // Lone continuation byte, overlong '/', encoded surrogate, above U+10FFFF, truncated euro sign
+    buffer.appendEscaped(new byte[]{'a', (byte) 0x80, 'b', (byte) 0xC0, (byte) 0xAF, 'c', (byte) 0xED, (byte) 0xA0,
+        (byte) 0x80, 'd', (byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80, 'e', (byte) 0xE2, (byte) 0x82});
+    Assert.assertEquals("a\ufffdb\ufffd\ufffdc\ufffd\ufffd\ufffdd\ufffd\ufffd\ufffd\ufffde\ufffd", buffer.toString());
+  }
+}